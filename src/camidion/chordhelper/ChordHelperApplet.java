@@ -17,7 +17,6 @@ import java.util.Arrays;
 
 import javax.sound.midi.InvalidMidiDataException;
 import javax.sound.midi.MetaMessage;
-import javax.sound.midi.MidiSystem;
 import javax.sound.midi.Sequence;
 import javax.sound.midi.Sequencer;
 import javax.swing.Box;
@@ -55,6 +54,7 @@ import camidion.chordhelper.midieditor.NewSequenceDialog;
 import camidion.chordhelper.midieditor.PlaylistTableModel;
 import camidion.chordhelper.midieditor.SequenceTickIndex;
 import camidion.chordhelper.midieditor.SequenceTrackListTableModel;
+import camidion.chordhelper.midieditor.StandardMidiFileReader;
 import camidion.chordhelper.midieditor.TempoSelecter;
 import camidion.chordhelper.midieditor.TimeSignatureSelecter;
 import camidion.chordhelper.music.Chord;
@@ -111,7 +111,7 @@ public class ChordHelperApplet extends JApplet {
 		try {
 			URL url = (new URI(midiFileUrl)).toURL();
 			String filename = url.getFile().replaceFirst("^.*/","");
-			Sequence sequence = MidiSystem.getSequence(url);
+			Sequence sequence = StandardMidiFileReader.getSequence(url);
 			int index = playlistModel.add(sequence, filename);
 			midiEditor.playlistTable.getSelectionModel().setSelectionInterval(index, index);
 			return index;
@@ -410,6 +410,7 @@ public class ChordHelperApplet extends JApplet {
 		});
 		// 再生時間位置の移動、シーケンス名の変更、またはシーケンスの入れ替えが発生したときに呼び出されるリスナーを登録
 		SongTitleLabel songTitleLabel = new SongTitleLabel();
+		SequenceTickIndex.MeasurePosition measurePosition = new SequenceTickIndex.MeasurePosition();
 		sequencerModel.addChangeListener(event->{
 			MidiSequencerModel sequencerModel = (MidiSequencerModel) event.getSource();
 			Sequencer sequencer = sequencerModel.getSequencer();
@@ -426,8 +427,7 @@ public class ChordHelperApplet extends JApplet {
 			songTitleLabel.setSongTitle(songIndex, sequenceModel);
 			SequenceTickIndex tickIndex = sequenceModel.getSequenceTickIndex();
 			long tickPosition = sequencer.getTickPosition();
-			tickIndex.tickToMeasure(tickPosition);
-			chordMatrix.setBeat(tickIndex);
+			chordMatrix.setBeat(tickIndex.tickToMeasure(tickPosition, measurePosition));
 			if( sequencerModel.getValueIsAdjusting() || ! (sequencer.isRunning() || sequencer.isRecording()) ) {
 				timesigSelecter.setValueAt(tickIndex, tickPosition);
 				tempoSelecter.setTempoAt(tickIndex, tickPosition);
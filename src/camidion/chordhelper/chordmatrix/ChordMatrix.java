@@ -68,14 +68,25 @@ public class ChordMatrix extends JPanel
 		repaint();
 	}
 	/**
-	 * MIDIのノートイベント（ON/OFF）を受け取ります。
-	 * @param isNoteOn ONのときtrue
-	 * @param noteNumber ノート番号
+	 * 発音中のノートをビット列でまとめて受け取ります。
+	 * <p>発音中のノート表示を置き換えます。</p>
+	 * @param low ノート番号 0～63 のビット列（ノート番号 n のビットは {@code 1L << n}）
+	 * @param high ノート番号 64～127 のビット列（ノート番号 n のビットは {@code 1L << (n - 64)}）
 	 */
-	public void note(boolean isNoteOn, int noteNumber) {
-		int diff = (isNoteOn ? 1 : -1);
-		NoteWeight w = noteWeightArray[Note.mod12(noteNumber)];
-		if( noteNumber < 49 ) w.addBass(diff); else w.add(diff);
+	public void setNotes(long low, long high) {
+		int activeBits = 0, bassActiveBits = 0;
+		for( long bits = low; bits != 0; bits &= bits - 1 ) {
+			int noteNumber = Long.numberOfTrailingZeros(bits);
+			int bit = 1 << Note.mod12(noteNumber);
+			activeBits |= bit;
+			if( noteNumber < 49 ) bassActiveBits |= bit;
+		}
+		for( long bits = high; bits != 0; bits &= bits - 1 ) {
+			activeBits |= 1 << Note.mod12(64 + Long.numberOfTrailingZeros(bits));
+		}
+		for( int i=0; i<noteWeightArray.length; i++ ) {
+			noteWeightArray[i].set((activeBits & (1 << i)) != 0, (bassActiveBits & (1 << i)) != 0);
+		}
 	}
 
 	/**
@@ -940,9 +951,9 @@ public class ChordMatrix extends JPanel
 
 	private byte currentBeat = 0;
 	private byte timesigUpper = 4;
-	public void setBeat(SequenceTickIndex sequenceTickIndex) {
-		byte beat = (byte)(sequenceTickIndex.lastBeat);
-		byte tsu = sequenceTickIndex.timesigUpper;
+	public void setBeat(SequenceTickIndex.MeasurePosition measurePosition) {
+		byte beat = (byte)(measurePosition.beat);
+		byte tsu = measurePosition.timesigUpper;
 		if( currentBeat == beat && timesigUpper == tsu ) return;
 		timesigUpper = tsu;
 		currentBeat = beat;
@@ -1,54 +1,348 @@
 package camidion.chordhelper.mididevice;
 
-import java.util.Vector;
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
 
 import javax.sound.midi.MidiMessage;
-import javax.sound.midi.Receiver;
 import javax.sound.midi.ShortMessage;
 import javax.sound.midi.SysexMessage;
 
+import camidion.chordhelper.music.MIDISpec;
+
 /**
  * 仮想 MIDI デバイスからの MIDI 受信とチャンネル状態の管理
+ * <p>全チャンネルの状態を、チャンネルごとのオブジェクトではなく
+ * 項目ごとのプリミティブ配列（コントローラ値は チャンネル×128 個の byte 配列など）で保持します。
+ * 受信処理では配列を更新し、登録された {@link MidiChannelStatusListener} に通知します。
+ * 表示などで複数の値を矛盾なく読み出したい場合は {@link #getSnapshot()} を使ってください。
+ * </p>
  */
-public abstract class AbstractMidiStatus extends Vector<AbstractMidiChannelStatus>
-	implements Receiver
-{
+public abstract class AbstractMidiStatus implements ShortMessageReceiver {
+	private static final int CHANNELS = MIDISpec.MAX_CHANNELS;
+	private static final int DATA_NONE = 0;
+	private static final int DATA_FOR_RPN = 1;
+	private static final int DATA_FOR_NRPN = 2;
+	/** コントローラ値（チャンネル×128 + コントローラ番号） */
+	private final byte[] controllerValues = new byte[CHANNELS * 0x80];
+	/** プログラム番号 */
+	private final int[] programs = new int[CHANNELS];
+	/** ピッチベンド値 */
+	private final int[] pitchBends = new int[CHANNELS];
+	/** チャンネルプレッシャー値 */
+	private final int[] channelPressures = new int[CHANNELS];
+	/** ピッチベンドセンシティビティ（半音単位） */
+	private final int[] pitchBendSensitivities = new int[CHANNELS];
+	/** リズムパートならtrue */
+	private final boolean[] rhythmParts = new boolean[CHANNELS];
+	/** データエントリの対象（RPN/NRPN） */
+	private final byte[] dataFor = new byte[CHANNELS];
+	/**
+	 * 更新と {@link #getSnapshot()} の間の排他制御
+	 * <p>更新は書き込みロックの中で行います（シーケンサーのスレッドとイベントディスパッチスレッドの両方から更新されうるため）。
+	 * 読み出しは楽観的読み取りで行い、その間に更新があった場合だけ読み取りロックを取って読み直します。
+	 * </p>
+	 */
+	private final StampedLock lock = new StampedLock();
+	/** 更新中の書き込みロックのスタンプ（書き込みロックを持つスレッドだけが使う） */
+	private long writeStamp;
+	/**
+	 * リスナーの配列（登録、解除のたびに新しい配列に置き換えます）
+	 */
+	private volatile MidiChannelStatusListener[] listeners = new MidiChannelStatusListener[0];
+
+	public AbstractMidiStatus() {
+		Arrays.fill(pitchBendSensitivities, 2); // Default is wholetone = 2 semitones
+		for( int ch = 0; ch < CHANNELS; ch++ ) resetAllValues(ch, true);
+	}
+	/**
+	 * チャンネルの状態変化を受け取るリスナーを登録します。
+	 * @param listener リスナー
+	 */
+	public synchronized void addMidiChannelStatusListener(MidiChannelStatusListener listener) {
+		MidiChannelStatusListener[] newListeners = Arrays.copyOf(listeners, listeners.length + 1);
+		newListeners[listeners.length] = listener;
+		listeners = newListeners;
+	}
+	/**
+	 * 登録したリスナーを解除します。
+	 * @param listener リスナー
+	 */
+	public synchronized void removeMidiChannelStatusListener(MidiChannelStatusListener listener) {
+		listeners = Arrays.stream(listeners).filter(l -> l != listener).toArray(MidiChannelStatusListener[]::new);
+	}
+	/**
+	 * コントローラ値を返します。
+	 * @param channel MIDIチャンネルインデックス（チャンネル 1 のとき 0）
+	 * @param controller コントローラ番号
+	 * @return コントローラ値
+	 */
+	public int getController(int channel, int controller) {
+		return controllerValues[(channel << 7) + controller];
+	}
+	/**
+	 * プログラム番号を返します。
+	 * @param channel MIDIチャンネルインデックス（チャンネル 1 のとき 0）
+	 * @return プログラム番号
+	 */
+	public int getProgram(int channel) { return programs[channel]; }
+	/**
+	 * ピッチベンド値を返します。
+	 * @param channel MIDIチャンネルインデックス（チャンネル 1 のとき 0）
+	 * @return ピッチベンド値（0～16383、中央 8192）
+	 */
+	public int getPitchBend(int channel) { return pitchBends[channel]; }
+	/**
+	 * チャンネルプレッシャー値を返します。
+	 * @param channel MIDIチャンネルインデックス（チャンネル 1 のとき 0）
+	 * @return チャンネルプレッシャー値
+	 */
+	public int getChannelPressure(int channel) { return channelPressures[channel]; }
+	/**
+	 * ピッチベンドセンシティビティを返します。
+	 * @param channel MIDIチャンネルインデックス（チャンネル 1 のとき 0）
+	 * @return ピッチベンドセンシティビティ（半音単位）
+	 */
+	public int getPitchBendSensitivity(int channel) { return pitchBendSensitivities[channel]; }
+	/**
+	 * リズムパートかどうかを返します。
+	 * @param channel MIDIチャンネルインデックス（チャンネル 1 のとき 0）
+	 * @return リズムパートならtrue
+	 */
+	public boolean isRhythmPart(int channel) { return rhythmParts[channel]; }
+	/**
+	 * 全チャンネルの状態のスナップショットを返します。
+	 * <p>受信処理と並行して呼び出しても、受信処理の途中の状態が混ざらないよう、
+	 * 読み出しの間に更新があった場合は、更新が終わるのを待って読み出し直します。</p>
+	 * @return スナップショット
+	 */
+	public Snapshot getSnapshot() {
+		Snapshot snapshot = new Snapshot();
+		long stamp = lock.tryOptimisticRead();
+		copyTo(snapshot);
+		if( ! lock.validate(stamp) ) {
+			stamp = lock.readLock();
+			try {
+				copyTo(snapshot);
+			} finally {
+				lock.unlockRead(stamp);
+			}
+		}
+		return snapshot;
+	}
+	private void copyTo(Snapshot snapshot) {
+		System.arraycopy(controllerValues, 0, snapshot.controllerValues, 0, controllerValues.length);
+		System.arraycopy(programs, 0, snapshot.programs, 0, CHANNELS);
+		System.arraycopy(pitchBends, 0, snapshot.pitchBends, 0, CHANNELS);
+		System.arraycopy(channelPressures, 0, snapshot.channelPressures, 0, CHANNELS);
+		System.arraycopy(pitchBendSensitivities, 0, snapshot.pitchBendSensitivities, 0, CHANNELS);
+		System.arraycopy(rhythmParts, 0, snapshot.rhythmParts, 0, CHANNELS);
+	}
+	/**
+	 * 全チャンネルの状態のスナップショット
+	 */
+	public static class Snapshot {
+		private final byte[] controllerValues = new byte[CHANNELS * 0x80];
+		private final int[] programs = new int[CHANNELS];
+		private final int[] pitchBends = new int[CHANNELS];
+		private final int[] channelPressures = new int[CHANNELS];
+		private final int[] pitchBendSensitivities = new int[CHANNELS];
+		private final boolean[] rhythmParts = new boolean[CHANNELS];
+		private Snapshot() { }
+		/** @see AbstractMidiStatus#getController(int, int) */
+		public int getController(int channel, int controller) {
+			return controllerValues[(channel << 7) + controller];
+		}
+		/** @see AbstractMidiStatus#getProgram(int) */
+		public int getProgram(int channel) { return programs[channel]; }
+		/** @see AbstractMidiStatus#getPitchBend(int) */
+		public int getPitchBend(int channel) { return pitchBends[channel]; }
+		/** @see AbstractMidiStatus#getChannelPressure(int) */
+		public int getChannelPressure(int channel) { return channelPressures[channel]; }
+		/** @see AbstractMidiStatus#getPitchBendSensitivity(int) */
+		public int getPitchBendSensitivity(int channel) { return pitchBendSensitivities[channel]; }
+		/** @see AbstractMidiStatus#isRhythmPart(int) */
+		public boolean isRhythmPart(int channel) { return rhythmParts[channel]; }
+	}
+	private void beginUpdate() { writeStamp = lock.writeLock(); }
+	private void endUpdate() { lock.unlockWrite(writeStamp); }
+
 	private void resetStatus() { resetStatus(false); }
 	private void resetStatus(boolean is_GS) {
-		for( AbstractMidiChannelStatus mcs : this )
-			mcs.resetAllValues(is_GS);
+		// 全チャンネルを１回の書き込みロックでまとめてリセットし、途中の状態を読ませない
+		beginUpdate();
+		for( int ch = 0; ch < CHANNELS; ch++ ) resetAllValues(ch, is_GS);
+		endUpdate();
+		for( int ch = 0; ch < CHANNELS; ch++ )
+			for( MidiChannelStatusListener l : listeners ) l.controllersReset(ch);
+	}
+	private void resetAllValues(int channel, boolean isGS) {
+		Arrays.fill(controllerValues, channel << 7, (channel + 1) << 7, (byte)0);
+		if( isGS ) rhythmParts[channel] = (channel == 9);
+		resetAllControllers(channel);
+		controllerValues[(channel << 7) + 10] = 0x40; // Set pan to center
+	}
+	private void resetAllControllers(int channel) {
+		//
+		// See also:
+		//   Recommended Practice (RP-015)
+		//   Response to Reset All Controllers
+		//   http://www.midi.org/techspecs/rp15.php
+		//
+		int base = channel << 7;
+		// modulation
+		controllerValues[base + 0x01] = 0;
+		//
+		// pedals
+		for(int i=64; i<=67; i++) controllerValues[base + i] = 0;
+		//
+		// Set pitch bend to center
+		pitchBends[channel] = MIDISpec.PITCH_BEND_NONE;
+		channelPressures[channel] = 0;
+		//
+		// Set NRPN / RPN to null value
+		for(int i=98; i<=101; i++) controllerValues[base + i] = 127;
+	}
+	private void setRhythmPart(int channel, boolean isRhythmPart) {
+		beginUpdate();
+		rhythmParts[channel] = isRhythmPart;
+		endUpdate();
+	}
+	/**
+	 * データエントリ、インクリメント、デクリメントを反映します。
+	 * @param channel MIDIチャンネルインデックス
+	 * @param dataDiff インクリメントのとき 1、デクリメントのとき -1、それ以外 0
+	 */
+	private void changeRPNData(int channel, int dataDiff) {
+		int base = channel << 7;
+		if( dataDiff != 0 ) {
+			// Data increment or decrement (LSB in cents, carried to MSB at 100)
+			int dataMsb = controllerValues[base + 0x06];
+			int dataLsb = controllerValues[base + 0x26] + dataDiff;
+			if( dataLsb >= 100 ) {
+				dataLsb = 0;
+				if( dataMsb < 0x7F ) dataMsb++;
+			}
+			else if( dataLsb < 0 ) {
+				dataLsb = dataMsb > 0 ? 99 : 0;
+				if( dataMsb > 0 ) dataMsb--;
+			}
+			controllerValues[base + 0x06] = (byte)dataMsb;
+			controllerValues[base + 0x26] = (byte)dataLsb;
+		}
+		applyRPN(channel);
+	}
+	/**
+	 * 選択されているRPNにデータエントリの値を反映します。
+	 * @param channel MIDIチャンネルインデックス
+	 */
+	private void applyRPN(int channel) {
+		if( dataFor[channel] != DATA_FOR_RPN ) return;
+		int base = channel << 7;
+		// RPN (MSB) - Accept 0x00 only
+		if( controllerValues[base + 0x65] != 0x00 ) return;
+		// RPN (LSB)
+		switch( controllerValues[base + 0x64] ) {
+		case 0x00: // Pitch Bend Sensitivity
+			if( controllerValues[base + 0x06] == 0 ) return;
+			pitchBendSensitivities[channel] = controllerValues[base + 0x06];
+			break;
+		}
+	}
+	private void controlChange(int channel, int controller, int value) {
+		beginUpdate();
+		controllerValues[(channel << 7) + controller] = (byte)(value & 0x7F);
+		switch( controller ) {
+		case 0x79: // Reset All Controllers
+			resetAllControllers(channel);
+			break;
+
+		case 0x06: // Data Entry (MSB)
+		case 0x26: // Data Entry (LSB)
+			changeRPNData(channel, 0);
+			break;
+
+		case 0x60: // Data Increment
+			changeRPNData(channel, 1);
+			break;
+
+		case 0x61: // Data Decrement
+			changeRPNData(channel, -1);
+			break;
+
+			// Non-Registered Parameter Number
+		case 0x62: // NRPN (LSB)
+		case 0x63: // NRPN (MSB)
+			dataFor[channel] = DATA_FOR_NRPN;
+			break;
+
+			// Registered Parameter Number
+		case 0x64: // RPN (LSB)
+		case 0x65: // RPN (MSB)
+			dataFor[channel] = DATA_FOR_RPN;
+			applyRPN(channel);
+			break;
+		}
+		endUpdate();
+		MidiChannelStatusListener[] ls = listeners;
+		for( MidiChannelStatusListener l : ls ) l.controlChange(channel, controller, value);
+		switch( controller ) {
+		case 0x79: // Reset All Controllers
+			for( MidiChannelStatusListener l : ls ) l.controllersReset(channel);
+			break;
+		case 0x7B: // All Notes Off
+			for( MidiChannelStatusListener l : ls ) l.allNotesOff(channel);
+			break;
+		}
 	}
 	public void close() { }
+	@Override
+	public void sendShortMessage(int packedMessage, long timeStamp) {
+		send(packedMessage & 0xF0, packedMessage & 0x0F, (packedMessage >> 8) & 0x7F, (packedMessage >> 16) & 0x7F);
+	}
+	private void send(int command, int channel, int data1, int data2) {
+		switch ( command ) {
+		case ShortMessage.NOTE_ON:
+			if( data2 > 0 ) {
+				for( MidiChannelStatusListener l : listeners ) l.noteOn(channel, data1, data2);
+				break;
+			}
+			// Note On with velocity 0 is Note Off
+		case ShortMessage.NOTE_OFF:
+			for( MidiChannelStatusListener l : listeners ) l.noteOff(channel, data1, data2);
+			break;
+		case ShortMessage.CONTROL_CHANGE:
+			controlChange(channel, data1, data2);
+			break;
+		case ShortMessage.PROGRAM_CHANGE:
+			beginUpdate();
+			programs[channel] = data1;
+			endUpdate();
+			for( MidiChannelStatusListener l : listeners ) l.programChange(channel, data1);
+			break;
+		case ShortMessage.PITCH_BEND:
+			{
+				int b = (data1 & 0x7F) + ((data2 & 0x7F) << 7);
+				beginUpdate();
+				pitchBends[channel] = b;
+				endUpdate();
+				for( MidiChannelStatusListener l : listeners ) l.pitchBendChanged(channel, b);
+			}
+			break;
+		case ShortMessage.POLY_PRESSURE:
+			for( MidiChannelStatusListener l : listeners ) l.polyPressureChanged(channel, data1, data2);
+			break;
+		case ShortMessage.CHANNEL_PRESSURE:
+			beginUpdate();
+			channelPressures[channel] = data1;
+			endUpdate();
+			for( MidiChannelStatusListener l : listeners ) l.channelPressureChanged(channel, data1);
+			break;
+		}
+	}
 	public void send(MidiMessage message, long timeStamp) {
 		if ( message instanceof ShortMessage ) {
 			ShortMessage sm = (ShortMessage)message;
-			switch ( sm.getCommand() ) {
-			case ShortMessage.NOTE_ON:
-				get(sm.getChannel()).noteOn(sm.getData1(), sm.getData2());
-				break;
-			case ShortMessage.NOTE_OFF:
-				get(sm.getChannel()).noteOff(sm.getData1(), sm.getData2());
-				break;
-			case ShortMessage.CONTROL_CHANGE:
-				get(sm.getChannel()).controlChange(sm.getData1(), sm.getData2());
-				break;
-			case ShortMessage.PROGRAM_CHANGE:
-				get(sm.getChannel()).programChange(sm.getData1());
-				break;
-			case ShortMessage.PITCH_BEND:
-				{
-					int b = (sm.getData1() & 0x7F);
-					b += ((sm.getData2() & 0x7F) << 7);
-					get(sm.getChannel()).setPitchBend(b);
-				}
-				break;
-			case ShortMessage.POLY_PRESSURE:
-				get(sm.getChannel()).setPolyPressure(sm.getData1(), sm.getData2());
-				break;
-			case ShortMessage.CHANNEL_PRESSURE:
-				get(sm.getChannel()).setChannelPressure(sm.getData1());
-				break;
-			}
+			send(sm.getCommand(), sm.getChannel(), sm.getData1(), sm.getData2());
 		}
 		else if ( message instanceof SysexMessage ) {
 			SysexMessage sxm = (SysexMessage)message;
@@ -79,7 +373,7 @@ public abstract class AbstractMidiStatus extends Vector<AbstractMidiChannelStatu
 							boolean is_rhythm_part = ( data[7]==1 || data[7]==2 );
 							int ch = (data[5] & 0x0F);
 							if( ch == 0 ) ch = 9; else if( ch <= 9 ) ch--;
-							get(ch).setRhythmPart(is_rhythm_part);
+							setRhythmPart(ch, is_rhythm_part);
 						}
 						else if( data[4]==0x00 && data[5]==0x00 && data[6]==0x7F ) {
 							if( data[7]==0x00 && data[8]==0x01 ) {
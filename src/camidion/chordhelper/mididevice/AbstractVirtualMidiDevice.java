@@ -1,6 +1,7 @@
 package camidion.chordhelper.mididevice;
 
 import java.util.List;
+import java.util.Objects;
 import java.util.Vector;
 
 import javax.sound.midi.InvalidMidiDataException;
@@ -45,7 +46,13 @@ public abstract class AbstractVirtualMidiDevice implements VirtualMidiDevice {
 		microsecondOrigin = System.nanoTime()/1000;
 	}
 	@Override
-	public void close() { txList.clear(); isOpen = false; }
+	public void close() {
+		// 送信待ちキューにたまっているメッセージ（ノートオフなど）を送り終えてから接続を切る
+		setOutputQueue(0, MidiOutputQueue.OverflowPolicy.BLOCK);
+		txList.clear();
+		updateReceiverSnapshot();
+		isOpen = false;
+	}
 	/**
 	 * レシーバのリスト
 	 */
@@ -70,8 +77,27 @@ public abstract class AbstractVirtualMidiDevice implements VirtualMidiDevice {
 	}
 	/**
 	 * トランスミッタのリスト
+	 * <p>要素を変更したときは {@link #updateReceiverSnapshot()} を呼び出してください。</p>
 	 */
 	protected List<Transmitter> txList = new Vector<Transmitter>();
+	/**
+	 * 各トランスミッタの接続先レシーバの配列
+	 * <p>{@link #sendMidiMessage(MidiMessage)} はロックせずにこの配列を読み出して送信します。
+	 * 配列の中身は変更せず、接続や切断のたびに新しい配列に置き換えます（コピーオンライト）。
+	 * </p>
+	 */
+	private volatile Receiver[] receiverSnapshot = new Receiver[0];
+	/**
+	 * トランスミッタのリストとその接続先から、送信先レシーバの配列を作り直します。
+	 */
+	protected void updateReceiverSnapshot() {
+		synchronized(txList) {
+			receiverSnapshot = txList.stream()
+				.map(Transmitter::getReceiver)
+				.filter(Objects::nonNull)
+				.toArray(Receiver[]::new);
+		}
+	}
 	@Override
 	public List<Transmitter> getTransmitters() { return txList; }
 	private int maxTransmitters = -1;
@@ -89,21 +115,122 @@ public abstract class AbstractVirtualMidiDevice implements VirtualMidiDevice {
 		Transmitter newTx = new Transmitter() {
 			private Receiver rx = null;
 			@Override
-			public void close() { txList.remove(this); }
+			public void close() {
+				txList.remove(this);
+				updateReceiverSnapshot();
+			}
 			@Override
 			public Receiver getReceiver() { return rx; }
 			@Override
-			public void setReceiver(Receiver rx) { this.rx = rx; }
+			public void setReceiver(Receiver rx) {
+				this.rx = rx;
+				updateReceiverSnapshot();
+			}
 		};
 		txList.add(newTx);
 		return newTx;
 	}
+	/**
+	 * 送信待ちキュー（同期送信の場合null）
+	 */
+	private volatile MidiOutputQueue outputQueue;
+	/**
+	 * 送信待ちキューを返します。
+	 * @return 送信待ちキュー（同期送信の場合null）
+	 */
+	public MidiOutputQueue getOutputQueue() { return outputQueue; }
+	/**
+	 * 送信待ちキューを設定します。
+	 * <p>キューを設定すると、{@link #sendMidiMessage(MidiMessage)} や
+	 * {@link #sendShortMessage(int)} はメッセージをキューに入れてすぐに戻り、
+	 * 送信先への受け渡しはこのデバイス専用の送出スレッドで行われるようになります。
+	 * 容量に 0 を指定すると、キューを使わずに呼び出し元のスレッドで送信する元の動作に戻ります。
+	 * 置き換えられた古いキューがたまっていたメッセージを送り終えるまで待ってから、新しいキューに切り替えます。
+	 * その間に送ろうとしたメッセージは、切り替わるまで待たされ、切り替え後のキュー（または同期送信）で送られます。
+	 * デバイスを閉じた場合もキューは終了し、同期送信に戻ります。
+	 * </p>
+	 * @param capacity キューの容量（0 で同期送信）
+	 * @param overflowPolicy キューがあふれたときの扱い
+	 */
+	public void setOutputQueue(int capacity, MidiOutputQueue.OverflowPolicy overflowPolicy) {
+		setOutputQueue(capacity, overflowPolicy, 0L);
+	}
+	/**
+	 * コントローラ値をまとめる送信待ちキューを設定します。
+	 * <p>{@link #setOutputQueue(int, MidiOutputQueue.OverflowPolicy)} と同様ですが、
+	 * 送出待ちのコントロールチェンジ、ピッチベンド、チャンネルプレッシャーを、
+	 * 直後に（時間幅以内に）来た同じチャンネル、同じコントローラの新しい値で上書きします。
+	 * 他のメッセージとの前後関係は変わりません（詳しくは {@link MidiOutputQueue} を参照）。
+	 * マウスのドラッグなどで連続して送られるコントローラ値が、
+	 * 遅い送信先に古い値まですべて届くのを防ぎます。
+	 * </p>
+	 * @param capacity キューの容量（0 で同期送信）
+	 * @param overflowPolicy キューがあふれたときの扱い
+	 * @param coalescingWindowMicros コントローラ値をまとめる時間幅（マイクロ秒、0 でまとめない）
+	 */
+	public void setOutputQueue(int capacity, MidiOutputQueue.OverflowPolicy overflowPolicy, long coalescingWindowMicros) {
+		synchronized(outputQueueLock) {
+			MidiOutputQueue oldQueue = outputQueue;
+			if( oldQueue != null ) oldQueue.close();
+			outputQueue = capacity <= 0 ? null : new MidiOutputQueue(
+				"MIDI output - " + getDeviceInfo(), capacity, overflowPolicy, coalescingWindowMicros, this::dispatch
+			);
+		}
+	}
+	/**
+	 * 送信待ちキューを切り替える間、送信元を待たせるためのロック
+	 */
+	private final Object outputQueueLock = new Object();
 	@Override
 	public void sendMidiMessage(MidiMessage msg) {
-		long timestamp = getMicrosecondPosition();
-		for( Transmitter tx : txList ) {
-			Receiver rx = tx.getReceiver();
-			if(rx != null) rx.send(msg, timestamp);
+		send(0, msg, getMicrosecondPosition());
+	}
+	@Override
+	public void sendShortMessage(int packedMessage) {
+		send(packedMessage, null, getMicrosecondPosition());
+	}
+	/**
+	 * 送信待ちキューがあればキューに入れ、なければ送信先へ直接渡します。
+	 * <p>キューが閉じられていて入らなかった場合は、切り替えが終わるのを待って入れ直します。
+	 * 閉じたキューの送出スレッドから送る場合（送信先から折り返し送られてきた場合）は、
+	 * 切り替えを待つと終わらなくなるため、その場で直接渡します。
+	 * </p>
+	 */
+	private void send(int packedMessage, MidiMessage msg, long timestamp) {
+		for(;;) {
+			MidiOutputQueue queue = outputQueue;
+			if( queue == null || queue.isDispatcherThread() ) {
+				dispatch(packedMessage, msg, timestamp);
+				return;
+			}
+			if( msg == null ? queue.offer(packedMessage, timestamp) : queue.offer(msg, timestamp) ) return;
+			synchronized(outputQueueLock) {
+				// 切り替えが終わるまで待つ
+			}
+		}
+	}
+	/**
+	 * 送信先の全レシーバへメッセージを渡します。
+	 * @param packedMessage int 値に詰めたショートメッセージ（msg が null のときのみ有効）
+	 * @param msg MIDIメッセージ（int 値に詰めたショートメッセージの場合 null）
+	 * @param timestamp タイムスタンプ
+	 */
+	private void dispatch(int packedMessage, MidiMessage msg, long timestamp) {
+		for( Receiver rx : receiverSnapshot ) {
+			if( msg != null ) {
+				rx.send(msg, timestamp);
+				continue;
+			}
+			if( rx instanceof ShortMessageReceiver ) {
+				((ShortMessageReceiver)rx).sendShortMessage(packedMessage, timestamp);
+				continue;
+			}
+			// 受信側がメッセージを保持する（シーケンサの録音など）こともあるため、使い回さずに毎回生成する
+			try {
+				rx.send(ShortMessageReceiver.toShortMessage(packedMessage), timestamp);
+			} catch (InvalidMidiDataException e) {
+				e.printStackTrace();
+			}
 		}
 	}
 	/**
@@ -122,11 +249,13 @@ public abstract class AbstractVirtualMidiDevice implements VirtualMidiDevice {
 		 */
 		public VirtualDeviceMidiChannel(int channel) { this.channel = channel; }
 		private void sendShortMessage(int command, int data1, int data2) {
-			try {
-				sendMidiMessage(new ShortMessage(command, channel, data1, data2));
-			} catch (InvalidMidiDataException e) {
-				e.printStackTrace();
+			if( (data1 & ~0x7F) != 0 || (data2 & ~0x7F) != 0 ) {
+				new InvalidMidiDataException(
+					"Data byte out of range: data1=" + data1 + ", data2=" + data2
+				).printStackTrace();
+				return;
 			}
+			AbstractVirtualMidiDevice.this.sendShortMessage(ShortMessageReceiver.pack(command, channel, data1, data2));
 		}
 		@Override
 		public void noteOff(int noteNumber) { noteOff(noteNumber, 64); }
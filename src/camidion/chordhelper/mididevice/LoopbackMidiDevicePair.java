@@ -0,0 +1,138 @@
+package camidion.chordhelper.mididevice;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.ShortMessage;
+
+import camidion.chordhelper.ChordHelperApplet;
+
+/**
+ * 出力側に送ったMIDIメッセージがそのまま入力側から出てくる、仮想MIDIデバイスの組
+ * <p>ケーブルで MIDI OUT と MIDI IN をつないだ状態を、サウンドカードなしで再現します。
+ * 出力側（MIDI OUT、レシーバのみ）が受け取ったメッセージは、
+ * 入力側（MIDI IN、トランスミッタのみ）の全トランスミッタから送出されます。
+ * 入力側のタイムスタンプは、実際のMIDI入力デバイスと同じく、受け取った時点のマイクロ秒位置です。
+ * 両デバイスは同じ時計を共有するため、どちらの {@link #getMicrosecondPosition()} で比べても同じです。
+ * </p>
+ */
+public class LoopbackMidiDevicePair {
+	/**
+	 * 両デバイスで共有する時計の原点（{@link System#nanoTime()} / 1000、-1 で不定）
+	 */
+	private volatile long microsecondOrigin = -1;
+	/**
+	 * 両デバイスで共有するマイクロ秒位置を返します。
+	 * @return マイクロ秒位置（どちらのデバイスも開いていない場合 -1）
+	 */
+	public long getMicrosecondPosition() {
+		long origin = microsecondOrigin;
+		return origin == -1 ? -1 : System.nanoTime()/1000 - origin;
+	}
+	private synchronized void openClock() {
+		if( microsecondOrigin == -1 ) microsecondOrigin = System.nanoTime()/1000;
+	}
+	private synchronized void closeClock() {
+		if( ! inputDevice.isOpen() && ! outputDevice.isOpen() ) microsecondOrigin = -1;
+	}
+	/**
+	 * 組の片方のデバイスの共通部分
+	 */
+	private abstract class LoopbackDevice extends AbstractVirtualMidiDevice {
+		private Info info;
+		private LoopbackDevice(String name, String description) {
+			info = new Info(name, ChordHelperApplet.VersionInfo.AUTHER, description, ChordHelperApplet.VersionInfo.VERSION) {};
+		}
+		@Override
+		public Info getDeviceInfo() { return info; }
+		@Override
+		public long getMicrosecondPosition() { return LoopbackMidiDevicePair.this.getMicrosecondPosition(); }
+		@Override
+		public void open() {
+			openClock();
+			super.open();
+		}
+		@Override
+		public void close() {
+			super.close();
+			closeClock();
+		}
+	}
+	private LoopbackDevice inputDevice;
+	private LoopbackDevice outputDevice;
+	/**
+	 * 受け取ったメッセージの数
+	 */
+	private final AtomicLong loopedCount = new AtomicLong();
+	/**
+	 * 仮想MIDIデバイスの組を構築します。
+	 * @param name デバイス名（入力側は " IN"、出力側は " OUT" を付けた名前になります）
+	 */
+	public LoopbackMidiDevicePair(String name) {
+		inputDevice = new LoopbackDevice(name + " IN", "Loopback MIDI input") {
+			{ setMaxReceivers(0); }
+		};
+		outputDevice = new LoopbackDevice(name + " OUT", "Loopback MIDI output") {
+			{
+				setMaxTransmitters(0);
+				setReceiver(new ShortMessageReceiver() {
+					@Override
+					public void sendShortMessage(int packedMessage, long timeStamp) {
+						if( ! isOpen() ) return;
+						loopedCount.incrementAndGet();
+						inputDevice.sendShortMessage(packedMessage);
+					}
+					@Override
+					public void send(MidiMessage message, long timeStamp) {
+						if( ! isOpen() ) return;
+						loopedCount.incrementAndGet();
+						if( message instanceof ShortMessage && message.getStatus() < 0xF0 ) {
+							ShortMessage sm = (ShortMessage)message;
+							inputDevice.sendShortMessage(sm.getStatus() | (sm.getData1() << 8) | (sm.getData2() << 16));
+						} else {
+							// 受信側が保持することもあるため、複製してから送出
+							inputDevice.sendMidiMessage((MidiMessage)message.clone());
+						}
+					}
+					@Override
+					public void close() { }
+				});
+			}
+		};
+	}
+	/**
+	 * 入力側（MIDI IN）の仮想MIDIデバイスを返します。
+	 * @return 入力側のデバイス
+	 */
+	public AbstractVirtualMidiDevice getInputDevice() { return inputDevice; }
+	/**
+	 * 出力側（MIDI OUT）の仮想MIDIデバイスを返します。
+	 * @return 出力側のデバイス
+	 */
+	public AbstractVirtualMidiDevice getOutputDevice() { return outputDevice; }
+	/**
+	 * 出力側のレシーバを返します。
+	 * @return 出力側のレシーバ
+	 */
+	public Receiver getReceiver() { return outputDevice.getReceiver(); }
+	/**
+	 * 両デバイスを開きます。
+	 */
+	public void open() {
+		inputDevice.open();
+		outputDevice.open();
+	}
+	/**
+	 * 両デバイスを閉じます。
+	 */
+	public void close() {
+		outputDevice.close();
+		inputDevice.close();
+	}
+	/**
+	 * 出力側が受け取ったメッセージの数を返します。
+	 * @return メッセージ数
+	 */
+	public long getLoopedCount() { return loopedCount.get(); }
+}
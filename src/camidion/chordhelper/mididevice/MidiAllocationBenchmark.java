@@ -0,0 +1,163 @@
+package camidion.chordhelper.mididevice;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiChannel;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Transmitter;
+
+/**
+ * 仮想MIDIチャンネルからの送信で、メッセージ１件あたりに確保されるメモリ量を計測するヘッドレスの計測ツール
+ * <p>{@link LoopbackMidiDevicePair} の入力側デバイスのMIDIチャンネルから、ピッチベンドを送り続け、
+ * 送信スレッドで確保されたバイト数（{@link com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long)}）を
+ * 次の経路ごとにメッセージ数で割って表示します。
+ * </p>
+ * <ul>
+ * <li>packed：送信先が {@link ShortMessageReceiver} で、int 値のまま渡る経路</li>
+ * <li>fallback：送信先が通常の {@link Receiver} で、{@link ShortMessage} に変換して渡る経路</li>
+ * <li>sendMidiMessage：呼び出し側が {@link ShortMessage} を生成して {@link VirtualMidiDevice#sendMidiMessage(MidiMessage)} で送る経路</li>
+ * </ul>
+ * <p>コマンドラインから次のように起動します（GUI は使いません）。</p>
+ * <pre>
+ * java -Djava.awt.headless=true -cp MIDIChordHelper.jar camidion.chordhelper.mididevice.MidiAllocationBenchmark [オプション]
+ *   --messages N       計測するメッセージ数（既定値 1000000）
+ *   --warmup N         計測前に送るメッセージ数（既定値 200000）
+ *   --max-packed-bytes N  packed の１件あたりの確保量が N バイトを超えたら失敗とする
+ * </pre>
+ * <p>スレッドごとの確保量を取得できない JVM の場合、または packed の確保量が指定の上限を超えた場合、
+ * 終了コード 1 で終了します。</p>
+ */
+public class MidiAllocationBenchmark {
+	/**
+	 * 受け取ったメッセージを数えるだけの {@link ShortMessageReceiver}
+	 */
+	private static class CountingShortMessageReceiver implements ShortMessageReceiver {
+		private long count;
+		private int checksum;
+		@Override
+		public void sendShortMessage(int packedMessage, long timeStamp) {
+			count++;
+			checksum += packedMessage;
+		}
+		@Override
+		public void send(MidiMessage message, long timeStamp) {
+			count++;
+			checksum += message.getStatus();
+		}
+		@Override
+		public void close() { }
+	}
+	/**
+	 * 受け取ったメッセージを数えるだけの通常の {@link Receiver}
+	 */
+	private static class CountingReceiver implements Receiver {
+		private long count;
+		private int checksum;
+		@Override
+		public void send(MidiMessage message, long timeStamp) {
+			count++;
+			checksum += message.getStatus();
+		}
+		@Override
+		public void close() { }
+	}
+	/**
+	 * 送信処理
+	 */
+	private interface Sender {
+		void send(int i) throws InvalidMidiDataException;
+	}
+	private static com.sun.management.ThreadMXBean threadMXBean() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if( ! (bean instanceof com.sun.management.ThreadMXBean) ) return null;
+		com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean)bean;
+		if( ! sunBean.isThreadAllocatedMemorySupported() ) return null;
+		sunBean.setThreadAllocatedMemoryEnabled(true);
+		return sunBean;
+	}
+	/**
+	 * 指定の送信処理を繰り返し、１件あたりの確保量を計測します。
+	 * @param bean スレッドごとの確保量を取得する MXBean
+	 * @param sender 送信処理
+	 * @param warmup 計測前に送るメッセージ数
+	 * @param messages 計測するメッセージ数
+	 * @return １件あたりの確保量（バイト）
+	 * @throws InvalidMidiDataException メッセージを生成できなかった場合
+	 */
+	private static double measure(com.sun.management.ThreadMXBean bean, Sender sender, int warmup, int messages)
+		throws InvalidMidiDataException
+	{
+		for( int i = 0; i < warmup; i++ ) sender.send(i);
+		long threadId = Thread.currentThread().getId();
+		long before = bean.getThreadAllocatedBytes(threadId);
+		for( int i = 0; i < messages; i++ ) sender.send(i);
+		long after = bean.getThreadAllocatedBytes(threadId);
+		return (double)(after - before) / messages;
+	}
+	/**
+	 * コマンドラインから計測を実行します。
+	 * @param args コマンドライン引数（クラスの説明を参照）
+	 * @throws Exception 計測を実行できなかった場合
+	 */
+	public static void main(String[] args) throws Exception {
+		int messages = 1000000;
+		int warmup = 200000;
+		double maxPackedBytes = -1;
+		for( int i = 0; i < args.length; i++ ) {
+			switch( args[i] ) {
+			case "--messages": messages = Integer.parseInt(args[++i]); break;
+			case "--warmup": warmup = Integer.parseInt(args[++i]); break;
+			case "--max-packed-bytes": maxPackedBytes = Double.parseDouble(args[++i]); break;
+			default: throw new IllegalArgumentException("Unknown option: " + args[i]);
+			}
+		}
+		com.sun.management.ThreadMXBean bean = threadMXBean();
+		if( bean == null ) {
+			System.err.println("Thread allocation measurement is not supported on this JVM");
+			System.exit(1);
+		}
+		double packed;
+		LoopbackMidiDevicePair loopback = new LoopbackMidiDevicePair("Loopback");
+		loopback.open();
+		try {
+			AbstractVirtualMidiDevice device = loopback.getInputDevice();
+			MidiChannel channel = device.getChannels()[0];
+			CountingShortMessageReceiver packedReceiver = new CountingShortMessageReceiver();
+			CountingReceiver fallbackReceiver = new CountingReceiver();
+			packed = measureWith(device, packedReceiver, bean,
+				i -> channel.setPitchBend(i & 0x3FFF), warmup, messages);
+			double fallback = measureWith(device, fallbackReceiver, bean,
+				i -> channel.setPitchBend(i & 0x3FFF), warmup, messages);
+			double sendMidiMessage = measureWith(device, fallbackReceiver, bean,
+				i -> device.sendMidiMessage(new ShortMessage(ShortMessage.PITCH_BEND, 0, i & 0x7F, (i >> 7) & 0x7F)),
+				warmup, messages);
+			System.out.println(String.format(Locale.ROOT,
+				"messages=%d bytes/message: packed=%.2f fallback=%.2f sendMidiMessage=%.2f (checksum=%d)",
+				messages, packed, fallback, sendMidiMessage,
+				packedReceiver.count + fallbackReceiver.count + packedReceiver.checksum + fallbackReceiver.checksum));
+		} finally {
+			loopback.close();
+		}
+		System.exit(maxPackedBytes >= 0 && packed > maxPackedBytes ? 1 : 0);
+	}
+	/**
+	 * デバイスの送信先を指定のレシーバだけにして計測します。
+	 */
+	private static double measureWith(
+		AbstractVirtualMidiDevice device, Receiver receiver,
+		com.sun.management.ThreadMXBean bean, Sender sender, int warmup, int messages
+	) throws MidiUnavailableException, InvalidMidiDataException {
+		Transmitter tx = device.getTransmitter();
+		tx.setReceiver(receiver);
+		try {
+			return measure(bean, sender, warmup, messages);
+		} finally {
+			tx.close();
+		}
+	}
+}
@@ -200,7 +200,7 @@ public class MidiCablePane extends JComponent {
 			int ntx = txListModel == null ? 0 : txListModel.getSize();
 			for( int index=0 ; index < ntx; index++ ) {
 				Transmitter tx = txListModel.getElementAt(index);
-				Receiver rx = tx.getReceiver();
+				Receiver rx = MidiConnectionMonitor.unwrap(tx.getReceiver());
 				if( rx == null && (draggingLocation == null || ! tx.equals(draggingSource)) ) {
 					// このTransmitterから描画すべきケーブルはない
 					continue;
@@ -226,6 +226,17 @@ public class MidiCablePane extends JComponent {
 						g2.setStroke(tx.equals(draggingSource) ? VIRTUAL_CABLE_STROKE : CABLE_STROKE);
 						g2.setColor(colorOf(rx));
 						g2.drawLine(txBounds.x, txBounds.y, rxBounds.x, rxBounds.y);
+						// 計測中の接続には、ケーブルの中ほどにメッセージ数と平均遅延を表示
+						Receiver monitor = tx.getReceiver();
+						if( monitor instanceof MidiConnectionMonitor ) {
+							MidiConnectionMonitor m = (MidiConnectionMonitor)monitor;
+							double latency = m.getMeanLatency();
+							g2.setColor(Color.darkGray);
+							g2.drawString(
+								m.getMessageCount() + " msg" + (latency < 0 ? "" : String.format(", %.0f us", latency)),
+								(txBounds.x + rxBounds.x) / 2, (txBounds.y + rxBounds.y) / 2
+							);
+						}
 						break;
 					}
 				}
@@ -0,0 +1,69 @@
+package camidion.chordhelper.mididevice;
+
+import java.util.EventListener;
+
+/**
+ * {@link AbstractMidiStatus} が受信したMIDIチャンネルの状態変化を受け取るリスナー
+ * <p>各メソッドは、状態が更新された後、受信したスレッドからそのまま呼び出されます。
+ * 画面に反映する場合は、必要に応じて Swing のイベントディスパッチスレッドへ処理を移してください。
+ * 必要なメソッドだけをオーバーライドできるよう、何もしないデフォルト実装を用意しています。
+ * </p>
+ */
+public interface MidiChannelStatusListener extends EventListener {
+	/**
+	 * ノートオンを受信したときに呼び出されます。
+	 * @param channel MIDIチャンネルインデックス（チャンネル 1 のとき 0）
+	 * @param noteNumber ノート番号
+	 * @param velocity ベロシティ（1 以上、ベロシティ 0 のノートオンはノートオフとして通知されます）
+	 */
+	default void noteOn(int channel, int noteNumber, int velocity) {}
+	/**
+	 * ノートオフを受信したときに呼び出されます。
+	 * @param channel MIDIチャンネルインデックス（チャンネル 1 のとき 0）
+	 * @param noteNumber ノート番号
+	 * @param velocity ベロシティ
+	 */
+	default void noteOff(int channel, int noteNumber, int velocity) {}
+	/**
+	 * All Notes Off を受信したときに呼び出されます。
+	 * @param channel MIDIチャンネルインデックス（チャンネル 1 のとき 0）
+	 */
+	default void allNotesOff(int channel) {}
+	/**
+	 * コントロールチェンジを受信したときに呼び出されます。
+	 * @param channel MIDIチャンネルインデックス（チャンネル 1 のとき 0）
+	 * @param controller コントローラ番号
+	 * @param value 値
+	 */
+	default void controlChange(int channel, int controller, int value) {}
+	/**
+	 * コントローラ値がリセットされたとき（Reset All Controllers、GM/GS/XG リセットなど）に呼び出されます。
+	 * @param channel MIDIチャンネルインデックス（チャンネル 1 のとき 0）
+	 */
+	default void controllersReset(int channel) {}
+	/**
+	 * プログラムチェンジを受信したときに呼び出されます。
+	 * @param channel MIDIチャンネルインデックス（チャンネル 1 のとき 0）
+	 * @param program プログラム番号
+	 */
+	default void programChange(int channel, int program) {}
+	/**
+	 * ピッチベンドを受信したときに呼び出されます。
+	 * @param channel MIDIチャンネルインデックス（チャンネル 1 のとき 0）
+	 * @param pitchBend ピッチベンド値（0～16383、中央 8192）
+	 */
+	default void pitchBendChanged(int channel, int pitchBend) {}
+	/**
+	 * チャンネルプレッシャーを受信したときに呼び出されます。
+	 * @param channel MIDIチャンネルインデックス（チャンネル 1 のとき 0）
+	 * @param pressure プレッシャー値
+	 */
+	default void channelPressureChanged(int channel, int pressure) {}
+	/**
+	 * ポリフォニックキープレッシャーを受信したときに呼び出されます。
+	 * @param channel MIDIチャンネルインデックス（チャンネル 1 のとき 0）
+	 * @param noteNumber ノート番号
+	 * @param pressure プレッシャー値
+	 */
+	default void polyPressureChanged(int channel, int noteNumber, int pressure) {}
+}
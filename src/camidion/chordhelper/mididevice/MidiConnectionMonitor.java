@@ -0,0 +1,265 @@
+package camidion.chordhelper.mididevice;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Locale;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiDevice;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.Transmitter;
+
+/**
+ * {@link Transmitter} と {@link Receiver} の間の接続を流れるMIDIメッセージを計測するレシーバ
+ * <p>接続先のレシーバの代わりに {@link Transmitter#setReceiver(Receiver)} で設定すると、
+ * 受け取ったメッセージを本来のレシーバへそのまま渡しつつ、次の値を記録します。
+ * </p>
+ * <ul>
+ * <li>メッセージ数とレート（計測開始からの平均、メッセージ/秒）</li>
+ * <li>遅延：送信元MIDIデバイスの {@link MidiDevice#getMicrosecondPosition()} で見た現在時刻と、
+ * メッセージのタイムスタンプとの差（タイムスタンプが -1 のメッセージは対象外）と、そのヒストグラム</li>
+ * <li>タイムスタンプ間隔：連続するメッセージのタイムスタンプの差の平均と標準偏差（ジッタ）</li>
+ * <li>受け渡し時間：本来のレシーバの send にかかった時間</li>
+ * </ul>
+ * <p>本来のレシーバが {@link ShortMessageReceiver} であれば、
+ * int 値に詰めたショートメッセージもそのまま渡すため、計測によるオブジェクト生成は増えません。
+ * </p>
+ */
+public class MidiConnectionMonitor implements ShortMessageReceiver {
+	/**
+	 * 遅延ヒストグラムの区間数
+	 * <p>区間 i（i ≧ 1）は 2<sup>i-1</sup> 以上 2<sup>i</sup> 未満マイクロ秒、
+	 * 区間 0 は 1 マイクロ秒未満、最後の区間はそれ以上すべてを表します。
+	 * </p>
+	 */
+	public static final int LATENCY_HISTOGRAM_SIZE = 22;
+	/**
+	 * 本来のレシーバを返します。
+	 * <p>計測用のレシーバでなければ、引数のレシーバをそのまま返します。
+	 * 接続先の比較やケーブルの描画では、{@link Transmitter#getReceiver()} の代わりに
+	 * この値を使ってください。
+	 * </p>
+	 * @param rx レシーバ（null 可）
+	 * @return 本来のレシーバ
+	 */
+	public static Receiver unwrap(Receiver rx) {
+		return rx instanceof MidiConnectionMonitor ? ((MidiConnectionMonitor)rx).getReceiver() : rx;
+	}
+	private final MidiDevice sourceDevice;
+	private final Receiver receiver;
+	private final String name;
+	private long startNanos;
+	private long messageCount;
+	private long latencyCount;
+	private long latencyMin;
+	private long latencyMax;
+	private long latencySum;
+	private final long[] latencyHistogram = new long[LATENCY_HISTOGRAM_SIZE];
+	private long lastTimeStamp;
+	private long intervalCount;
+	private double intervalSum;
+	private double intervalSumOfSquares;
+	private long deliveryNanosSum;
+	private long deliveryNanosMax;
+	/**
+	 * 計測用のレシーバを構築します。
+	 * @param sourceDevice 送信元MIDIデバイス（遅延の基準となる時刻を得るために使います）
+	 * @param receiver 本来のレシーバ
+	 * @param name 接続の名前（CSV出力や情報表示に使います）
+	 */
+	MidiConnectionMonitor(MidiDevice sourceDevice, Receiver receiver, String name) {
+		this.sourceDevice = sourceDevice;
+		this.receiver = receiver;
+		this.name = name;
+		reset();
+	}
+	/**
+	 * 本来のレシーバを返します。
+	 * @return 本来のレシーバ
+	 */
+	public Receiver getReceiver() { return receiver; }
+	/**
+	 * 送信元MIDIデバイスを返します。
+	 * @return 送信元MIDIデバイス
+	 */
+	public MidiDevice getSourceDevice() { return sourceDevice; }
+	/**
+	 * 接続の名前を返します。
+	 */
+	@Override
+	public String toString() { return name; }
+	/**
+	 * 計測値をすべてクリアし、計測を開始しなおします。
+	 */
+	public synchronized void reset() {
+		startNanos = System.nanoTime();
+		messageCount = latencyCount = latencySum = 0;
+		latencyMin = Long.MAX_VALUE;
+		latencyMax = 0;
+		for( int i = 0; i < latencyHistogram.length; i++ ) latencyHistogram[i] = 0;
+		lastTimeStamp = -1;
+		intervalCount = 0;
+		intervalSum = intervalSumOfSquares = 0;
+		deliveryNanosSum = deliveryNanosMax = 0;
+	}
+	@Override
+	public void send(MidiMessage message, long timeStamp) {
+		long now = sourceDevice.getMicrosecondPosition();
+		long startNanos = System.nanoTime();
+		receiver.send(message, timeStamp);
+		record(timeStamp, now, System.nanoTime() - startNanos);
+	}
+	@Override
+	public void sendShortMessage(int packedMessage, long timeStamp) {
+		long now = sourceDevice.getMicrosecondPosition();
+		long startNanos = System.nanoTime();
+		if( receiver instanceof ShortMessageReceiver ) {
+			((ShortMessageReceiver)receiver).sendShortMessage(packedMessage, timeStamp);
+		} else {
+			try {
+				receiver.send(ShortMessageReceiver.toShortMessage(packedMessage), timeStamp);
+			} catch (InvalidMidiDataException e) {
+				e.printStackTrace();
+				return;
+			}
+		}
+		record(timeStamp, now, System.nanoTime() - startNanos);
+	}
+	/**
+	 * 本来のレシーバは送信元のものではないため、閉じません。
+	 */
+	@Override
+	public void close() { }
+	private synchronized void record(long timeStamp, long now, long deliveryNanos) {
+		messageCount++;
+		deliveryNanosSum += deliveryNanos;
+		if( deliveryNanos > deliveryNanosMax ) deliveryNanosMax = deliveryNanos;
+		if( timeStamp == -1 ) return;
+		if( now != -1 ) {
+			long latency = Math.max(0L, now - timeStamp);
+			latencyCount++;
+			latencySum += latency;
+			if( latency < latencyMin ) latencyMin = latency;
+			if( latency > latencyMax ) latencyMax = latency;
+			int i = 64 - Long.numberOfLeadingZeros(latency);
+			latencyHistogram[Math.min(i, latencyHistogram.length - 1)]++;
+		}
+		if( lastTimeStamp != -1 ) {
+			double interval = timeStamp - lastTimeStamp;
+			intervalCount++;
+			intervalSum += interval;
+			intervalSumOfSquares += interval * interval;
+		}
+		lastTimeStamp = timeStamp;
+	}
+	/**
+	 * 計測開始からのメッセージ数を返します。
+	 * @return メッセージ数
+	 */
+	public synchronized long getMessageCount() { return messageCount; }
+	/**
+	 * 計測開始からの経過時間を返します。
+	 * @return 経過時間（秒）
+	 */
+	public synchronized double getElapsedSeconds() { return (System.nanoTime() - startNanos) / 1e9; }
+	/**
+	 * 計測開始からの平均メッセージレートを返します。
+	 * @return メッセージ/秒
+	 */
+	public synchronized double getMessageRate() {
+		double sec = getElapsedSeconds();
+		return sec > 0 ? messageCount / sec : 0;
+	}
+	/**
+	 * 遅延を計測できたメッセージ数を返します。
+	 * @return 遅延を計測できたメッセージ数
+	 */
+	public synchronized long getLatencyCount() { return latencyCount; }
+	/**
+	 * 遅延の最小値を返します。
+	 * @return 遅延の最小値（マイクロ秒、計測できていない場合 -1）
+	 */
+	public synchronized long getMinLatency() { return latencyCount == 0 ? -1 : latencyMin; }
+	/**
+	 * 遅延の最大値を返します。
+	 * @return 遅延の最大値（マイクロ秒、計測できていない場合 -1）
+	 */
+	public synchronized long getMaxLatency() { return latencyCount == 0 ? -1 : latencyMax; }
+	/**
+	 * 遅延の平均値を返します。
+	 * @return 遅延の平均値（マイクロ秒、計測できていない場合 -1）
+	 */
+	public synchronized double getMeanLatency() {
+		return latencyCount == 0 ? -1 : (double)latencySum / latencyCount;
+	}
+	/**
+	 * 遅延のヒストグラムを返します。
+	 * @return 区間ごとのメッセージ数（長さ {@link #LATENCY_HISTOGRAM_SIZE} の新しい配列）
+	 */
+	public synchronized long[] getLatencyHistogram() { return latencyHistogram.clone(); }
+	/**
+	 * タイムスタンプ間隔の平均値を返します。
+	 * @return タイムスタンプ間隔の平均値（マイクロ秒、計測できていない場合 -1）
+	 */
+	public synchronized double getMeanInterval() {
+		return intervalCount == 0 ? -1 : intervalSum / intervalCount;
+	}
+	/**
+	 * タイムスタンプ間隔の標準偏差（ジッタ）を返します。
+	 * @return タイムスタンプ間隔の標準偏差（マイクロ秒、計測できていない場合 -1）
+	 */
+	public synchronized double getIntervalStandardDeviation() {
+		if( intervalCount == 0 ) return -1;
+		double mean = intervalSum / intervalCount;
+		return Math.sqrt(Math.max(0, intervalSumOfSquares / intervalCount - mean * mean));
+	}
+	/**
+	 * 本来のレシーバへの受け渡し時間の平均値を返します。
+	 * @return 受け渡し時間の平均値（マイクロ秒）
+	 */
+	public synchronized double getMeanDeliveryTime() {
+		return messageCount == 0 ? 0 : deliveryNanosSum / 1000.0 / messageCount;
+	}
+	/**
+	 * 本来のレシーバへの受け渡し時間の最大値を返します。
+	 * @return 受け渡し時間の最大値（マイクロ秒）
+	 */
+	public synchronized double getMaxDeliveryTime() { return deliveryNanosMax / 1000.0; }
+	/**
+	 * 遅延ヒストグラムの区間の上限を返します。
+	 * @param index 区間の位置
+	 * @return 上限（マイクロ秒、この値未満が区間に入る。最後の区間は -1）
+	 */
+	public static long latencyHistogramUpperBound(int index) {
+		return index >= LATENCY_HISTOGRAM_SIZE - 1 ? -1 : 1L << index;
+	}
+	/**
+	 * 計測値を CSV 形式で出力します。
+	 * <p>１行目が見出し、２行目以降が接続ごとの計測値です。</p>
+	 * @param monitors 出力する計測用レシーバ
+	 * @param out 出力先
+	 * @throws IOException 出力に失敗した場合
+	 */
+	public static void writeCsv(Collection<MidiConnectionMonitor> monitors, Appendable out) throws IOException {
+		out.append("connection,messages,elapsed_sec,rate_per_sec,latency_count,latency_min_us,latency_mean_us,latency_max_us"
+				+ ",interval_mean_us,interval_stddev_us,delivery_mean_us,delivery_max_us");
+		for( int i = 0; i < LATENCY_HISTOGRAM_SIZE; i++ ) {
+			long upper = latencyHistogramUpperBound(i);
+			out.append(upper < 0 ? ",latency_ge_" + (1L << (i - 1)) + "us" : ",latency_lt_" + upper + "us");
+		}
+		out.append("\r\n");
+		for( MidiConnectionMonitor m : monitors ) {
+			synchronized(m) {
+				out.append('"').append(m.name.replace("\"", "\"\"")).append('"')
+					.append(String.format(Locale.ROOT, ",%d,%.3f,%.3f,%d,%d,%.1f,%d,%.1f,%.1f,%.3f,%.3f",
+						m.messageCount, m.getElapsedSeconds(), m.getMessageRate(),
+						m.latencyCount, m.getMinLatency(), m.getMeanLatency(), m.getMaxLatency(),
+						m.getMeanInterval(), m.getIntervalStandardDeviation(),
+						m.getMeanDeliveryTime(), m.getMaxDeliveryTime()));
+				for( long count : m.latencyHistogram ) out.append(',').append(Long.toString(count));
+			}
+			out.append("\r\n");
+		}
+	}
+}
@@ -1,6 +1,13 @@
 package camidion.chordhelper.mididevice;
 
 import java.awt.event.ActionEvent;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 
 import javax.swing.AbstractAction;
 import javax.swing.Action;
@@ -8,9 +15,12 @@ import javax.swing.BoxLayout;
 import javax.swing.Icon;
 import javax.swing.JButton;
 import javax.swing.JDialog;
+import javax.swing.JFileChooser;
+import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JSplitPane;
+import javax.swing.filechooser.FileNameExtensionFilter;
 
 import camidion.chordhelper.ButtonIcon;
 
@@ -32,6 +42,36 @@ public class MidiDeviceDialog extends JDialog {
 	 * MIDIデバイスダイアログを開くアクションを返します。
 	 */
 	public Action getOpenAction() { return openAction; }
+	/**
+	 * 計測中の接続の計測値をCSVファイルに保存します。
+	 * @param deviceTreeModel デバイスツリーモデル
+	 */
+	private void exportConnectionStatistics(MidiDeviceTreeModel deviceTreeModel) {
+		List<MidiConnectionMonitor> monitors = deviceTreeModel.getConnectionMonitors();
+		String title = getTitle();
+		if( monitors.isEmpty() ) {
+			JOptionPane.showMessageDialog(this,
+				"No connection is monitored.\n計測中の接続がありません。"
+				+ "Tx を右クリックして Monitor latency を選ぶと計測を開始します。",
+				title, JOptionPane.INFORMATION_MESSAGE);
+			return;
+		}
+		JFileChooser fileChooser = new JFileChooser();
+		fileChooser.setFileFilter(new FileNameExtensionFilter("CSV (*.csv)", "csv"));
+		fileChooser.setSelectedFile(new File("midi-connection-statistics.csv"));
+		if( fileChooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION ) return;
+		File f = fileChooser.getSelectedFile();
+		if( f.exists() && JOptionPane.showConfirmDialog(this,
+				"Overwrite " + f.getName() + " ?\n" + f.getName() + " を上書きしてよろしいですか？",
+				title, JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE) != JOptionPane.YES_OPTION
+		) return;
+		try ( Writer w = new OutputStreamWriter(new FileOutputStream(f), StandardCharsets.UTF_8) ) {
+			MidiConnectionMonitor.writeCsv(monitors, w);
+		} catch( IOException ex ) {
+			ex.printStackTrace();
+			JOptionPane.showMessageDialog(this, ex, title, JOptionPane.ERROR_MESSAGE);
+		}
+	}
 	/**
 	 * MIDIデバイスダイアログを構築します。
 	 * @param deviceTreeModel デバイスツリーモデル
@@ -63,6 +103,10 @@ public class MidiDeviceDialog extends JDialog {
 							setToolTipText("Reset timestamp on transmittable MIDI devices");
 							addActionListener(e->deviceTreeModel.resetMicrosecondPosition());
 						}});
+						add(new JButton("Export latency CSV", new ButtonIcon(ButtonIcon.BOTTOM_ICON)) {{
+							setToolTipText("Save statistics of monitored connections to CSV file");
+							addActionListener(e->exportConnectionStatistics(deviceTreeModel));
+						}});
 						setLayout(new BoxLayout(this, BoxLayout.PAGE_AXIS));
 					}});
 					add(new JScrollPane(deviceInfoPane));
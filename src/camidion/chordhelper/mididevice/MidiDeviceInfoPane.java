@@ -1,9 +1,11 @@
 package camidion.chordhelper.mididevice;
 
 import java.beans.PropertyVetoException;
+import java.util.List;
 
 import javax.sound.midi.MidiDevice;
 import javax.swing.JEditorPane;
+import javax.swing.Timer;
 import javax.swing.event.InternalFrameAdapter;
 import javax.swing.event.InternalFrameEvent;
 import javax.swing.event.InternalFrameListener;
@@ -26,6 +28,7 @@ public class MidiDeviceInfoPane extends JEditorPane {
 				+ "<tr><th>Vendor</th><td>"+info.getVendor()+"</td></tr>"
 				+ "<tr><th>Status</th><td>"+(device.isOpen()?"Opened":"Closed")+"</td></tr>"
 				+ "</tbody></table>";
+			html += connectionMonitorTextOf(deviceModel);
 		}
 		else if( node instanceof MidiDeviceInOutType ) {
 			MidiDeviceInOutType ioType = (MidiDeviceInOutType)node;
@@ -37,6 +40,88 @@ public class MidiDeviceInfoPane extends JEditorPane {
 		html += "</body></html>";
 		return html;
 	}
+	/**
+	 * 計測中の接続があれば、その計測値を表形式で返します。
+	 * @param deviceModel 送信元のMIDIデバイスモデル
+	 * @return 計測値の表（計測中の接続がない場合は空文字列）
+	 */
+	private String connectionMonitorTextOf(MidiDeviceModel deviceModel) {
+		TransmitterListModel txListModel = deviceModel.getTransmitterListModel();
+		if( txListModel == null ) return "";
+		List<MidiConnectionMonitor> monitors = txListModel.getConnectionMonitors();
+		if( monitors.isEmpty() ) return "";
+		String html = "<br/><b>Connection statistics</b><br/>"
+			+ "<table border=\"1\"><tbody>"
+			+ "<tr><th>Connection</th><th>Messages</th><th>Rate[/s]</th>"
+			+ "<th>Latency min/avg/max[us]</th><th>Interval avg/jitter[us]</th><th>Delivery avg/max[us]</th></tr>";
+		for( MidiConnectionMonitor m : monitors ) {
+			html += "<tr><td>"+m+"</td><td>"+m.getMessageCount()+"</td>"
+				+ String.format("<td>%.1f</td>", m.getMessageRate())
+				+ (m.getLatencyCount() == 0 ? "<td>-</td>" : String.format("<td>%d / %.1f / %d</td>",
+					m.getMinLatency(), m.getMeanLatency(), m.getMaxLatency()))
+				+ (m.getMeanInterval() < 0 ? "<td>-</td>" : String.format("<td>%.1f / %.1f</td>",
+					m.getMeanInterval(), m.getIntervalStandardDeviation()))
+				+ String.format("<td>%.1f / %.1f</td>", m.getMeanDeliveryTime(), m.getMaxDeliveryTime())
+				+ "</tr>";
+		}
+		html += "</tbody></table>";
+		html += latencyHistogramTextOf(monitors);
+		return html;
+	}
+	/**
+	 * 遅延ヒストグラムを表形式で返します。
+	 * <p>どの接続でも空の区間は、両端から省きます。</p>
+	 * @param monitors 計測用レシーバ
+	 * @return 遅延ヒストグラムの表（遅延を計測できたメッセージがない場合は空文字列）
+	 */
+	private String latencyHistogramTextOf(List<MidiConnectionMonitor> monitors) {
+		long[][] histograms = new long[monitors.size()][];
+		int first = MidiConnectionMonitor.LATENCY_HISTOGRAM_SIZE, last = -1;
+		for( int i = 0; i < histograms.length; i++ ) {
+			long[] histogram = histograms[i] = monitors.get(i).getLatencyHistogram();
+			for( int j = 0; j < histogram.length; j++ ) {
+				if( histogram[j] == 0 ) continue;
+				if( j < first ) first = j;
+				if( j > last ) last = j;
+			}
+		}
+		if( last < 0 ) return "";
+		String html = "<br/><b>Latency histogram[us]</b><br/>"
+			+ "<table border=\"1\"><tbody><tr><th>Connection</th>";
+		for( int j = first; j <= last; j++ ) {
+			long upper = MidiConnectionMonitor.latencyHistogramUpperBound(j);
+			html += "<th>" + (upper < 0 ? "&ge;" + (1L << (j - 1)) : "&lt;" + upper) + "</th>";
+		}
+		html += "</tr>";
+		for( int i = 0; i < histograms.length; i++ ) {
+			html += "<tr><td>"+monitors.get(i)+"</td>";
+			for( int j = first; j <= last; j++ ) html += "<td>"+histograms[i][j]+"</td>";
+			html += "</tr>";
+		}
+		html += "</tbody></table>";
+		return html;
+	}
+	/**
+	 * 表示中のツリーノード
+	 */
+	private Object currentNode;
+	/**
+	 * ツリーノードを設定し、その内容を表示します。
+	 * @param node 表示するツリーノード
+	 */
+	private void setNode(Object node) {
+		currentNode = node;
+		setText(treeNodeTextOf(node));
+	}
+	/**
+	 * 計測中の接続がある MIDI デバイスを表示しているとき、計測値を定期的に更新するタイマー
+	 */
+	private Timer monitorUpdateTimer = new Timer(1000, e->{
+		if( ! isShowing() || ! (currentNode instanceof MidiDeviceModel) ) return;
+		TransmitterListModel txListModel = ((MidiDeviceModel)currentNode).getTransmitterListModel();
+		if( txListModel == null || txListModel.getConnectionMonitors().isEmpty() ) return;
+		setText(treeNodeTextOf(currentNode));
+	});
 	/**
 	 *	{@link MidiDeviceFrame} の開閉や選択を監視するリスナー
 	 */
@@ -47,7 +132,7 @@ public class MidiDeviceInfoPane extends JEditorPane {
 		}
 		@Override
 		public void internalFrameActivated(InternalFrameEvent e) {
-			setText(treeNodeTextOf(((MidiDeviceFrame)e.getInternalFrame()).getMidiDeviceModel()));
+			setNode(((MidiDeviceFrame)e.getInternalFrame()).getMidiDeviceModel());
 		}
 		@Override
 		public void internalFrameClosing(InternalFrameEvent e) {
@@ -65,7 +150,7 @@ public class MidiDeviceInfoPane extends JEditorPane {
 				}
 				ｆ.setVisible(false);
 			}
-			setText(treeNodeTextOf(m));
+			setNode(m);
 		}
 	};
 	/**
@@ -73,14 +158,15 @@ public class MidiDeviceInfoPane extends JEditorPane {
 	 * @param treePath　表示するツリーパス
 	 */
 	public void setTreePath(TreePath treePath) {
-		setText(treeNodeTextOf(treePath == null ? null : treePath.getLastPathComponent()));
+		setNode(treePath == null ? null : treePath.getLastPathComponent());
 	}
 	/**
 	 * MIDIデバイス情報表示エリアを構築します。
 	 */
 	public MidiDeviceInfoPane() {
         setContentType("text/html");
-		setText(treeNodeTextOf(null));
+		setNode(null);
 		setEditable(false);
+		monitorUpdateTimer.start();
 	}
 }
@@ -4,6 +4,7 @@ import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -207,6 +208,7 @@ public class MidiDeviceTreeModel extends AbstractList<MidiDeviceModel> implement
 		// 開いたデバイスを相互に接続する。
 		// 自身のTx/Rx同士の接続は、シーケンサーモデルはなし、それ以外（GUIデバイスモデル）はあり。
 		connectDevices(
+			Collections.emptyMap(),
 			openedDeviceModels.stream().filter(
 				rxm->Objects.nonNull(rxm.getReceiverListModel())
 			).collect(Collectors.toMap(
@@ -226,12 +228,30 @@ public class MidiDeviceTreeModel extends AbstractList<MidiDeviceModel> implement
 		stream().map(m->m.getTransmitterListModel()).filter(Objects::nonNull)
 			.forEach(tlm->tlm.resetMicrosecondPosition());
 	}
+	/**
+	 * 計測中のすべての接続の計測用レシーバを返します。
+	 * @return 計測用レシーバのリスト（計測中の接続がない場合は空のリスト）
+	 */
+	public List<MidiConnectionMonitor> getConnectionMonitors() {
+		return stream().map(m->m.getTransmitterListModel()).filter(Objects::nonNull)
+			.flatMap(tlm->tlm.getConnectionMonitors().stream())
+			.collect(Collectors.toList());
+	}
+	/**
+	 * 計測中の接続の計測用レシーバを、送信元のMIDIデバイスモデルごとに返します。
+	 * @return キーが{@link Transmitter}側デバイスモデル、値がその計測用レシーバのリストのマップ
+	 */
+	private Map<MidiDeviceModel, List<MidiConnectionMonitor>> getConnectionMonitorMap() {
+		return stream().filter(m->Objects.nonNull(m.getTransmitterListModel())).collect(
+			Collectors.toMap(Function.identity(), m->m.getTransmitterListModel().getConnectionMonitors())
+		);
+	}
 	/**
 	 * MIDIデバイス間の接続をすべて切断します。
 	 * 各{@link Receiver}ごとに相手デバイスの{@link Transmitter}を閉じながら、
 	 * 閉じる前の接続状態をマップに保存し、そのマップを返します。
 	 *
-	 * @return MIDIデバイスモデル接続マップ（再接続時に{@link #connectDevices(Map)}に指定可）
+	 * @return MIDIデバイスモデル接続マップ（再接続時に{@link #connectDevices(Map, Map)}に指定可）
 	 * <ul>
 	 * <li>キー：各{@link Receiver}を持つMIDIデバイスモデル</li>
 	 * <li>値：接続相手だった{@link Transmitter}を持つMIDIデバイスモデルのコレクション</li>
@@ -245,6 +265,8 @@ public class MidiDeviceTreeModel extends AbstractList<MidiDeviceModel> implement
 	/**
 	 * 指定された接続マップに従ってMIDIデバイス間を接続します。
 	 *
+	 * @param connectionMonitors {@link #getConnectionMonitorMap()} が返した、切断前の計測用レシーバ
+	 * （計測中だった接続は、再接続後も計測を続けます）
 	 * @param rxToTxConnections {@link #disconnectAllDevices()}
 	 * が返した（あるいはそれと同じ形式の）MIDIデバイスモデル接続マップ
 	 * <ul>
@@ -252,14 +274,22 @@ public class MidiDeviceTreeModel extends AbstractList<MidiDeviceModel> implement
 	 * <li>値：{@link Transmitter}側デバイスモデルのコレクション</li>
 	 * </ul>
 	 */
-	private void connectDevices(Map<MidiDeviceModel, Collection<MidiDeviceModel>> rxToTxConnections) {
+	private void connectDevices(
+		Map<MidiDeviceModel, List<MidiConnectionMonitor>> connectionMonitors,
+		Map<MidiDeviceModel, Collection<MidiDeviceModel>> rxToTxConnections
+	) {
 		rxToTxConnections.entrySet().stream().forEach(rxe->{
 			MidiDeviceModel rxm = rxe.getKey();
 			Receiver rx = rxm.getReceiver();
 			if( rx == null ) return;
+			List<Receiver> rxList = rxm.getMidiDevice().getReceivers();
 			rxe.getValue().stream().filter(Objects::nonNull).forEach(txm->{
 				try {
-					txm.getTransmitterListModel().openTransmitter().setReceiver(rx);
+					TransmitterListModel txListModel = txm.getTransmitterListModel();
+					MidiConnectionMonitor monitor = connectionMonitors.getOrDefault(txm, Collections.emptyList()).stream()
+						.filter(m -> rxList.contains(m.getReceiver()))
+						.findFirst().orElse(null);
+					txListModel.openTransmitter().setReceiver(txListModel.receiverFor(monitor, rx));
 				} catch( Exception ex ) {
 					String title = ChordHelperApplet.VersionInfo.NAME;
 					String message = "MIDIデバイス同士の接続に失敗しました。\n送信側(Tx):"+txm+" → 受信側(Rx):"+rxm+"\n\n" + ex;
@@ -280,10 +310,11 @@ public class MidiDeviceTreeModel extends AbstractList<MidiDeviceModel> implement
 	 * を接続したままで
 	 * {@link MidiSystem#getMidiDeviceInfo()} を呼び出すと Java VM がクラッシュしてしまいます。
 	 * これを避けるため、最初に{@link #disconnectAllDevices()}で接続をすべて切断してから
-	 * MIDIデバイスリストを最新の状態に更新し、その後{@link #connectDevices(Map)}で接続を復元します。
+	 * MIDIデバイスリストを最新の状態に更新し、その後{@link #connectDevices(Map, Map)}で接続を復元します。
 	 * </p>
 	 */
 	public void update() {
+		Map<MidiDeviceModel, List<MidiConnectionMonitor>> savedMonitors = getConnectionMonitorMap();
 		Map<MidiDeviceModel, Collection<MidiDeviceModel>> saved = disconnectAllDevices();
 		List<MidiDevice.Info> newDeviceInfo = new ArrayList<>(getMidiDeviceInfo());
 		Collection<MidiDeviceModel> oldDeviceModels = stream().filter(model->{
@@ -298,7 +329,7 @@ public class MidiDeviceTreeModel extends AbstractList<MidiDeviceModel> implement
 			saved.values().forEach(m->m.removeAll(oldDeviceModels)); // Tx
 		}
 		newDeviceInfo.forEach(info->add(getMidiDevice(info)));
-		connectDevices(saved);
+		connectDevices(savedMonitors, saved);
 		fireTreeStructureChanged(this, null, null, null);
 	}
 
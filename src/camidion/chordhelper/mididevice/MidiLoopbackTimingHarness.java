@@ -0,0 +1,285 @@
+package camidion.chordhelper.mididevice;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.Sequencer;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+
+import camidion.chordhelper.midieditor.SequenceTickIndex;
+
+/**
+ * Java Sound のシーケンサで再生したMIDIシーケンスを {@link LoopbackMidiDevicePair} で折り返し、
+ * 配送のタイミングを計測するヘッドレスの計測ツール
+ * <p>サウンドカードのないビルドマシン上で、シーケンサから仮想MIDIデバイスまでの
+ * 配送レート、本来のタイミング（tick 位置とテンポから求めた時刻）との誤差、
+ * 届かなかったメッセージ数を計測し、タイミングの劣化を検出できるようにします。
+ * </p>
+ * <p>コマンドラインから次のように起動します（GUI は使いません）。</p>
+ * <pre>
+ * java -Djava.awt.headless=true -cp MIDIChordHelper.jar camidion.chordhelper.mididevice.MidiLoopbackTimingHarness [オプション] [MIDIファイル]
+ *   --max-jitter-us N  誤差の標準偏差が N マイクロ秒を超えたら失敗とする
+ *   --notes N          MIDIファイルを指定しない場合に生成するノート数（既定値 1000）
+ *   --bpm N            生成するシーケンスのテンポ（既定値 240）
+ *   --tolerance-us N   本来の時刻からこの範囲（マイクロ秒）に届いたメッセージだけを照合する（既定値 100000）
+ * </pre>
+ * <p>届かなかったメッセージがある場合、再生終了を待ちきれなかった場合、
+ * または誤差が指定の上限を超えた場合、終了コード 1 で終了します。</p>
+ */
+public class MidiLoopbackTimingHarness {
+	/**
+	 * 計測結果
+	 */
+	public static class Result {
+		/** 届くはずのメッセージ数 */
+		public long expectedCount;
+		/** 届いたメッセージ数（予定になかったものは含まない） */
+		public long deliveredCount;
+		/** 届かなかったメッセージ数 */
+		public long droppedCount;
+		/** 予定になかったメッセージ数（シーケンサが停止時に送るノートオフや、許容範囲外に届いたものなど） */
+		public long unexpectedCount;
+		/** 再生終了（End of Track）を待ちきれずにタイムアウトしたらtrue */
+		public boolean timedOut;
+		/** 最初のメッセージから最後のメッセージまでの時間（マイクロ秒） */
+		public long elapsedMicroseconds;
+		/** 誤差（届いた時刻 - 本来の時刻）の平均（マイクロ秒、再生開始の遅れを含む） */
+		public double meanError;
+		/** 誤差の標準偏差（マイクロ秒、ジッタ） */
+		public double errorStandardDeviation;
+		/** 誤差の最小値（マイクロ秒） */
+		public long minError;
+		/** 誤差の最大値（マイクロ秒） */
+		public long maxError;
+		/**
+		 * 配送レートを返します。
+		 * @return メッセージ/秒
+		 */
+		public double getDeliveryRate() {
+			return elapsedMicroseconds > 0 ? deliveredCount * 1e6 / elapsedMicroseconds : 0;
+		}
+		@Override
+		public String toString() {
+			return String.format(Locale.ROOT,
+				"expected=%d delivered=%d dropped=%d unexpected=%d%s rate=%.1f/s"
+				+ " error(us): mean=%.1f stddev=%.1f min=%d max=%d",
+				expectedCount, deliveredCount, droppedCount, unexpectedCount,
+				timedOut ? " TIMED-OUT" : "", getDeliveryRate(),
+				meanError, errorStandardDeviation, minError, maxError);
+		}
+	}
+	/**
+	 * メッセージを照合するためのキー（メッセージのバイト列そのもの）
+	 */
+	private static String keyOf(MidiMessage message) {
+		return new String(message.getMessage(), 0, message.getLength(), StandardCharsets.ISO_8859_1);
+	}
+	/**
+	 * 届いたメッセージとその時刻
+	 */
+	private static class TimedMessage {
+		private final String key;
+		private final long timeStamp;
+		private TimedMessage(String key, long timeStamp) {
+			this.key = key;
+			this.timeStamp = timeStamp;
+		}
+	}
+	/**
+	 * 本来の時刻が最も近い、まだ照合していない時刻を取り出します。
+	 * @param times 本来の時刻とその件数（同じ内容のメッセージのもの）
+	 * @param micros 届いた時刻（再生開始からのマイクロ秒）
+	 * @param toleranceMicros 照合する時刻の差の上限（マイクロ秒）
+	 * @return 取り出した本来の時刻（許容範囲内になければnull）
+	 */
+	private static Long pollNearest(TreeMap<Long, Integer> times, long micros, long toleranceMicros) {
+		Long floor = times.floorKey(micros);
+		Long ceiling = times.ceilingKey(micros);
+		if( floor != null && micros - floor > toleranceMicros ) floor = null;
+		if( ceiling != null && ceiling - micros > toleranceMicros ) ceiling = null;
+		Long nearest = floor == null ? ceiling :
+			ceiling == null || micros - floor <= ceiling - micros ? floor : ceiling;
+		if( nearest != null ) times.compute(nearest, (t, n) -> n > 1 ? n - 1 : null);
+		return nearest;
+	}
+	/**
+	 * MIDIシーケンスを再生し、折り返して届いたメッセージのタイミングを計測します。
+	 * <p>メタメッセージ以外のイベントを同じ内容のメッセージごとに待ち受け、
+	 * 届いたメッセージを、本来の時刻が最も近いまだ照合していないものと照合します。
+	 * 許容範囲内に照合できるものがなければ、予定になかったメッセージとして数えます。
+	 * </p>
+	 * @param sequence 再生するMIDIシーケンス
+	 * @param timeoutMillis 再生終了を待つ最大時間（ミリ秒）
+	 * @param toleranceMicros 照合する時刻の差の上限（マイクロ秒）
+	 * @return 計測結果
+	 * @throws MidiUnavailableException シーケンサを使用できない場合
+	 * @throws InvalidMidiDataException シーケンスが不正な場合
+	 * @throws InterruptedException 待っている間に割り込まれた場合
+	 */
+	public static Result run(Sequence sequence, long timeoutMillis, long toleranceMicros)
+		throws MidiUnavailableException, InvalidMidiDataException, InterruptedException
+	{
+		// 本来の時刻を、同じ内容のメッセージごとに時刻順に並べる
+		SequenceTickIndex tickIndex = new SequenceTickIndex(sequence);
+		Map<String, TreeMap<Long, Integer>> schedule = new HashMap<>();
+		long expectedCount = 0;
+		for( Track track : sequence.getTracks() ) {
+			for( int i = 0; i < track.size(); i++ ) {
+				MidiEvent event = track.get(i);
+				MidiMessage message = event.getMessage();
+				if( message instanceof MetaMessage ) continue;
+				schedule.computeIfAbsent(keyOf(message), k -> new TreeMap<>())
+					.merge(tickIndex.tickToMicrosecond(event.getTick()), 1, Integer::sum);
+				expectedCount++;
+			}
+		}
+		// シーケンサ → 折り返し → 計測用レシーバ とつなぐ
+		List<TimedMessage> arrivals = new ArrayList<>((int)expectedCount + 256);
+		LoopbackMidiDevicePair loopback = new LoopbackMidiDevicePair("Loopback");
+		loopback.open();
+		loopback.getInputDevice().getTransmitter().setReceiver(new Receiver() {
+			@Override
+			public void send(MidiMessage message, long timeStamp) {
+				synchronized(arrivals) { arrivals.add(new TimedMessage(keyOf(message), timeStamp)); }
+			}
+			@Override
+			public void close() { }
+		});
+		Sequencer sequencer = MidiSystem.getSequencer(false);
+		CountDownLatch endOfTrack = new CountDownLatch(1);
+		long startMicros;
+		boolean timedOut;
+		try {
+			sequencer.open();
+			sequencer.getTransmitter().setReceiver(loopback.getReceiver());
+			sequencer.setSequence(sequence);
+			sequencer.addMetaEventListener(meta -> {
+				if( meta.getType() == 0x2F ) endOfTrack.countDown();
+			});
+			startMicros = loopback.getMicrosecondPosition();
+			sequencer.start();
+			timedOut = ! endOfTrack.await(timeoutMillis, TimeUnit.MILLISECONDS);
+			// 最後のメッセージが届くまでの猶予
+			Thread.sleep(200);
+		} finally {
+			sequencer.close();
+			loopback.close();
+		}
+		// 届いた順に、本来の時刻が最も近いものと照合
+		Result result = new Result();
+		result.expectedCount = expectedCount;
+		result.timedOut = timedOut;
+		double sum = 0, sumOfSquares = 0;
+		long firstTimeStamp = -1, lastTimeStamp = -1;
+		result.minError = Long.MAX_VALUE;
+		result.maxError = Long.MIN_VALUE;
+		synchronized(arrivals) {
+			for( TimedMessage arrival : arrivals ) {
+				TreeMap<Long, Integer> times = schedule.get(arrival.key);
+				long micros = arrival.timeStamp - startMicros;
+				Long expectedMicros = times == null ? null : pollNearest(times, micros, toleranceMicros);
+				if( expectedMicros == null ) {
+					result.unexpectedCount++;
+					continue;
+				}
+				long error = micros - expectedMicros;
+				result.deliveredCount++;
+				sum += error;
+				sumOfSquares += (double)error * error;
+				if( error < result.minError ) result.minError = error;
+				if( error > result.maxError ) result.maxError = error;
+				if( firstTimeStamp == -1 ) firstTimeStamp = arrival.timeStamp;
+				lastTimeStamp = arrival.timeStamp;
+			}
+		}
+		result.droppedCount = result.expectedCount - result.deliveredCount;
+		if( result.deliveredCount > 0 ) {
+			result.meanError = sum / result.deliveredCount;
+			result.errorStandardDeviation = Math.sqrt(Math.max(0,
+				sumOfSquares / result.deliveredCount - result.meanError * result.meanError));
+			result.elapsedMicroseconds = lastTimeStamp - firstTimeStamp;
+		} else {
+			result.minError = result.maxError = 0;
+		}
+		return result;
+	}
+	/**
+	 * 計測用のMIDIシーケンスを生成します。
+	 * <p>16分音符のノートオン・オフを、16チャンネルに順に割り当てて並べます。
+	 * 途中でコントロールチェンジとピッチベンドもはさみます。
+	 * </p>
+	 * @param notes ノート数
+	 * @param bpm テンポ（４分音符/分）
+	 * @return 生成したMIDIシーケンス
+	 * @throws InvalidMidiDataException シーケンスを生成できなかった場合
+	 */
+	public static Sequence createTestSequence(int notes, int bpm) throws InvalidMidiDataException {
+		int resolution = 480;
+		Sequence sequence = new Sequence(Sequence.PPQ, resolution);
+		Track track = sequence.createTrack();
+		int microsecondsPerQuarter = 60000000 / bpm;
+		byte[] tempo = {
+			(byte)(microsecondsPerQuarter >> 16), (byte)(microsecondsPerQuarter >> 8), (byte)microsecondsPerQuarter
+		};
+		track.add(new MidiEvent(new MetaMessage(0x51, tempo, tempo.length), 0));
+		long tick = 0;
+		int step = resolution / 4;
+		for( int i = 0; i < notes; i++, tick += step ) {
+			int channel = i % 16;
+			int note = 36 + (i * 7) % 60;
+			track.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_ON, channel, note, 100), tick));
+			track.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_OFF, channel, note, 0), tick + step / 2));
+			if( i % 8 == 0 ) {
+				track.add(new MidiEvent(new ShortMessage(ShortMessage.CONTROL_CHANGE, channel, 1, i % 128), tick));
+				track.add(new MidiEvent(new ShortMessage(ShortMessage.PITCH_BEND, channel, i % 128, 64), tick + step / 4));
+			}
+		}
+		return sequence;
+	}
+	/**
+	 * コマンドラインから計測を実行します。
+	 * @param args コマンドライン引数（クラスの説明を参照）
+	 * @throws Exception 計測を実行できなかった場合
+	 */
+	public static void main(String[] args) throws Exception {
+		double maxJitter = -1;
+		int notes = 1000;
+		int bpm = 240;
+		long toleranceMicros = 100000;
+		File file = null;
+		for( int i = 0; i < args.length; i++ ) {
+			switch( args[i] ) {
+			case "--max-jitter-us": maxJitter = Double.parseDouble(args[++i]); break;
+			case "--notes": notes = Integer.parseInt(args[++i]); break;
+			case "--bpm": bpm = Integer.parseInt(args[++i]); break;
+			case "--tolerance-us": toleranceMicros = Long.parseLong(args[++i]); break;
+			default: file = new File(args[i]); break;
+			}
+		}
+		Sequence sequence = file == null ? createTestSequence(notes, bpm) : MidiSystem.getSequence(file);
+		long timeoutMillis = sequence.getMicrosecondLength() / 1000 + 10000;
+		Result result = run(sequence, timeoutMillis, toleranceMicros);
+		System.out.println(result);
+		if( result.timedOut ) System.err.println("Timed out waiting for End of Track after " + timeoutMillis + "ms");
+		boolean failed = result.droppedCount > 0 || result.timedOut
+			|| (maxJitter >= 0 && result.errorStandardDeviation > maxJitter);
+		System.exit(failed ? 1 : 0);
+	}
+}
@@ -0,0 +1,394 @@
+package camidion.chordhelper.mididevice;
+
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.ShortMessage;
+
+/**
+ * 仮想MIDIデバイスの送信待ちMIDIメッセージを保持する有界キュー
+ * <p>専用の送出スレッドがキューからメッセージを取り出して送信先へ渡すため、
+ * 送信先のレシーバが遅くても、送信元（Swing のイベントディスパッチスレッドなど）は待たされません。
+ * キューがあふれたときの扱いは {@link OverflowPolicy} で指定します。
+ * ノートオフ、ペダル（コントローラ番号 64～69）、チャンネルモードメッセージ（120～127）は、
+ * どの方針でも捨てられることはありません（捨てると音が鳴りっぱなしになりうるため）。
+ * バンクセレクト（0、32）、RPN/NRPN の選択とデータエントリーも、
+ * 捨てると後続のプログラムチェンジやデータエントリーの対象が変わってしまうため捨てません。
+ * 各コントローラの最新の値と、新しく送ろうとしたメッセージも捨てません（最後の値が届かないと、古い値のままになってしまうため）。
+ * </p>
+ * <p>まとめる時間幅を指定した場合、送出待ちのコントロールチェンジ、ピッチベンド、
+ * チャンネルプレッシャーは、同じチャンネル（コントロールチェンジは同じコントローラ番号も）の
+ * 新しい値が時間幅以内に来ると、その新しい値で上書きされます（送信先に届くのは最新の値だけになります）。
+ * 上書きするのは、キューの末尾（直前に入れたメッセージ）が同じ種類の値の場合だけで、
+ * 送信先から見たメッセージの順序は変わりません。
+ * RPN/NRPN の選択とデータエントリー、ペダル、チャンネルモードメッセージは、
+ * 前後関係や個々の値に意味があるため上書きしません。
+ * </p>
+ */
+public class MidiOutputQueue {
+	/**
+	 * キューがあふれたときの扱い
+	 */
+	public enum OverflowPolicy {
+		/**
+		 * 空きができるまで送信元を待たせます。
+		 */
+		BLOCK,
+		/**
+		 * キュー内で最も古いコントローラ値（コントロールチェンジ、ピッチベンド、
+		 * チャンネルプレッシャー、ポリフォニックキープレッシャー）のうち、
+		 * 同じチャンネルの同じ種類の新しい値が後ろにあるものを捨てて空きを作ります。
+		 * ただし、ペダル、チャンネルモードメッセージ、バンクセレクト、RPN/NRPN のコントロールチェンジは捨てません。
+		 * 捨てられるものがない場合は、空きができるまで送信元を待たせます。
+		 */
+		DROP_OLDEST_CONTROLLER,
+	}
+	/**
+	 * 取り出したメッセージの送出先
+	 */
+	interface Dispatcher {
+		/**
+		 * メッセージを送出します。
+		 * @param packedMessage int 値に詰めたショートメッセージ（message が null のときのみ有効）
+		 * @param message MIDIメッセージ（int 値に詰めたショートメッセージの場合 null）
+		 * @param timeStamp タイムスタンプ
+		 */
+		void dispatch(int packedMessage, MidiMessage message, long timeStamp);
+	}
+	private final Dispatcher dispatcher;
+	private final OverflowPolicy overflowPolicy;
+	private final int[] packedMessages;
+	private final MidiMessage[] messages;
+	private final long[] timeStamps;
+	/** キューに入れた時刻（{@link System#nanoTime()}） */
+	private final long[] offeredNanos;
+	/** 上書きしてまとめる時間幅（ナノ秒、0 でまとめない） */
+	private final long coalescingWindowNanos;
+	/** 先頭（次に取り出す）要素の位置 */
+	private int head = 0;
+	/** 要素数 */
+	private int size = 0;
+	/** 閉じられたらtrue */
+	private boolean isClosed = false;
+	private long enqueuedCount = 0;
+	private long droppedCount = 0;
+	private long coalescedCount = 0;
+	private int maxDepth = 0;
+	private final Thread dispatcherThread;
+	/**
+	 * キューを構築し、送出スレッドを開始します。
+	 * @param name 送出スレッドの名前
+	 * @param capacity 容量
+	 * @param overflowPolicy あふれたときの扱い
+	 * @param coalescingWindowMicros コントローラ値を上書きしてまとめる時間幅（マイクロ秒、0 でまとめない）
+	 * @param dispatcher 取り出したメッセージの送出先
+	 */
+	MidiOutputQueue(String name, int capacity, OverflowPolicy overflowPolicy, long coalescingWindowMicros, Dispatcher dispatcher) {
+		if( capacity <= 0 ) throw new IllegalArgumentException("capacity must be positive: " + capacity);
+		this.dispatcher = dispatcher;
+		this.overflowPolicy = overflowPolicy;
+		coalescingWindowNanos = Math.max(0L, coalescingWindowMicros) * 1000L;
+		packedMessages = new int[capacity];
+		messages = new MidiMessage[capacity];
+		timeStamps = new long[capacity];
+		offeredNanos = new long[capacity];
+		dispatcherThread = new Thread(this::dispatchLoop, name);
+		dispatcherThread.setDaemon(true);
+		dispatcherThread.start();
+	}
+	/**
+	 * 容量を返します。
+	 * @return 容量
+	 */
+	public int getCapacity() { return timeStamps.length; }
+	/**
+	 * あふれたときの扱いを返します。
+	 * @return あふれたときの扱い
+	 */
+	public OverflowPolicy getOverflowPolicy() { return overflowPolicy; }
+	/**
+	 * コントローラ値を上書きしてまとめる時間幅を返します。
+	 * @return 時間幅（マイクロ秒、0 でまとめない）
+	 */
+	public long getCoalescingWindowMicros() { return coalescingWindowNanos / 1000L; }
+	/**
+	 * 現在キューにたまっているメッセージ数を返します。
+	 * @return キューの深さ
+	 */
+	public synchronized int getDepth() { return size; }
+	/**
+	 * これまでにたまったメッセージ数の最大値を返します。
+	 * @return キューの深さの最大値
+	 */
+	public synchronized int getMaxDepth() { return maxDepth; }
+	/**
+	 * これまでにキューに入れられたメッセージ数を返します。
+	 * @return キューに入れられたメッセージ数
+	 */
+	public synchronized long getEnqueuedCount() { return enqueuedCount; }
+	/**
+	 * あふれて捨てられたメッセージ数を返します。
+	 * @return 捨てられたメッセージ数
+	 */
+	public synchronized long getDroppedCount() { return droppedCount; }
+	/**
+	 * 新しい値で上書きされてまとめられたメッセージ数を返します。
+	 * @return まとめられたメッセージ数
+	 */
+	public synchronized long getCoalescedCount() { return coalescedCount; }
+	/**
+	 * int 値に詰めたショートメッセージをキューに入れます。
+	 * @param packedMessage int 値に詰めたショートメッセージ
+	 * @param timeStamp タイムスタンプ
+	 * @return キューに入れたらtrue、キューが閉じられていて入れられなかった場合false
+	 */
+	boolean offer(int packedMessage, long timeStamp) {
+		return offer(packedMessage, null, timeStamp);
+	}
+	/**
+	 * MIDIメッセージをキューに入れます。
+	 * @param message MIDIメッセージ
+	 * @param timeStamp タイムスタンプ
+	 * @return キューに入れたらtrue、キューが閉じられていて入れられなかった場合false
+	 */
+	boolean offer(MidiMessage message, long timeStamp) {
+		int packedMessage = 0;
+		if( message instanceof ShortMessage ) {
+			ShortMessage sm = (ShortMessage)message;
+			packedMessage = sm.getStatus() | (sm.getData1() << 8) | (sm.getData2() << 16);
+		}
+		return offer(packedMessage, message, timeStamp);
+	}
+	/**
+	 * メッセージをキューに入れます。
+	 * <p>空きを待っている間に割り込まれても、メッセージは捨てずに待ち続け、
+	 * キューに入れてから割り込み状態を戻します（ノートオフなどを失わないため）。
+	 * </p>
+	 */
+	private synchronized boolean offer(int packedMessage, MidiMessage message, long timeStamp) {
+		if( isClosed ) return false;
+		int capacity = timeStamps.length;
+		long now = System.nanoTime();
+		if( coalescingWindowNanos > 0 && coalesce(packedMessage, message, timeStamp, now) ) return true;
+		boolean isInterrupted = false;
+		try {
+			while( size == capacity && ! isClosed ) {
+				if( overflowPolicy == OverflowPolicy.DROP_OLDEST_CONTROLLER ) {
+					if( removeOldestController() ) break;
+				}
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					isInterrupted = true;
+				}
+			}
+		} finally {
+			if( isInterrupted ) Thread.currentThread().interrupt();
+		}
+		if( isClosed ) return false;
+		int tail = (head + size) % capacity;
+		packedMessages[tail] = packedMessage;
+		messages[tail] = message;
+		timeStamps[tail] = timeStamp;
+		offeredNanos[tail] = now;
+		if( ++size > maxDepth ) maxDepth = size;
+		enqueuedCount++;
+		notifyAll();
+		return true;
+	}
+	/**
+	 * あふれたときに捨ててよいコントローラ値かどうか調べます。
+	 * @param packedMessage int 値に詰めたショートメッセージ（ショートメッセージでない場合 0）
+	 * @return 捨ててよいコントローラ値であればtrue
+	 */
+	private static boolean isDroppable(int packedMessage) {
+		switch( packedMessage & 0xF0 ) {
+		case ShortMessage.CONTROL_CHANGE:
+			int controller = (packedMessage >> 8) & 0x7F;
+			return ! isPedalOrChannelMode(controller) && ! isParameterControl(controller) && ! isBankSelect(controller);
+		case ShortMessage.PITCH_BEND:
+		case ShortMessage.CHANNEL_PRESSURE:
+		case ShortMessage.POLY_PRESSURE:
+			return true;
+		default:
+			return false;
+		}
+	}
+	/**
+	 * ペダルまたはチャンネルモードメッセージのコントローラ番号かどうか調べます。
+	 * <p>ダンパー（サステイン）ペダルの解放やオールノートオフなどを失うと
+	 * 音が鳴りっぱなしになるため、ノートオフと同様に扱います。
+	 * </p>
+	 * @param controller コントローラ番号
+	 * @return ペダル（64～69）またはチャンネルモードメッセージ（120～127）であればtrue
+	 */
+	private static boolean isPedalOrChannelMode(int controller) {
+		return controller >= 64 && controller <= 69 || controller >= 120;
+	}
+	/**
+	 * RPN/NRPN の選択またはデータエントリーのコントローラ番号かどうか調べます。
+	 * <p>選択とデータエントリーの組で１個のパラメータを設定するため、個々の値を上書きしてはいけません。</p>
+	 * @param controller コントローラ番号
+	 * @return データエントリー（6、38）、インクリメント／デクリメント（96、97）、
+	 * NRPN／RPN の選択（98～101）であればtrue
+	 */
+	private static boolean isParameterControl(int controller) {
+		return controller == 6 || controller == 38 || controller >= 96 && controller <= 101;
+	}
+	/**
+	 * バンクセレクトのコントローラ番号かどうか調べます。
+	 * <p>捨てると、後続のプログラムチェンジが別のバンクの音色を選んでしまいます。</p>
+	 * @param controller コントローラ番号
+	 * @return バンクセレクト（0、32）であればtrue
+	 */
+	private static boolean isBankSelect(int controller) {
+		return controller == 0 || controller == 32;
+	}
+	/**
+	 * 送出待ちの同じ種類のコントローラ値を、新しい値で上書きします。
+	 * <p>キューの末尾が、同じチャンネル、同じ種類（コントロールチェンジは同じコントローラ番号）の値で、
+	 * 時間幅以内に入れられたものであれば上書きします。
+	 * 間に別のメッセージ（別のコントローラを含む）をはさんだ値を上書きすると、
+	 * たとえば CC7 → リセットオールコントローラ → CC7 の順序が変わって結果が違ってしまうため、末尾しか見ません。
+	 * </p>
+	 * @return 上書きしたらtrue
+	 */
+	private boolean coalesce(int packedMessage, MidiMessage message, long timeStamp, long now) {
+		if( size == 0 ) return false;
+		int key = coalescingKeyOf(packedMessage);
+		if( key < 0 ) return false;
+		int index = (head + size - 1) % timeStamps.length;
+		if( now - offeredNanos[index] > coalescingWindowNanos ) return false;
+		if( coalescingKeyOf(packedMessages[index]) != key ) return false;
+		packedMessages[index] = packedMessage;
+		messages[index] = message;
+		timeStamps[index] = timeStamp;
+		coalescedCount++;
+		return true;
+	}
+	/**
+	 * 上書きしてまとめてよいメッセージかどうかの判定と、まとめる単位を返します。
+	 * @param packedMessage int 値に詰めたショートメッセージ（ショートメッセージでない場合 0）
+	 * @return まとめる単位（ステータスバイト、コントロールチェンジはコントローラ番号も含む）、
+	 * まとめてはいけないメッセージの場合 -1
+	 */
+	private static int coalescingKeyOf(int packedMessage) {
+		switch( packedMessage & 0xF0 ) {
+		case ShortMessage.CONTROL_CHANGE:
+			int controller = (packedMessage >> 8) & 0x7F;
+			if( isPedalOrChannelMode(controller) || isParameterControl(controller) ) return -1;
+			return packedMessage & 0x7FFF;
+		case ShortMessage.PITCH_BEND:
+		case ShortMessage.CHANNEL_PRESSURE:
+			return packedMessage & 0xFF;
+		default:
+			return -1;
+		}
+	}
+	/**
+	 * 同じ値で上書きされる（後ろに新しい値がある）かどうかを判定する単位を返します。
+	 * @param packedMessage 捨ててよいコントローラ値
+	 * @return ステータスバイト（コントロールチェンジとポリフォニックキープレッシャーは、
+	 * コントローラ番号やノート番号も含む）
+	 */
+	private static int supersedingKeyOf(int packedMessage) {
+		switch( packedMessage & 0xF0 ) {
+		case ShortMessage.CONTROL_CHANGE:
+		case ShortMessage.POLY_PRESSURE:
+			return packedMessage & 0x7FFF;
+		default:
+			return packedMessage & 0xFF;
+		}
+	}
+	/**
+	 * キュー内で、後ろに新しい値がある最も古いコントローラ値を取り除き、後続の要素を詰めます。
+	 * <p>各コントローラの最新の値は取り除きません。</p>
+	 * @return 取り除いたらtrue、取り除けるコントローラ値がなかった場合false
+	 */
+	private boolean removeOldestController() {
+		int capacity = timeStamps.length;
+		for( int i = 0; i < size; i++ ) {
+			int index = (head + i) % capacity;
+			if( ! isDroppable(packedMessages[index]) ) continue;
+			int key = supersedingKeyOf(packedMessages[index]);
+			boolean isSuperseded = false;
+			for( int j = i + 1; j < size && ! isSuperseded; j++ ) {
+				int packedMessage = packedMessages[(head + j) % capacity];
+				isSuperseded = isDroppable(packedMessage) && supersedingKeyOf(packedMessage) == key;
+			}
+			if( ! isSuperseded ) continue;
+			for( int j = i; j < size - 1; j++ ) {
+				int to = (head + j) % capacity;
+				int from = (to + 1) % capacity;
+				packedMessages[to] = packedMessages[from];
+				messages[to] = messages[from];
+				timeStamps[to] = timeStamps[from];
+				offeredNanos[to] = offeredNanos[from];
+			}
+			messages[(head + size - 1) % capacity] = null;
+			size--;
+			droppedCount++;
+			return true;
+		}
+		return false;
+	}
+	/**
+	 * 送出スレッドの処理
+	 */
+	private void dispatchLoop() {
+		int capacity = timeStamps.length;
+		for(;;) {
+			int packedMessage;
+			MidiMessage message;
+			long timeStamp;
+			synchronized(this) {
+				while( size == 0 ) {
+					if( isClosed ) return;
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				packedMessage = packedMessages[head];
+				message = messages[head];
+				timeStamp = timeStamps[head];
+				messages[head] = null;
+				head = (head + 1) % capacity;
+				size--;
+				notifyAll();
+			}
+			try {
+				dispatcher.dispatch(packedMessage, message, timeStamp);
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+	}
+	/**
+	 * 呼び出し元のスレッドが、このキューの送出スレッドかどうか調べます。
+	 * @return 送出スレッドであればtrue
+	 */
+	boolean isDispatcherThread() { return Thread.currentThread() == dispatcherThread; }
+	/**
+	 * キューを閉じます。
+	 * <p>以降にキューに入れようとしても入らなくなります（{@link #offer(int, long)} などが false を返します）。
+	 * すでにキューにたまっているメッセージを送出スレッドが送り終えて終了するまで待ってから戻ります。
+	 * ただし、送出スレッド自身から呼び出した場合は待ちません。
+	 * </p>
+	 */
+	void close() {
+		synchronized(this) {
+			isClosed = true;
+			notifyAll();
+		}
+		if( isDispatcherThread() ) return;
+		boolean isInterrupted = false;
+		while( dispatcherThread.isAlive() ) {
+			try {
+				dispatcherThread.join();
+			} catch (InterruptedException e) {
+				isInterrupted = true;
+			}
+		}
+		if( isInterrupted ) Thread.currentThread().interrupt();
+	}
+}
@@ -197,9 +197,24 @@ public class MidiSequencerModel extends MidiDeviceModel implements BoundedRangeM
 	public int getValue() { return (int)(getMicrosecondPosition()/RESOLUTION_MICROSECOND); }
 	@Override
 	public void setValue(int newValue) {
-		getSequencer().setMicrosecondPosition(RESOLUTION_MICROSECOND * (long)newValue);
+		setMicrosecondPosition(RESOLUTION_MICROSECOND * (long)newValue);
 		fireStateChanged();
 	}
+	/**
+	 * シーケンス上の現在位置をマイクロ秒単位で設定します。
+	 * シーケンスがロードされている場合は、そのシーケンスtickインデックスのテンポ情報で
+	 * tick位置に変換してから設定します。
+	 * @param microsecondPosition マイクロ秒単位での位置
+	 */
+	private void setMicrosecondPosition(long microsecondPosition) {
+		Sequencer sequencer = getSequencer();
+		if( sequenceTrackListTableModel == null ) {
+			sequencer.setMicrosecondPosition(microsecondPosition);
+			return;
+		}
+		SequenceTickIndex seqIndex = sequenceTrackListTableModel.getSequenceTickIndex();
+		sequencer.setTickPosition(seqIndex.microsecondToTick(microsecondPosition));
+	}
 	/**
 	 * 値調整中のときtrue
 	 */
@@ -223,7 +238,7 @@ public class MidiSequencerModel extends MidiDeviceModel implements BoundedRangeM
 	});
 	@Override
 	public void setRangeProperties(int value, int extent, int min, int max, boolean valueIsAdjusting) {
-		getSequencer().setMicrosecondPosition(RESOLUTION_MICROSECOND * (long)value);
+		setMicrosecondPosition(RESOLUTION_MICROSECOND * (long)value);
 		setValueIsAdjusting(valueIsAdjusting);
 		fireStateChanged();
 	}
@@ -306,6 +321,7 @@ public class MidiSequencerModel extends MidiDeviceModel implements BoundedRangeM
 				sequencer.setTrackSolo(trackIndex, false);
 			}
 		}
+		if( sequenceTableModel != null ) sequenceTableModel.loadAllTracks();
 		sequencer.setSequence(sequenceTableModel == null ? null : sequenceTableModel.getSequence());
 		startStopAction.updateEnableStatus();
 		if( this.sequenceTrackListTableModel != null ) this.sequenceTrackListTableModel.fireTableDataChanged();
@@ -26,6 +26,18 @@ public class ReceiverListModel extends AbstractTransceiverListModel<Receiver> {
 		MidiDevice device = deviceModel.getMidiDevice();
 		if( device.getReceivers().isEmpty() ) device.getReceiver();
 	}
+	/**
+	 * 指定された{@link Transmitter}を開いている相手デバイスの{@link TransmitterListModel}を返します。
+	 * @param tx {@link Transmitter}
+	 * @return {@link TransmitterListModel}（見つからない場合null）
+	 */
+	public TransmitterListModel getTransmitterListModelOf(Transmitter tx) {
+		return deviceModel.getDeviceTreeModel().stream()
+			.map(peer -> peer.getTransmitterListModel())
+			.filter(Objects::nonNull)
+			.filter(txListModel -> txListModel.getTransceivers().contains(tx))
+			.findFirst().orElse(null);
+	}
 	/**
 	 * このリストモデルの{@link Receiver}に接続された{@link Transmitter}を全て閉じ、
 	 * 接続相手だったMIDIデバイスモデルのユニークな集合を返します。
@@ -31,7 +31,9 @@ public class ReceiverListView extends AbstractTransceiverListView<Receiver> {
 			public boolean importData(TransferSupport support) {
 				try {
 					Transmitter tx = (Transmitter)support.getTransferable().getTransferData(getDestinationDataFlavor());
-					tx.setReceiver(getElementAt(support.getDropLocation().getDropPoint()));
+					Receiver rx = getElementAt(support.getDropLocation().getDropPoint());
+					TransmitterListModel txListModel = getModel().getTransmitterListModelOf(tx);
+					if( txListModel == null ) tx.setReceiver(rx); else txListModel.setReceiver(tx, rx);
 					return true;
 				} catch (Exception exception) {
 					exception.printStackTrace();
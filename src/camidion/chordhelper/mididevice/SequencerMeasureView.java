@@ -16,6 +16,7 @@ import camidion.chordhelper.midieditor.SequenceTrackListTableModel;
 public class SequencerMeasureView extends JPanel {
 	private MeasurePositionLabel measurePositionLabel;
 	private MeasureLengthLabel measureLengthLabel;
+	private SequenceTickIndex.MeasurePosition measurePosition = new SequenceTickIndex.MeasurePosition();
 	/**
 	 * シーケンサの現在の小節位置を表示するビューを構築します。
 	 * @param model スライダー用の時間範囲データモデル
@@ -50,8 +51,8 @@ public class SequencerMeasureView extends JPanel {
 			}
 			else {
 				long tickPosition = sequencer.getTickPosition();
-				int measurePosition = tickIndex.tickToMeasure(tickPosition);
-				measurePositionLabel.setMeasure(measurePosition, tickIndex.lastBeat);
+				tickIndex.tickToMeasure(tickPosition, measurePosition);
+				measurePositionLabel.setMeasure(measurePosition.measure, measurePosition.beat);
 			}
 		});
 	}
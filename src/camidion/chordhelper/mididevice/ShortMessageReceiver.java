@@ -0,0 +1,45 @@
+package camidion.chordhelper.mididevice;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.ShortMessage;
+
+/**
+ * {@link ShortMessage} を生成せずにショートメッセージを受け取れるレシーバ
+ * <p>仮想MIDIデバイスのMIDIチャンネルから送出されるメッセージは、
+ * このインターフェースを実装したレシーバに対しては int 値に詰めた形のまま渡され、
+ * メッセージごとのオブジェクト生成が行われません。
+ * それ以外のレシーバには従来どおり {@link ShortMessage} が渡されます。
+ * </p>
+ * <p>詰め方は、ビット 0～7 がステータスバイト（コマンドとチャンネル）、
+ * ビット 8～15 が第１データバイト、ビット 16～23 が第２データバイトです。
+ * </p>
+ */
+public interface ShortMessageReceiver extends Receiver {
+	/**
+	 * int 値に詰めたショートメッセージを受け取ります。
+	 * @param packedMessage int 値に詰めたショートメッセージ
+	 * @param timeStamp タイムスタンプ（マイクロ秒、-1 で不定）
+	 */
+	void sendShortMessage(int packedMessage, long timeStamp);
+	/**
+	 * ショートメッセージを int 値に詰めます。
+	 * @param command コマンド（{@link ShortMessage#NOTE_ON} など）
+	 * @param channel MIDIチャンネルインデックス（チャンネル 1 のとき 0）
+	 * @param data1 第１データバイト
+	 * @param data2 第２データバイト
+	 * @return int 値に詰めたショートメッセージ
+	 */
+	static int pack(int command, int channel, int data1, int data2) {
+		return (command & 0xF0) | (channel & 0x0F) | ((data1 & 0x7F) << 8) | ((data2 & 0x7F) << 16);
+	}
+	/**
+	 * int 値に詰めたショートメッセージから {@link ShortMessage} を生成します。
+	 * @param packedMessage int 値に詰めたショートメッセージ
+	 * @return 新しい {@link ShortMessage}
+	 * @throws InvalidMidiDataException ステータスバイトが不正な場合
+	 */
+	static ShortMessage toShortMessage(int packedMessage) throws InvalidMidiDataException {
+		return new ShortMessage(packedMessage & 0xFF, (packedMessage >> 8) & 0x7F, (packedMessage >> 16) & 0x7F);
+	}
+}
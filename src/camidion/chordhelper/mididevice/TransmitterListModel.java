@@ -1,6 +1,8 @@
 package camidion.chordhelper.mididevice;
 
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.stream.Collectors;
 
@@ -66,12 +68,83 @@ public class TransmitterListModel extends AbstractTransceiverListModel<Transmitt
 	 */
 	public List<Transmitter> closeTransmittersFor(Receiver rx) {
 		List<Transmitter> txToClose = getTransceivers().stream()
-				.filter(tx -> tx.getReceiver() == rx)
+				.filter(tx -> MidiConnectionMonitor.unwrap(tx.getReceiver()) == rx)
 				.collect(Collectors.toList());
 		txToClose.forEach(tx -> tx.close());
 		if( ! txToClose.isEmpty() ) fireIntervalRemoved(this, 0, getSize());
 		return txToClose;
 	}
+	/**
+	 * 指定された{@link Transmitter}の接続を流れるMIDIメッセージを計測するかどうかを設定し、
+	 * 状態が変わったことをこのモデルを参照しているビューへ通知します。
+	 * <p>計測する場合、接続先のレシーバを {@link MidiConnectionMonitor} で包みます。
+	 * 接続されていない{@link Transmitter}に対しては何もしません。
+	 * </p>
+	 * @param tx このリストモデルで開いている{@link Transmitter}
+	 * @param isMonitored 計測する場合true、やめる場合false
+	 */
+	public void setMonitored(Transmitter tx, boolean isMonitored) {
+		Receiver rx = tx.getReceiver();
+		if( rx == null || isMonitored == (rx instanceof MidiConnectionMonitor) ) return;
+		if( isMonitored ) {
+			tx.setReceiver(new MidiConnectionMonitor(deviceModel.getMidiDevice(), rx, connectionNameOf(rx)));
+		} else {
+			tx.setReceiver(MidiConnectionMonitor.unwrap(rx));
+		}
+		int index = indexOf(tx);
+		fireContentsChanged(this, index, index);
+	}
+	/**
+	 * 指定された{@link Transmitter}の接続先を変更し、
+	 * 状態が変わったことをこのモデルを参照しているビューへ通知します。
+	 * <p>計測中の接続であれば、新しい接続先でも計測を続けます。</p>
+	 * @param tx このリストモデルで開いている{@link Transmitter}
+	 * @param rx 新しい接続先の{@link Receiver}
+	 */
+	public void setReceiver(Transmitter tx, Receiver rx) {
+		tx.setReceiver(receiverFor(tx.getReceiver(), rx));
+		int index = indexOf(tx);
+		fireContentsChanged(this, index, index);
+	}
+	/**
+	 * このリストモデルの{@link Transmitter}の接続先を変えるとき、
+	 * 計測中の接続であれば計測を引き継ぐように、設定するレシーバを返します。
+	 * @param oldRx それまで設定されていたレシーバ（null 可）
+	 * @param rx 新しい接続先の{@link Receiver}
+	 * @return oldRx が計測用レシーバであれば rx を計測するレシーバ
+	 * （接続先が変わらなければ、計測値ごと oldRx をそのまま引き継ぎます）、そうでなければ rx
+	 */
+	Receiver receiverFor(Receiver oldRx, Receiver rx) {
+		if( ! (oldRx instanceof MidiConnectionMonitor) ) return rx;
+		if( ((MidiConnectionMonitor)oldRx).getReceiver() == rx ) return oldRx;
+		return new MidiConnectionMonitor(deviceModel.getMidiDevice(), rx, connectionNameOf(rx));
+	}
+	/**
+	 * 指定された{@link Transmitter}の接続を流れるMIDIメッセージを計測しているか調べます。
+	 * @param tx {@link Transmitter}
+	 * @return 計測していればtrue
+	 */
+	public boolean isMonitored(Transmitter tx) {
+		return tx.getReceiver() instanceof MidiConnectionMonitor;
+	}
+	/**
+	 * このリストモデルにある{@link Transmitter}の接続のうち、計測中のものの計測用レシーバを返します。
+	 * @return 計測用レシーバのリスト（計測中の接続がない場合は空のリスト）
+	 */
+	public List<MidiConnectionMonitor> getConnectionMonitors() {
+		return getTransceivers().stream()
+				.map(tx -> tx.getReceiver())
+				.filter(rx -> rx instanceof MidiConnectionMonitor)
+				.map(rx -> (MidiConnectionMonitor)rx)
+				.collect(Collectors.toList());
+	}
+	private String connectionNameOf(Receiver rx) {
+		String peerName = deviceModel.getDeviceTreeModel().stream()
+				.filter(peer -> peer.getMidiDevice().getReceivers().contains(rx))
+				.map(peer -> peer.toString())
+				.findFirst().orElse("?");
+		return deviceModel + " -> " + peerName;
+	}
 	/**
 	 * マイクロ秒位置をリセットします。
 	 * <p>マイクロ秒位置はMIDIデバイスを開いてからの時間で表されます。
@@ -90,19 +163,21 @@ public class TransmitterListModel extends AbstractTransceiverListModel<Transmitt
 		if( device instanceof Sequencer || ! device.isOpen() ) return;
 		//
 		// 接続状態を保存
-		//   自分Tx → 相手Rx
+		//   自分Tx → 相手Rx （計測中の接続は、計測用レシーバごと復元する）
 		List<Receiver> peerRxList = device.getTransmitters().stream()
 				.map(tx -> tx.getReceiver())
 				.filter(Objects::nonNull)
 				.collect(Collectors.toList());
-		//   自分Rx ← 相手Tx
+		//   自分Rx ← 相手Tx （計測中の接続は、計測用レシーバも覚えておく）
 		List<Receiver> myRxList = device.getReceivers(); // 基本的に 0件 or 1件
-		List<Transmitter> peerTxList = deviceModel.getDeviceTreeModel().stream()
+		Map<Transmitter, Receiver> peerTxToRx = new LinkedHashMap<>();
+		deviceModel.getDeviceTreeModel().stream()
 			.filter(peer -> peer != deviceModel)
-			.flatMap(peer -> peer.getMidiDevice().getTransmitters().stream().filter(
-				peerTx -> myRxList.stream().anyMatch(myRx -> myRx == peerTx.getReceiver())
-			))
-			.collect(Collectors.toList());
+			.flatMap(peer -> peer.getMidiDevice().getTransmitters().stream())
+			.forEach(peerTx -> {
+				Receiver rx = peerTx.getReceiver();
+				if( myRxList.stream().anyMatch(myRx -> myRx == MidiConnectionMonitor.unwrap(rx)) ) peerTxToRx.put(peerTx, rx);
+			});
 		device.close(); // 一旦閉じる
 		try {
 			device.open(); // 再び開くことでマイクロ秒位置がリセットされる
@@ -110,7 +185,21 @@ public class TransmitterListModel extends AbstractTransceiverListModel<Transmitt
 			//   自分Tx → 相手Rx （例外キャッチのためあえてラムダ式にしていない）
 			for( Receiver peerRx : peerRxList ) openTransmitter().setReceiver(peerRx);
 			//   自分Rx ← 相手Tx
-			if( ! myRxList.isEmpty() ) peerTxList.forEach(peerTx -> peerTx.setReceiver(myRxList.get(0)));
+			if( ! myRxList.isEmpty() ) {
+				Receiver myRx = myRxList.get(0);
+				peerTxToRx.forEach((peerTx, rx) -> {
+					if( rx instanceof MidiConnectionMonitor ) {
+						// 計測は続ける（レシーバが同じなら計測値もそのまま引き継ぐ）
+						MidiConnectionMonitor monitor = (MidiConnectionMonitor)rx;
+						if( monitor.getReceiver() != myRx ) {
+							rx = new MidiConnectionMonitor(monitor.getSourceDevice(), myRx, monitor.toString());
+						}
+					} else {
+						rx = myRx;
+					}
+					peerTx.setReceiver(rx);
+				});
+			}
 		} catch( MidiUnavailableException e ) {
 			e.printStackTrace();
 		}
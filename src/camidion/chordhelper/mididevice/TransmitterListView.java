@@ -2,10 +2,15 @@ package camidion.chordhelper.mididevice;
 
 import java.awt.datatransfer.DataFlavor;
 import java.awt.datatransfer.Transferable;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
 
 import javax.sound.midi.Receiver;
 import javax.sound.midi.Transmitter;
+import javax.swing.JCheckBoxMenuItem;
 import javax.swing.JComponent;
+import javax.swing.JMenuItem;
+import javax.swing.JPopupMenu;
 
 /**
  * {@link Transmitter}のリストビュー
@@ -19,8 +24,10 @@ public class TransmitterListView extends AbstractTransceiverListView<Transmitter
 	protected String toolTipTextFor(Transmitter tx) {
 		if( tx instanceof DummyTransmitter ) {
 			return "未接続の送信端子(Tx)：ドラッグ＆ドロップしてRxに接続できます。";
+		} else if( tx.getReceiver() instanceof MidiConnectionMonitor ) {
+			return "計測中の送信端子(Tx)：右クリックで計測をやめるか、計測値をクリアできます。";
 		} else {
-			return "接続済の送信端子(Tx)：ドラッグ＆ドロップして接続先Rxを変更、または切断できます。";
+			return "接続済の送信端子(Tx)：ドラッグ＆ドロップして接続先Rxを変更、または切断できます。右クリックで遅延を計測できます。";
 		}
 	}
 	@Override
@@ -57,7 +64,7 @@ public class TransmitterListView extends AbstractTransceiverListView<Transmitter
 					Receiver rx = (Receiver)support.getTransferable().getTransferData(getDestinationDataFlavor());
 					Transmitter tx = getElementAt(support.getDropLocation().getDropPoint());
 					if( tx instanceof DummyTransmitter ) tx = getModel().openTransmitter();
-					tx.setReceiver(rx);
+					getModel().setReceiver(tx, rx);
 					return true;
 				} catch (Exception exception) {
 					exception.printStackTrace();
@@ -65,5 +72,37 @@ public class TransmitterListView extends AbstractTransceiverListView<Transmitter
 				}
 			}
 		});
+		addMouseListener(new MouseAdapter() {
+			@Override
+			public void mousePressed(MouseEvent e) { showPopupMenu(e); }
+			@Override
+			public void mouseReleased(MouseEvent e) { showPopupMenu(e); }
+		});
+	}
+	/**
+	 * 接続済の{@link Transmitter}の上でポップアップメニューの操作が行われたら、
+	 * 接続の計測に関するメニューを表示します。
+	 * @param e マウスイベント
+	 */
+	private void showPopupMenu(MouseEvent e) {
+		if( ! e.isPopupTrigger() ) return;
+		int index = locationToIndex(e.getPoint());
+		if( index < 0 || ! getCellBounds(index, index).contains(e.getPoint()) ) return;
+		Transmitter tx = getModel().getElementAt(index);
+		if( tx == null || tx instanceof DummyTransmitter || tx.getReceiver() == null ) return;
+		setSelectedIndex(index);
+		boolean isMonitored = getModel().isMonitored(tx);
+		JPopupMenu popupMenu = new JPopupMenu();
+		popupMenu.add(new JCheckBoxMenuItem("Monitor latency", isMonitored) {{
+			setToolTipText("この接続を流れるMIDIメッセージの数、レート、遅延を計測");
+			addActionListener(event->TransmitterListView.this.getModel().setMonitored(tx, isSelected()));
+		}});
+		if( isMonitored ) popupMenu.add(new JMenuItem("Reset statistics") {{
+			addActionListener(event->{
+				Receiver rx = tx.getReceiver();
+				if( rx instanceof MidiConnectionMonitor ) ((MidiConnectionMonitor)rx).reset();
+			});
+		}});
+		popupMenu.show(this, e.getX(), e.getY());
 	}
 }
@@ -18,4 +18,12 @@ public interface VirtualMidiDevice extends MidiDevice {
 	 * @param msg MIDIメッセージ
 	 */
 	void sendMidiMessage(MidiMessage msg);
+	/**
+	 * int 値に詰めたショートメッセージを送信します。
+	 * <p>送信先が {@link ShortMessageReceiver} の場合はそのまま渡し、
+	 * それ以外の場合は {@link javax.sound.midi.ShortMessage} に変換して送信します。
+	 * </p>
+	 * @param packedMessage {@link ShortMessageReceiver#pack(int, int, int, int)} で詰めたショートメッセージ
+	 */
+	void sendShortMessage(int packedMessage);
 }
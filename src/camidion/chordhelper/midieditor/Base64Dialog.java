@@ -9,7 +9,6 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import javax.sound.midi.InvalidMidiDataException;
-import javax.sound.midi.MidiSystem;
 import javax.sound.midi.Sequence;
 import javax.swing.AbstractAction;
 import javax.swing.Action;
@@ -78,7 +77,7 @@ public class Base64Dialog extends JDialog {
 		}
 		Sequence sequence;
 		try (InputStream in = new ByteArrayInputStream(decodedData)) {
-			sequence = MidiSystem.getSequence(in);
+			sequence = StandardMidiFileReader.getSequence(in);
 		} catch( IOException|InvalidMidiDataException ex ) {
 			// MIDI以外のデータをエンコードしたBase64テキストが入力された場合
 			decodeError("Base64デコードした結果をMIDIシーケンスとして読み込めませんでした。\n"+ex);
@@ -258,19 +258,21 @@ public class MidiEventTable extends JTable {
 				return false;
 			}
 			MidiEvent newMidiEvent = new MidiEvent(msg, tick);
+			long scrollTick = tick;
+			// 上書き消去と追加（NoteOn/NoteOff の相手を含む）をまとめて一回でトラックに反映する
+			trackModel.beginBatchEdit();
 			if( midiEventsToBeOverwritten != null ) {
 				// 上書き消去するための選択済イベントがあった場合
 				trackModel.removeMidiEvents(midiEventsToBeOverwritten);
 			}
 			if( ! trackModel.addMidiEvent(newMidiEvent) ) {
 				System.out.println("addMidiEvent failure");
+				trackModel.commitBatchEdit();
 				return false;
 			}
 			if(pairNoteOnOffModel.isSelected() && form.isNote()) {
 				ShortMessage sm = form.createPartnerMessage();
-				if(sm == null)
-					scrollToEventAt( tick );
-				else {
+				if(sm != null) {
 					int duration = form.durationForm.getDuration();
 					if( form.isNote(false) ) {
 						duration = -duration;
@@ -281,9 +283,11 @@ public class MidiEventTable extends JTable {
 					if( ! trackModel.addMidiEvent(partner) ) {
 						System.out.println("addMidiEvent failure (note on/off partner message)");
 					}
-					scrollToEventAt(partnerTick > tick ? partnerTick : tick);
+					if( partnerTick > tick ) scrollTick = partnerTick;
 				}
 			}
+			trackModel.commitBatchEdit();
+			if(pairNoteOnOffModel.isSelected() && form.isNote()) scrollToEventAt(scrollTick);
 			seqModel.setModified(true);
 			eventDialog.setVisible(false);
 			return true;
@@ -480,11 +484,18 @@ public class MidiEventTable extends JTable {
 	JScrollPane scrollPane = new JScrollPane(this);
 	/**
 	 * 指定の MIDI tick のイベントへスクロールします。
+	 * <p>そのtick位置にある最初のイベントを選択し、同じtick位置のイベントがなるべくすべて見えるようにスクロールします。
+	 * 該当するイベントがない場合は、その後にある最初のイベントを選択します。
+	 * </p>
 	 * @param tick MIDI tick
 	 */
 	public void scrollToEventAt(long tick) {
-		int index = getModel().tickToIndex(tick);
-		scrollPane.getVerticalScrollBar().setValue(index * getRowHeight());
+		MidiEventTableModel model = getModel();
+		int index = model.tickToIndex(tick);
+		int lastIndex = Math.max(index, model.tickToLastIndex(tick));
+		// 同じtick位置の最後のイベントまで見せたうえで、最初のイベントが見えるようにする
+		scrollRectToVisible(getCellRect(lastIndex, 0, true));
+		scrollRectToVisible(getCellRect(index, 0, true));
 		getSelectionModel().setSelectionInterval(index, index);
 	}
 }
\ No newline at end of file
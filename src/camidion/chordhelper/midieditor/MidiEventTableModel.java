@@ -1,6 +1,15 @@
 package camidion.chordhelper.midieditor;
 
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.Vector;
 
 import javax.sound.midi.InvalidMidiDataException;
@@ -36,26 +45,23 @@ public class MidiEventTableModel extends AbstractTableModel {
 		},
 		/** tick位置に対応する小節 */
 		MEASURE_POSITION("Measure", Integer.class, 30) {
-			public Object getValue(SequenceTrackListTableModel seq, MidiEvent event) {
-				return seq.getSequenceTickIndex().tickToMeasure(event.getTick()) + 1;
+			@Override
+			public Object getValue(SequenceTickIndex.MeasurePosition position) {
+				return position.measure + 1;
 			}
 		},
 		/** tick位置に対応する拍 */
 		BEAT_POSITION("Beat", Integer.class, 20) {
 			@Override
-			public Object getValue(SequenceTrackListTableModel seq, MidiEvent event) {
-				SequenceTickIndex sti = seq.getSequenceTickIndex();
-				sti.tickToMeasure(event.getTick());
-				return sti.lastBeat + 1;
+			public Object getValue(SequenceTickIndex.MeasurePosition position) {
+				return position.beat + 1;
 			}
 		},
 		/** tick位置に対応する余剰tick（拍に収まらずに余ったtick数） */
 		EXTRA_TICK_POSITION("ExTick", Integer.class, 20) {
 			@Override
-			public Object getValue(SequenceTrackListTableModel seq, MidiEvent event) {
-				SequenceTickIndex sti = seq.getSequenceTickIndex();
-				sti.tickToMeasure(event.getTick());
-				return sti.lastExtraTick;
+			public Object getValue(SequenceTickIndex.MeasurePosition position) {
+				return position.extraTick;
 			}
 		},
 		/** MIDIメッセージ */
@@ -99,6 +105,12 @@ public class MidiEventTableModel extends AbstractTableModel {
 		public Object getValue(SequenceTrackListTableModel seq, MidiEvent event) {
 			return getValue(event);
 		}
+		/**
+		 * 列の値を返します。
+		 * @param position 対象イベントのtick位置を変換した小節位置
+		 * @return この列の対象イベントにおける値
+		 */
+		public Object getValue(SequenceTickIndex.MeasurePosition position) { return ""; }
 	}
 	/**
 	 * ラップされているMIDIトラック
@@ -149,10 +161,77 @@ public class MidiEventTableModel extends AbstractTableModel {
 		case MEASURE_POSITION:
 		case BEAT_POSITION:
 		case EXTRA_TICK_POSITION:
-		case MESSAGE: return c.getValue(sequenceTrackListTableModel, event);
+			SequenceTickIndex sti = sequenceTrackListTableModel.getSequenceTickIndex();
+			return c.getValue(decodedRowOf(event).getMeasurePosition(sti, event));
+		case MESSAGE: {
+			DecodedRow decodedRow = decodedRowOf(event);
+			if( decodedRow.message == null )
+				decodedRow.message = (String)c.getValue(sequenceTrackListTableModel, event);
+			return decodedRow.message;
+		}
 		default: return c.getValue(event);
 		}
 	}
+	/**
+	 * MIDIイベントから導出した行データ
+	 * <p>表示のたびに変換し直さなくて済むよう、
+	 * 小節位置やMIDIメッセージの文字列表現を保持します。</p>
+	 */
+	private static class DecodedRow {
+		/** 小節位置 */
+		final SequenceTickIndex.MeasurePosition measurePosition = new SequenceTickIndex.MeasurePosition();
+		/** 小節位置を変換したときのtick位置 */
+		long tick = -1;
+		/** 小節位置を変換したときの拍子区間の変更回数 */
+		int timeSignatureModCount;
+		/** MIDIメッセージの文字列表現（未変換の場合null） */
+		String message;
+		/**
+		 * 小節位置を返します。tick位置や拍子が変わっていた場合は変換し直します。
+		 * @param sti シーケンスtickインデックス
+		 * @param event MIDIイベント
+		 * @return 小節位置
+		 */
+		SequenceTickIndex.MeasurePosition getMeasurePosition(SequenceTickIndex sti, MidiEvent event) {
+			long eventTick = event.getTick();
+			int modCount = sti.getTimeSignatureModCount();
+			if( tick != eventTick || timeSignatureModCount != modCount ) {
+				sti.tickToMeasure(eventTick, measurePosition);
+				tick = eventTick;
+				timeSignatureModCount = modCount;
+			}
+			return measurePosition;
+		}
+	}
+	/**
+	 * 行データキャッシュの最大件数
+	 */
+	private static final int MAX_DECODED_ROWS = 2048;
+	/**
+	 * 行データキャッシュ（最近表示されたものから最大 {@link #MAX_DECODED_ROWS} 件）
+	 */
+	private Map<MidiEvent, DecodedRow> decodedRows = new LinkedHashMap<MidiEvent, DecodedRow>(64, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<MidiEvent, DecodedRow> eldest) {
+			return size() > MAX_DECODED_ROWS;
+		}
+	};
+	/**
+	 * 指定のMIDIイベントの行データをキャッシュから返します。
+	 * キャッシュにない場合は新たに作成します。
+	 * @param event MIDIイベント
+	 * @return 行データ
+	 */
+	private DecodedRow decodedRowOf(MidiEvent event) {
+		DecodedRow decodedRow = decodedRows.get(event);
+		if( decodedRow == null ) decodedRows.put(event, decodedRow = new DecodedRow());
+		return decodedRow;
+	}
+	/**
+	 * 行データキャッシュを破棄します。
+	 * MIDIメッセージの内容やテキストの文字コードが変わったときに呼び出します。
+	 */
+	void clearDecodedRows() { decodedRows.clear(); }
 	/**
 	 * セルを編集できるときtrue、編集できないときfalseを返します。
 	 */
@@ -193,17 +272,22 @@ public class MidiEventTableModel extends AbstractTableModel {
 		}
 		MidiEvent oldMidiEvent = track.get(row);
 		if( oldMidiEvent.getTick() == newTick ) return;
-		MidiEvent newMidiEvent = new MidiEvent(oldMidiEvent.getMessage(), newTick);
-		track.remove(oldMidiEvent);
-		track.add(newMidiEvent);
-		fireTableDataChanged();
-		sequenceTrackListTableModel.setModified(true);
+		replaceMidiEvent(oldMidiEvent, new MidiEvent(oldMidiEvent.getMessage(), newTick));
 	}
 	/**
 	 * MIDIトラックを返します。
 	 * @return MIDIトラック
 	 */
 	public Track getTrack() { return track; }
+	/**
+	 * 親のシーケンスモデルがトラックを作り直したとき、新しいトラックを指すように付け替えます。
+	 * @param track 同じイベントを持つ新しいトラック
+	 */
+	void setTrack(Track track) {
+		this.track = track;
+		partnerIndexes = null;
+		tickColumn = null;
+	}
 	/**
 	 * トラック名を返します。
 	 */
@@ -225,6 +309,8 @@ public class MidiEventTableModel extends AbstractTableModel {
 		if( name.equals(toString()) || ! MIDISpec.setNameBytesOf(
 			track, name.getBytes(sequenceTrackListTableModel.getCharset()))
 		) return false;
+		clearDecodedRows();
+		partnerIndexes = null;
 		sequenceTrackListTableModel.setModified(true);
 		fireTableDataChanged();
 		return true;
@@ -296,28 +382,86 @@ public class MidiEventTableModel extends AbstractTableModel {
 			}
 		}
 		if( isModified ) {
+			clearDecodedRows();
+			partnerIndexes = null;
 			sequenceTrackListTableModel.fireTrackChanged(track);
 			fireTableDataChanged();
 		}
 	}
+	/**
+	 * 行インデックスごとのtick位置（未作成の場合null）
+	 */
+	private long[] tickColumn;
+	/**
+	 * 行インデックスごとのtick位置を返します。
+	 * <p>必要になったときにトラック全体を１回走査して作成し、
+	 * イベントが追加、除去、変更されるまで使い回します。
+	 * </p>
+	 * @return tick位置の配列（昇順）
+	 */
+	private long[] getTickColumn() {
+		int trackSize = track.size();
+		if( tickColumn != null && tickColumn.length == trackSize ) return tickColumn;
+		long[] ticks = new long[trackSize];
+		for( int i = 0; i < trackSize; i++ ) ticks[i] = track.get(i).getTick();
+		return tickColumn = ticks;
+	}
+	/**
+	 * 指定のtick位置以降にある最初のイベントの行インデックスを二分探索します。
+	 * @param ticks 行インデックスごとのtick位置
+	 * @param tick MIDI tick
+	 * @return 行インデックス（該当するイベントがない場合は行数）
+	 */
+	private static int lowerBound(long[] ticks, long tick) {
+		int low = 0, high = ticks.length;
+		while( low < high ) {
+			int mid = (low + high) >>> 1;
+			if( ticks[mid] < tick ) low = mid + 1; else high = mid;
+		}
+		return low;
+	}
+	/**
+	 * 指定のtick位置より後にある最初のイベントの行インデックスを二分探索します。
+	 * @param ticks 行インデックスごとのtick位置
+	 * @param tick MIDI tick
+	 * @return 行インデックス（該当するイベントがない場合は行数）
+	 */
+	private static int upperBound(long[] ticks, long tick) {
+		int low = 0, high = ticks.length;
+		while( low < high ) {
+			int mid = (low + high) >>> 1;
+			if( ticks[mid] <= tick ) low = mid + 1; else high = mid;
+		}
+		return low;
+	}
 	/**
 	 * 指定の MIDI tick 位置にあるイベントを二分探索し、
 	 * そのイベントの行インデックスを返します。
+	 * <p>同じtick位置に複数のイベントがある場合はその最初のイベント、
+	 * 指定位置にイベントがない場合はそれより後にある最初のイベントの行インデックスを返します。
+	 * 指定位置より後にイベントがない場合は最後の行インデックスを返します。
+	 * </p>
 	 * @param tick MIDI tick
-	 * @return 行インデックス
+	 * @return 行インデックス（イベントがない場合 0）
 	 */
 	public int tickToIndex(long tick) {
 		if( track == null ) return 0;
-		int minIndex = 0;
-		int maxIndex = track.size() - 1;
-		while( minIndex < maxIndex ) {
-			int currentIndex = (minIndex + maxIndex) / 2 ;
-			long currentTick = track.get(currentIndex).getTick();
-			if( tick > currentTick ) minIndex = currentIndex + 1;
-			else if( tick < currentTick ) maxIndex = currentIndex - 1;
-			else return currentIndex;
-		}
-		return (minIndex + maxIndex) / 2;
+		long[] ticks = getTickColumn();
+		return Math.max(0, Math.min(lowerBound(ticks, tick), ticks.length - 1));
+	}
+	/**
+	 * 指定の MIDI tick 位置にあるイベントを二分探索し、
+	 * そのイベントの行インデックスを返します。
+	 * <p>同じtick位置に複数のイベントがある場合はその最後のイベント、
+	 * 指定位置にイベントがない場合はそれより前にある最後のイベントの行インデックスを返します。
+	 * 指定位置より前にイベントがない場合は 0 を返します。
+	 * </p>
+	 * @param tick MIDI tick
+	 * @return 行インデックス（イベントがない場合 0）
+	 */
+	public int tickToLastIndex(long tick) {
+		if( track == null ) return 0;
+		return Math.max(0, upperBound(getTickColumn(), tick) - 1);
 	}
 	/**
 	 * NoteOn/NoteOff ペアの一方の行インデックスから、
@@ -326,63 +470,58 @@ public class MidiEventTableModel extends AbstractTableModel {
 	 * @return ペアを構成する相手の行インデックス（ない場合は -1）
 	 */
 	public int getIndexOfPartnerFor(int index) {
-		if( track == null || index >= track.size() ) return -1;
-		MidiMessage msg = track.get(index).getMessage();
-		if( ! (msg instanceof ShortMessage) ) return -1;
-		ShortMessage sm = (ShortMessage)msg;
-		int cmd = sm.getCommand();
-		int i;
-		int ch = sm.getChannel();
-		int note = sm.getData1();
-		MidiMessage partner_msg;
-		ShortMessage partner_sm;
-		int partner_cmd;
-
-		switch( cmd ) {
-		case 0x90: // NoteOn
-		if( sm.getData2() > 0 ) {
-			// Search NoteOff event forward
-			for( i = index + 1; i < track.size(); i++ ) {
-				partner_msg = track.get(i).getMessage();
-				if( ! (partner_msg instanceof ShortMessage ) ) continue;
-				partner_sm = (ShortMessage)partner_msg;
-				partner_cmd = partner_sm.getCommand();
-				if( partner_cmd != 0x80 && partner_cmd != 0x90 ||
-						partner_cmd == 0x90 && partner_sm.getData2() > 0
-						) {
-					// Not NoteOff
-					continue;
-				}
-				if( ch != partner_sm.getChannel() || note != partner_sm.getData1() ) {
-					// Not my partner
-					continue;
-				}
-				return i;
-			}
-			break;
+		if( track == null || index < 0 || index >= track.size() ) return -1;
+		return getPartnerIndexes()[index];
+	}
+	/**
+	 * 行インデックスごとの NoteOn/NoteOff ペアの相手の行インデックス（未作成の場合null）
+	 */
+	private int[] partnerIndexes;
+	/**
+	 * 行インデックスごとの NoteOn/NoteOff ペアの相手の行インデックスを返します。
+	 * <p>NoteOn の相手はそれより後にある最初の NoteOff、
+	 * NoteOff の相手はそれより前にある最後の NoteOn（いずれも同じチャンネル、同じノート番号）です。
+	 * 必要になったときにトラック全体を前後１回ずつ走査して作成し、
+	 * イベントが追加、除去、変更されるまで使い回します。
+	 * </p>
+	 * @return 相手の行インデックスの配列（相手がない場合は -1）
+	 */
+	private int[] getPartnerIndexes() {
+		int trackSize = track.size();
+		if( partnerIndexes != null && partnerIndexes.length == trackSize ) return partnerIndexes;
+		int[] partners = new int[trackSize];
+		int[] noteIndexes = new int[MIDISpec.MAX_CHANNELS * 128];
+		Arrays.fill(partners, -1);
+		// NoteOff -> 直前の NoteOn
+		Arrays.fill(noteIndexes, -1);
+		for( int i = 0; i < trackSize; i++ ) {
+			int noteKey = noteKeyOf(track.get(i).getMessage());
+			if( noteKey > 0 ) noteIndexes[noteKey - 1] = i;
+			else if( noteKey < 0 ) partners[i] = noteIndexes[-noteKey - 1];
 		}
-		// When velocity is 0, it means Note Off, so no break.
-		case 0x80: // NoteOff
-			// Search NoteOn event backward
-			for( i = index - 1; i >= 0; i-- ) {
-				partner_msg = track.get(i).getMessage();
-				if( ! (partner_msg instanceof ShortMessage ) ) continue;
-				partner_sm = (ShortMessage)partner_msg;
-				partner_cmd = partner_sm.getCommand();
-				if( partner_cmd != 0x90 || partner_sm.getData2() <= 0 ) {
-					// Not NoteOn
-					continue;
-				}
-				if( ch != partner_sm.getChannel() || note != partner_sm.getData1() ) {
-					// Not my partner
-					continue;
-				}
-				return i;
-			}
-			break;
+		// NoteOn -> 直後の NoteOff
+		Arrays.fill(noteIndexes, -1);
+		for( int i = trackSize - 1; i >= 0; i-- ) {
+			int noteKey = noteKeyOf(track.get(i).getMessage());
+			if( noteKey < 0 ) noteIndexes[-noteKey - 1] = i;
+			else if( noteKey > 0 ) partners[i] = noteIndexes[noteKey - 1];
 		}
-		// Not found
-		return -1;
+		return partnerIndexes = partners;
+	}
+	/**
+	 * ノートメッセージのチャンネルとノート番号を一つの値にして返します。
+	 * @param msg MIDIメッセージ
+	 * @return NoteOn のとき 1 + チャンネル*128 + ノート番号、
+	 * NoteOff（ベロシティ 0 の NoteOn を含む）のときはその符号を反転した値、
+	 * ノートメッセージでなければ 0
+	 */
+	private static int noteKeyOf(MidiMessage msg) {
+		if( ! (msg instanceof ShortMessage) ) return 0;
+		ShortMessage sm = (ShortMessage)msg;
+		int cmd = sm.getCommand();
+		if( cmd != ShortMessage.NOTE_ON && cmd != ShortMessage.NOTE_OFF ) return 0;
+		int noteKey = 1 + (sm.getChannel() << 7) + sm.getData1();
+		return cmd == ShortMessage.NOTE_ON && sm.getData2() > 0 ? noteKey : -noteKey;
 	}
 	/**
 	 * ノートメッセージかどうか調べます。
@@ -420,34 +559,192 @@ public class MidiEventTableModel extends AbstractTableModel {
 		}
 		return events.toArray(new MidiEvent[1]);
 	}
+	/**
+	 * 一括編集の入れ子の深さ（0 のときは一括編集中でない）
+	 */
+	private int batchEditDepth = 0;
+	/**
+	 * 一括編集中に除去を予約されたMIDIイベント
+	 */
+	private Set<MidiEvent> pendingRemovedEvents = new LinkedHashSet<>();
+	/**
+	 * 一括編集中に追加を予約されたMIDIイベント
+	 */
+	private Set<MidiEvent> pendingAddedEvents = new LinkedHashSet<>();
+	/**
+	 * 一括編集を開始します。
+	 * <p>{@link #commitBatchEdit()} を呼び出すまでの間、
+	 * MIDIイベントの追加、除去、置き換えはトラックに反映されず、予約だけが行われます。
+	 * そのため一括編集中の行インデックスは開始前のままとなり、
+	 * 選択された行を順に移動、変更、削除するといった編集を行インデックスのずれなしに行えます。
+	 * </p>
+	 * <p>入れ子にすることができ、最も外側の {@link #commitBatchEdit()} で確定します。
+	 * </p>
+	 */
+	public void beginBatchEdit() { batchEditDepth++; }
+	/**
+	 * 一括編集を確定します。
+	 * <p>予約された除去と追加をトラックにまとめて反映した後、
+	 * テーブルモデルの変更通知、親のシーケンスモデルへのトラック変更通知、
+	 * シーケンスtickインデックスの更新をそれぞれ１回だけ行います。
+	 * </p>
+	 * @return トラックが変更されたらtrue（入れ子の内側で確定が先送りされた場合はfalse）
+	 * @throws IllegalStateException {@link #beginBatchEdit()} が呼び出されていなかった場合
+	 */
+	public boolean commitBatchEdit() {
+		if( batchEditDepth <= 0 )
+			throw new IllegalStateException("commitBatchEdit() called without beginBatchEdit()");
+		if( --batchEditDepth > 0 ) return false;
+		if( pendingRemovedEvents.isEmpty() && pendingAddedEvents.isEmpty() ) return false;
+		List<MidiEvent> removedEvents = new ArrayList<>(pendingRemovedEvents.size());
+		List<MidiEvent> addedEvents = new ArrayList<>(pendingAddedEvents.size());
+		if( ! rebuildTrack(removedEvents, addedEvents) ) {
+			// Track.remove() と Track.add() はどちらもトラックのイベント数 n に比例する時間がかかるため、
+			// この方法では k 個の変更に k・n に比例する時間がかかる
+			for( MidiEvent e : pendingRemovedEvents ) {
+				if( ! track.remove(e) ) continue;
+				removedEvents.add(e);
+				decodedRows.remove(e);
+			}
+			for( MidiEvent e : pendingAddedEvents ) if( track.add(e) ) addedEvents.add(e);
+		}
+		pendingRemovedEvents.clear();
+		pendingAddedEvents.clear();
+		if( removedEvents.isEmpty() && addedEvents.isEmpty() ) return false;
+		partnerIndexes = null;
+		tickColumn = null;
+		sequenceTrackListTableModel.getSequenceTickIndex().updateMidiEvents(
+			removedEvents.toArray(new MidiEvent[removedEvents.size()]),
+			addedEvents.toArray(new MidiEvent[addedEvents.size()])
+		);
+		sequenceTrackListTableModel.fireTrackChanged(track);
+		fireTableDataChanged();
+		return true;
+	}
+	/**
+	 * 全トラックを作り直す場合の、イベント１個あたりのコストの見積もり
+	 * （{@link Track#add(MidiEvent)} や {@link Track#remove(MidiEvent)} でイベント１個を走査するコストとの比）
+	 */
+	private static final int REBUILD_COST_FACTOR = 4;
+	/**
+	 * 予約された除去と追加を反映したイベントの並びを１回の走査で作り、トラックをまとめて置き換えます。
+	 * <p>変更の数とトラックのイベント数の積が、シーケンス全体のイベント数の {@value #REBUILD_COST_FACTOR} 倍を超える場合だけ行います
+	 * （全トラックを作り直すため、それより小さい場合は１個ずつ変更したほうが速い）。
+	 * シーケンサーに渡されている場合は置き換えられません。
+	 * </p>
+	 * @param removedEvents 実際に除去したイベントを入れるリスト
+	 * @param addedEvents 実際に追加したイベントを入れるリスト
+	 * @return 置き換えたらtrue、置き換えなかった場合false（リストは変更しません）
+	 */
+	private boolean rebuildTrack(List<MidiEvent> removedEvents, List<MidiEvent> addedEvents) {
+		int trackSize = track.size();
+		long changeCount = pendingRemovedEvents.size() + pendingAddedEvents.size();
+		long totalEventCount = 0;
+		for( Track t : sequenceTrackListTableModel.getSequence().getTracks() ) totalEventCount += t.size();
+		if( changeCount * trackSize <= REBUILD_COST_FACTOR * totalEventCount ) return false;
+		// 残すイベント（最後は End of Track）
+		int lastIndex = trackSize - 1;
+		List<MidiEvent> keptEvents = new ArrayList<>(lastIndex);
+		Set<MidiEvent> keptEventSet = new HashSet<>(trackSize);
+		List<MidiEvent> removed = new ArrayList<>(pendingRemovedEvents.size());
+		for( int i = 0; i < lastIndex; i++ ) {
+			MidiEvent e = track.get(i);
+			if( pendingRemovedEvents.contains(e) ) removed.add(e); else { keptEvents.add(e); keptEventSet.add(e); }
+		}
+		// 追加するイベントを tick 順に（安定ソートなので、同じ tick 位置では追加した順のまま）
+		List<MidiEvent> added = new ArrayList<>(pendingAddedEvents.size());
+		for( MidiEvent e : pendingAddedEvents ) if( ! keptEventSet.contains(e) ) added.add(e);
+		added.sort(Comparator.comparingLong(MidiEvent::getTick));
+		// Track.add() と同じく、同じ tick 位置ではすでにあったイベントを先にして合流させる
+		MidiEvent[] mergedEvents = new MidiEvent[keptEvents.size() + added.size()];
+		int i = 0, j = 0, n = 0;
+		while( i < keptEvents.size() || j < added.size() ) {
+			if( j >= added.size() || i < keptEvents.size() && keptEvents.get(i).getTick() <= added.get(j).getTick() ) {
+				mergedEvents[n++] = keptEvents.get(i++);
+			} else {
+				mergedEvents[n++] = added.get(j++);
+			}
+		}
+		long endOfTrack = track.get(lastIndex).getTick();
+		if( n > 0 ) endOfTrack = Math.max(endOfTrack, mergedEvents[n - 1].getTick());
+		Track newTrack = sequenceTrackListTableModel.replaceTrack(track, mergedEvents, endOfTrack);
+		if( newTrack == null ) return false;
+		// 親のシーケンスモデルから setTrack() で付け替えられている
+		for( MidiEvent e : removed ) decodedRows.remove(e);
+		removedEvents.addAll(removed);
+		addedEvents.addAll(added);
+		return true;
+	}
+	/**
+	 * 一括編集中かどうかを返します。
+	 * @return 一括編集中のときtrue
+	 */
+	public boolean isBatchEditing() { return batchEditDepth > 0; }
+	/**
+	 * MIDIイベントの追加を予約します。
+	 * @param midiEvent 追加するMIDIイベント
+	 * @return 予約できたらtrue（すでに追加が予約されていた場合false）
+	 */
+	private boolean reserveToAdd(MidiEvent midiEvent) {
+		if( midiEvent == null ) return false;
+		if( pendingRemovedEvents.remove(midiEvent) ) return true;
+		return pendingAddedEvents.add(midiEvent);
+	}
+	/**
+	 * MIDIイベントの除去を予約します。
+	 * @param midiEvent 除去するMIDIイベント
+	 */
+	private void reserveToRemove(MidiEvent midiEvent) {
+		if( midiEvent == null || pendingAddedEvents.remove(midiEvent) ) return;
+		pendingRemovedEvents.add(midiEvent);
+	}
+	/**
+	 * MIDIイベントを置き換えます。
+	 * <p>MIDIイベントのtick位置やMIDIメッセージは直接変更できないため、
+	 * 移動、クオンタイズ、移調などはこのメソッドで新しいMIDIイベントに置き換えることで行います。
+	 * 多数のイベントを置き換える場合は {@link #beginBatchEdit()} と
+	 * {@link #commitBatchEdit()} で囲むと、トラックへの反映と変更通知がまとめて行われます。
+	 * </p>
+	 * @param oldMidiEvent 置き換えられるMIDIイベント
+	 * @param newMidiEvent 新しいMIDIイベント
+	 */
+	public void replaceMidiEvent(MidiEvent oldMidiEvent, MidiEvent newMidiEvent) {
+		if( track == null ) return;
+		beginBatchEdit();
+		reserveToRemove(oldMidiEvent);
+		reserveToAdd(newMidiEvent);
+		commitBatchEdit();
+	}
 	/**
 	 * MIDIイベントを追加します。
+	 * <p>一括編集中は追加の予約だけを行います。</p>
 	 * @param midiEvent 追加するMIDIイベント
-	 * @return 追加できたらtrue
+	 * @return 追加できたらtrue（一括編集中は予約できたらtrue）
 	 */
 	public boolean addMidiEvent(MidiEvent midiEvent) {
-		if( track == null || !(track.add(midiEvent)) )
-			return false;
-		if( MIDISpec.isTimeSignature(midiEvent.getMessage()) )
-			sequenceTrackListTableModel.fireTimeSignatureChanged();
-		sequenceTrackListTableModel.fireTrackChanged(track);
-		int lastIndex = track.size() - 1;
-		fireTableRowsInserted( lastIndex-1, lastIndex-1 );
-		return true;
+		if( track == null ) return false;
+		beginBatchEdit();
+		boolean done = reserveToAdd(midiEvent);
+		if( batchEditDepth > 1 ) {
+			commitBatchEdit();
+			return done;
+		}
+		return commitBatchEdit() && done;
 	}
 	/**
 	 * MIDIイベントを追加します。
+	 * <p>一括編集中は追加の予約だけを行います。</p>
 	 * @param midiEvents 追加するMIDIイベント
 	 * @param destinationTick 追加先tick
 	 * @param sourcePPQ PPQ値（タイミング解像度）
-	 * @return 追加できたらtrue
+	 * @return 一つでも追加できたらtrue（一括編集中は予約できたらtrue）
 	 */
 	public boolean addMidiEvents(MidiEvent midiEvents[], long destinationTick, int sourcePPQ) {
 		if( track == null ) return false;
 		int destinationPPQ = sequenceTrackListTableModel.getSequence().getResolution();
 		boolean done = false;
-		boolean hasTimeSignature = false;
 		long firstSourceEventTick = -1;
+		beginBatchEdit();
 		for( MidiEvent sourceEvent : midiEvents ) {
 			long sourceEventTick = sourceEvent.getTick();
 			MidiMessage msg = sourceEvent.getMessage();
@@ -458,37 +755,23 @@ public class MidiEventTableModel extends AbstractTableModel {
 			else {
 				newTick += (sourceEventTick - firstSourceEventTick) * destinationPPQ / sourcePPQ;
 			}
-			if( ! track.add(new MidiEvent(msg, newTick)) ) continue;
-			done = true;
-			if( MIDISpec.isTimeSignature(msg) ) hasTimeSignature = true;
+			done |= reserveToAdd(new MidiEvent(msg, newTick));
 		}
-		if( done ) {
-			if( hasTimeSignature ) sequenceTrackListTableModel.fireTimeSignatureChanged();
-			sequenceTrackListTableModel.fireTrackChanged(track);
-			int lastIndex = track.size() - 1;
-			int oldLastIndex = lastIndex - midiEvents.length;
-			fireTableRowsInserted(oldLastIndex, lastIndex);
+		if( batchEditDepth > 1 ) {
+			commitBatchEdit();
+			return done;
 		}
-		return done;
+		return commitBatchEdit() && done;
 	}
 	/**
 	 * MIDIイベントを除去します。
+	 * <p>一括編集中は除去の予約だけを行います。</p>
 	 * @param midiEvents 除去するMIDIイベント
 	 */
 	public void removeMidiEvents(MidiEvent midiEvents[]) {
 		if( track == null ) return;
-		boolean hadTimeSignature = false;
-		for( MidiEvent e : midiEvents ) {
-			if( MIDISpec.isTimeSignature(e.getMessage()) ) hadTimeSignature = true;
-			track.remove(e);
-		}
-		if( hadTimeSignature ) {
-			sequenceTrackListTableModel.fireTimeSignatureChanged();
-		}
-		sequenceTrackListTableModel.fireTrackChanged(track);
-		int lastIndex = track.size() - 1;
-		int oldLastIndex = lastIndex + midiEvents.length;
-		if(lastIndex < 0) lastIndex = 0;
-		fireTableRowsDeleted(oldLastIndex, lastIndex);
+		beginBatchEdit();
+		for( MidiEvent e : midiEvents ) reserveToRemove(e);
+		commitBatchEdit();
 	}
 }
@@ -0,0 +1,173 @@
+package camidion.chordhelper.midieditor;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntConsumer;
+import java.util.stream.Collectors;
+
+import javax.sound.midi.Sequence;
+import javax.sound.midi.Track;
+import javax.swing.JOptionPane;
+import javax.swing.ProgressMonitor;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
+
+import camidion.chordhelper.ChordHelperApplet;
+import camidion.chordhelper.music.MIDISpec;
+
+/**
+ * 複数のMIDIファイルを、バックグラウンドで並列に読み込んでプレイリストに追加するワーカー
+ * <p>ファイルの解析（{@link StandardMidiFileReader#getSequence(File, Map)} と文字コードの判別）は
+ * CPU数に応じたスレッドプールで並列に行います。
+ * 解析の終わったファイルは、指定された順序を保ったままイベントディスパッチスレッドへ渡され、
+ * まとめてプレイリストに追加されます（追加の通知はまとまりごとに１回）。
+ * メタイベント以外のイベントは、トラックが選択されたり再生されたりするまで解析しません。
+ * 時間がかかる場合は進捗ダイアログを表示し、そこから読み込みを中止できます
+ * （解析中のファイルがあれば、その解析も中断します）。
+ * </p>
+ * <p>読み込めなかったファイルは、最後にまとめてダイアログで知らせます。</p>
+ */
+class MidiFileLoader extends SwingWorker<Void, MidiFileLoader.LoadedFile> {
+	/**
+	 * 解析の終わった１個のファイル
+	 */
+	static class LoadedFile {
+		private final File file;
+		private Sequence sequence;
+		private Map<Track, UnloadedTrack> unloadedTracks = new HashMap<>();
+		private Charset charset;
+		private Exception exception;
+		private LoadedFile(File file) { this.file = file; }
+	}
+	private final PlaylistTable playlistTable;
+	private final List<File> files;
+	private final IntConsumer firstIndexConsumer;
+	private final ProgressMonitor progressMonitor;
+	private int processedCount = 0;
+	private int firstIndex = -1;
+	private final List<LoadedFile> failedFiles = new ArrayList<>();
+	/**
+	 * 解析の途中でも進捗ダイアログを表示し、中止されたかどうかを調べるためのタイマー
+	 * <p>大きなファイルの解析中は {@link #process(List)} が呼ばれないため、これがないと
+	 * 進捗ダイアログが表示されず、中止ボタンを押しても解析が終わるまで中止されません。
+	 * </p>
+	 */
+	private final Timer cancelPollingTimer;
+	/**
+	 * 中止されたかどうかを調べる間隔（ミリ秒）
+	 */
+	private static final int CANCEL_POLLING_INTERVAL_MS = 200;
+	/**
+	 * ワーカーを構築します。イベントディスパッチスレッドから呼び出してください。
+	 * @param playlistTable 追加先のプレイリスト
+	 * @param files MIDIファイルのリスト（この順序でプレイリストに追加されます）
+	 * @param firstIndexConsumer 最初のMIDIファイルが追加されたときにそのインデックスを受け取る処理（null可）
+	 */
+	MidiFileLoader(PlaylistTable playlistTable, List<File> files, IntConsumer firstIndexConsumer) {
+		this.playlistTable = playlistTable;
+		this.files = new ArrayList<>(files);
+		this.firstIndexConsumer = firstIndexConsumer;
+		progressMonitor = new ProgressMonitor(
+			playlistTable.getRootPane(), "Loading MIDI files...", null, 0, this.files.size()
+		);
+		cancelPollingTimer = new Timer(CANCEL_POLLING_INTERVAL_MS, e->{
+			if( progressMonitor.isCanceled() ) cancel(true); else progressMonitor.setProgress(processedCount);
+		});
+		cancelPollingTimer.start();
+	}
+	/**
+	 * １個のMIDIファイルを解析します（ワーカースレッドで実行）。
+	 */
+	private static LoadedFile load(File file) {
+		LoadedFile loadedFile = new LoadedFile(file);
+		try {
+			Sequence sequence = StandardMidiFileReader.getSequence(file, loadedFile.unloadedTracks);
+			Charset charset = MIDISpec.getCharsetOf(sequence);
+			loadedFile.sequence = sequence;
+			loadedFile.charset = charset == null ? Charset.defaultCharset() : charset;
+		} catch( Exception e ) {
+			loadedFile.exception = e;
+		}
+		return loadedFile;
+	}
+	@Override
+	protected Void doInBackground() throws Exception {
+		int nThreads = Math.max(1, Math.min(files.size(), Runtime.getRuntime().availableProcessors()));
+		ExecutorService executor = Executors.newFixedThreadPool(nThreads, r->{
+			Thread t = new Thread(r, "MIDI file loader");
+			t.setDaemon(true);
+			return t;
+		});
+		try {
+			List<Future<LoadedFile>> futures = files.stream()
+				.map(file -> executor.submit(() -> load(file)))
+				.collect(Collectors.toList());
+			// 指定された順に受け取る（先のファイルが終わるまで後のファイルは待たせる）
+			for( Future<LoadedFile> future : futures ) {
+				if( isCancelled() ) break;
+				publish(future.get());
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		return null;
+	}
+	@Override
+	protected void process(List<LoadedFile> chunk) {
+		if( isCancelled() ) return;
+		PlaylistTableModel playlist = playlistTable.getModel();
+		List<SequenceTrackListTableModel> sequenceModels = new ArrayList<>(chunk.size());
+		for( LoadedFile loadedFile : chunk ) {
+			if( loadedFile.exception != null ) {
+				failedFiles.add(loadedFile);
+				continue;
+			}
+			sequenceModels.add(new SequenceTrackListTableModel(
+				playlist, loadedFile.sequence, loadedFile.unloadedTracks, loadedFile.charset, loadedFile.file.getName()
+			));
+		}
+		int index = playlist.add(sequenceModels);
+		if( firstIndex < 0 && index >= 0 ) {
+			firstIndex = index;
+			if( firstIndexConsumer != null ) firstIndexConsumer.accept(index);
+		}
+		processedCount += chunk.size();
+		progressMonitor.setNote(processedCount + " / " + files.size());
+		progressMonitor.setProgress(processedCount);
+		if( progressMonitor.isCanceled() ) cancel(true);
+	}
+	@Override
+	protected void done() {
+		cancelPollingTimer.stop();
+		progressMonitor.close();
+		try {
+			get();
+		} catch( CancellationException e ) {
+			// 進捗ダイアログから中止された
+		} catch( InterruptedException | ExecutionException e ) {
+			e.printStackTrace();
+		}
+		if( failedFiles.isEmpty() ) return;
+		StringBuilder message = new StringBuilder("Could not open as MIDI file");
+		int shownCount = Math.min(failedFiles.size(), 10);
+		for( LoadedFile f : failedFiles.subList(0, shownCount) ) {
+			message.append("\n").append(f.file).append("\n  ").append(f.exception);
+		}
+		if( shownCount < failedFiles.size() ) {
+			message.append("\n... and ").append(failedFiles.size() - shownCount).append(" more file(s)");
+		}
+		JOptionPane.showMessageDialog(
+				playlistTable.getRootPane(), message,
+				ChordHelperApplet.VersionInfo.NAME,
+				JOptionPane.WARNING_MESSAGE);
+	}
+}
@@ -0,0 +1,113 @@
+package camidion.chordhelper.midieditor;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.Sequence;
+import javax.swing.JComponent;
+import javax.swing.JOptionPane;
+import javax.swing.ProgressMonitor;
+import javax.swing.SwingWorker;
+
+import camidion.chordhelper.ChordHelperApplet;
+
+/**
+ * MIDIシーケンスを、バックグラウンドでMIDIファイルに保存するワーカー
+ * <p>{@link StandardMidiFileWriter} で同じディレクトリの一時ファイルへ直接書き出し、
+ * 書き終えてから保存先のファイルと置き換えます（可能であればアトミックに）。
+ * 途中で失敗したり中止したりしても、元のファイルはそのまま残ります。
+ * 時間がかかる場合は進捗ダイアログを表示し、そこから保存を中止できます。
+ * </p>
+ * <p>書き出すのは保存を始めた時点のイベントです。
+ * </p>
+ * <p>保存を始める時点で変更ありの状態を解除し、失敗した場合は元に戻します。
+ * 保存中に編集された場合は変更ありの状態のままになります。
+ * </p>
+ */
+class MidiFileSaver extends SwingWorker<Void, Integer> {
+	private final JComponent parentComponent;
+	private final SequenceTrackListTableModel sequenceModel;
+	private final Sequence sequence;
+	private final MidiEvent[][] tracks;
+	private final File file;
+	private final ProgressMonitor progressMonitor;
+	/**
+	 * ワーカーを構築します。イベントディスパッチスレッドから呼び出してください。
+	 * @param parentComponent 進捗ダイアログやエラーメッセージの親
+	 * @param sequenceModel 保存するMIDIシーケンスのモデル
+	 * @param file 保存先のファイル
+	 */
+	MidiFileSaver(JComponent parentComponent, SequenceTrackListTableModel sequenceModel, File file) {
+		this.parentComponent = parentComponent;
+		this.sequenceModel = sequenceModel;
+		this.file = file.getAbsoluteFile();
+		// 読み込んでいないイベントは、ワーカースレッドで書き出す前にこのスレッドで読み込んでおく
+		sequenceModel.loadAllTracks();
+		sequence = sequenceModel.getSequence();
+		// ワーカースレッドで書き出している間の編集や詰め直しの影響を受けないよう、この時点のイベントを写し取っておく
+		tracks = StandardMidiFileWriter.snapshotOf(sequence);
+		progressMonitor = new ProgressMonitor(
+			parentComponent, "Saving " + this.file.getName() + " ...", null,
+			0, StandardMidiFileWriter.getEventCount(tracks)
+		);
+		sequenceModel.setModified(false);
+	}
+	@Override
+	protected Void doInBackground() throws Exception {
+		Path target = file.toPath();
+		// Files.createTempFile() ではパーミッションが所有者のみになってしまうため、普通のファイルとして作る
+		Path temporary = target.resolveSibling("." + file.getName() + "." + System.nanoTime() + ".tmp");
+		try {
+			try( FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE) ) {
+				StandardMidiFileWriter.write(sequence, tracks, channel, this::publish);
+				channel.force(false);
+			}
+			if( isCancelled() ) return null;
+			try {
+				Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch( AtomicMoveNotSupportedException e ) {
+				Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			try {
+				Files.deleteIfExists(temporary);
+			} catch( IOException e ) {
+				e.printStackTrace();
+			}
+		}
+		return null;
+	}
+	@Override
+	protected void process(List<Integer> chunk) {
+		if( isCancelled() ) return;
+		progressMonitor.setProgress(chunk.get(chunk.size() - 1));
+		if( progressMonitor.isCanceled() ) cancel(true);
+	}
+	@Override
+	protected void done() {
+		progressMonitor.close();
+		try {
+			get();
+			return;
+		} catch( CancellationException e ) {
+			// 進捗ダイアログから中止された
+		} catch( InterruptedException e ) {
+			e.printStackTrace();
+		} catch( ExecutionException e ) {
+			JOptionPane.showMessageDialog(
+					parentComponent, e.getCause(), ChordHelperApplet.VersionInfo.NAME,
+					JOptionPane.ERROR_MESSAGE);
+		}
+		sequenceModel.setModified(true);
+	}
+}
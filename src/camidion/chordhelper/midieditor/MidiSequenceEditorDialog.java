@@ -92,10 +92,13 @@ public class MidiSequenceEditorDialog extends JDialog {
 	/**
 	 * 指定されたリストに格納されたMIDIファイルを読み込んで再生します。
 	 * すでに再生されていた場合、このエディタダイアログを表示します。
+	 * <p>読み込みはバックグラウンドで行われ、最初のMIDIファイルが追加された時点で再生を開始します。</p>
 	 * @param fileList 読み込むMIDIファイルのリスト
 	 */
 	public void play(List<File> fileList) {
-		play(playlistTable.add(fileList));
+		// 読み込めたファイルがなくても、再生中であればダイアログは表示する
+		if( getPlaylistModel().getSequencerModel().getSequencer().isRunning() ) open();
+		playlistTable.add(fileList, this::play);
 	}
 	/**
 	 * 指定されたインデックス値（先頭が0）のMIDIシーケンスから再生します。
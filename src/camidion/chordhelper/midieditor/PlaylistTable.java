@@ -5,18 +5,14 @@ import java.awt.HeadlessException;
 import java.awt.event.ActionEvent;
 import java.awt.event.MouseEvent;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.IOException;
 import java.nio.charset.Charset;
 import java.security.AccessControlException;
 import java.util.Arrays;
 import java.util.EventObject;
-import java.util.Iterator;
 import java.util.List;
+import java.util.function.IntConsumer;
 
 import javax.sound.midi.InvalidMidiDataException;
-import javax.sound.midi.MidiSystem;
 import javax.sound.midi.Sequence;
 import javax.sound.midi.Sequencer;
 import javax.swing.AbstractAction;
@@ -300,52 +296,26 @@ public class PlaylistTable extends JTable {
 	@Override
 	public PlaylistTableModel getModel() { return (PlaylistTableModel)dataModel; }
     /**
-     * {@link #add(List)} を呼び出し、このプレイリストにMIDIファイルを追加します。
+     * {@link #add(List, IntConsumer)} を呼び出し、このプレイリストにMIDIファイルを追加します。
      * @param files MIDIファイル
-     * @return 追加されたMIDIファイルのインデックス値（先頭が0、追加されなかった場合は-1）
      */
-	public int add(File... files) {
-		return add(Arrays.asList(files));
+	public void add(File... files) {
+		add(Arrays.asList(files), null);
 	}
 	/**
-	 * このプレイリストにMIDIファイルを追加します。追加に失敗した場合はダイアログを表示し、
-	 * 後続のMIDIファイルが残っていればそれを追加するかどうかをユーザに尋ねます。
+	 * このプレイリストにMIDIファイルを追加します。
+	 * <p>ファイルはバックグラウンドで並列に読み込まれ、指定された順序のままプレイリストに追加されます。
+	 * このメソッドは読み込みの完了を待たずに戻ります。
+	 * 時間がかかる場合は進捗ダイアログが表示され、読み込みを中止できます。
+	 * 読み込めなかったファイルは、最後にまとめてダイアログで知らせます。
+	 * </p>
 	 * @param files MIDIファイルのリスト
-	 * @return 追加されたMIDIファイルのインデックス値（先頭が0、追加されなかった場合は-1）
+	 * @param firstIndexConsumer 最初のMIDIファイルが追加されたとき、
+	 * そのインデックス値（先頭が0）を受け取る処理（null可、１個も追加されなかった場合は呼ばれない）
 	 */
-	public int add(List<File> files) {
-		int firstIndex = -1;
-		Iterator<File> itr = files.iterator();
-		while(itr.hasNext()) {
-			File file = itr.next();
-			try (FileInputStream in = new FileInputStream(file)) {
-				Sequence sequence = MidiSystem.getSequence(in);
-				int lastIndex = ((PlaylistTableModel)dataModel).add(sequence, file.getName());
-				if( firstIndex < 0 ) firstIndex = lastIndex;
-			} catch(IOException|InvalidMidiDataException e) {
-				String message = "Could not open as MIDI file "+file+"\n"+e;
-				if( ! itr.hasNext() ) {
-					JOptionPane.showMessageDialog(
-							getRootPane(), message,
-							ChordHelperApplet.VersionInfo.NAME,
-							JOptionPane.WARNING_MESSAGE);
-					break;
-				}
-				if( JOptionPane.showConfirmDialog(
-						getRootPane(),
-						message + "\n\nContinue to open next file ?",
-						ChordHelperApplet.VersionInfo.NAME,
-						JOptionPane.YES_NO_OPTION,
-						JOptionPane.WARNING_MESSAGE) != JOptionPane.YES_OPTION
-				) break;
-			} catch(Exception ex) {
-				JOptionPane.showMessageDialog(
-						getRootPane(), ex, ChordHelperApplet.VersionInfo.NAME,
-						JOptionPane.ERROR_MESSAGE);
-				break;
-			}
-		}
-		return firstIndex;
+	public void add(List<File> files, IntConsumer firstIndexConsumer) {
+		if( files.isEmpty() ) return;
+		new MidiFileLoader(this, files, firstIndexConsumer).execute();
 	}
 	/**
 	 * 指定されたシーケンスを追加して再生します。
@@ -429,15 +399,7 @@ public class PlaylistTable extends JTable {
 							JOptionPane.WARNING_MESSAGE) != JOptionPane.YES_OPTION
 					) return;
 				}
-				try ( FileOutputStream o = new FileOutputStream(f) ) {
-					o.write(sequenceModel.getMIDIdata());
-					sequenceModel.setModified(false);
-				}
-				catch( Exception ex ) {
-					JOptionPane.showMessageDialog(
-							rootPane, ex, ChordHelperApplet.VersionInfo.NAME,
-							JOptionPane.ERROR_MESSAGE);
-				}
+				new MidiFileSaver(rootPane, sequenceModel, f).execute();
 			}
 		};
 		/**
@@ -454,20 +416,19 @@ public class PlaylistTable extends JTable {
 					ex.printStackTrace();
 					return;
 				}
-				int firstIndex = PlaylistTable.this.add(getSelectedFile());
-				try {
-					PlaylistTableModel model = getModel();
-					MidiSequencerModel sequencerModel = model.getSequencerModel();
-					if( sequencerModel.getSequencer().isRunning() ) return;
-					if( firstIndex >= 0 ) {
+				PlaylistTable.this.add(Arrays.asList(getSelectedFile()), firstIndex->{
+					try {
+						PlaylistTableModel model = getModel();
+						MidiSequencerModel sequencerModel = model.getSequencerModel();
+						if( sequencerModel.getSequencer().isRunning() ) return;
 						model.play(firstIndex);
 						selectionModel.setSelectionInterval(firstIndex, firstIndex);
+					} catch (Exception ex) {
+						JOptionPane.showMessageDialog(
+								rootPane, ex, ChordHelperApplet.VersionInfo.NAME,
+								JOptionPane.ERROR_MESSAGE);
 					}
-				} catch (Exception ex) {
-					JOptionPane.showMessageDialog(
-							rootPane, ex, ChordHelperApplet.VersionInfo.NAME,
-							JOptionPane.ERROR_MESSAGE);
-				}
+				});
 			}
 		};
 	};
@@ -415,6 +415,19 @@ public class PlaylistTableModel extends AbstractTableModel {
 		fireTableRowsInserted(newIndex, newIndex);
 		return newIndex;
 	}
+	/**
+	 * 構築済みのMIDIシーケンスモデルをまとめて末尾に追加します。
+	 * 行が挿入されたことは、まとめて１回だけ通知します。
+	 * @param sequenceModels このプレイリストモデルを親として構築したMIDIシーケンスモデルのリスト
+	 * @return 追加された最初のシーケンスのインデックス（先頭が 0、リストが空の場合 -1）
+	 */
+	public int add(List<SequenceTrackListTableModel> sequenceModels) {
+		if( sequenceModels.isEmpty() ) return -1;
+		int firstIndex = sequenceModelList.size();
+		sequenceModelList.addAll(sequenceModels);
+		fireTableRowsInserted(firstIndex, sequenceModelList.size() - 1);
+		return firstIndex;
+	}
 	/**
 	 * MIDIシーケンスを除去します。除去されたMIDIシーケンスがシーケンサーにロード済みだった場合、アンロードします。
 	 * @param rowIndex 除去するMIDIシーケンスのインデックス（先頭が 0）
@@ -444,6 +457,8 @@ public class PlaylistTableModel extends AbstractTableModel {
 		if( oldSeq != null ) {
 			fireTableCellUpdated(oldSeq, Column.PLAY);
 			fireTableCellUpdated(oldSeq, Column.POSITION);
+			// 再生されなくなった曲のイベントは、表示中でなければコンパクトな形式にしておく
+			oldSeq.packTracksIfIdle();
 		}
 		if( newSeq != null ) {
 			fireTableCellUpdated(newRowIndex, Column.PLAY);
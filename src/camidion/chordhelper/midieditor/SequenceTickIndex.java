@@ -1,9 +1,10 @@
 package camidion.chordhelper.midieditor;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
 
-import javax.sound.midi.InvalidMidiDataException;
 import javax.sound.midi.MetaMessage;
 import javax.sound.midi.MidiEvent;
 import javax.sound.midi.MidiMessage;
@@ -12,9 +13,10 @@ import javax.sound.midi.Track;
 
 /**
  *  MIDI シーケンスデータのtickインデックス
- * <p>拍子、テンポ、調だけを抜き出したトラックを保持するためのインデックスです。
+ * <p>拍子、テンポ、調のメタイベントだけを種類ごとに抜き出して保持するためのインデックスです。
  * 指定の MIDI tick の位置におけるテンポ、調、拍子を取得したり、
- * 拍子情報から MIDI tick と小節位置との間の変換を行うために使います。
+ * 拍子情報から MIDI tick と小節位置との間の変換、
+ * テンポ情報から MIDI tick とマイクロ秒位置との間の変換を行うために使います。
  * </p>
  */
 public class SequenceTickIndex {
@@ -47,35 +49,121 @@ public class SequenceTickIndex {
 	 * @param sourceSequence 元のMIDIシーケンス
 	 */
 	public SequenceTickIndex(Sequence sourceSequence) {
-		try {
-			int ppq = sourceSequence.getResolution();
-			wholeNoteTickLength = ppq * 4;
-			Sequence indexSeq = new Sequence(Sequence.PPQ, ppq, MetaMessageType.values().length);
-			Track[] tracks = indexSeq.getTracks();
-			for( MetaMessageType type : MetaMessageType.values() ) {
-				trackMap.put(type, tracks[type.ordinal()]);
+		this.sourceSequence = sourceSequence;
+		wholeNoteTickLength = sourceSequence.getResolution() * 4;
+		MetaMessageType[] types = MetaMessageType.values();
+		List<List<MidiEvent>> eventLists = new ArrayList<>(types.length);
+		for( int i = 0; i < types.length; i++ ) eventLists.add(new ArrayList<>());
+		for( Track track : sourceSequence.getTracks() ) {
+			int trackSize = track.size();
+			for( int eventIndex = 0 ; eventIndex < trackSize; eventIndex++ ) {
+				MidiEvent event = track.get(eventIndex);
+				MidiMessage message = event.getMessage();
+				if( ! (message instanceof MetaMessage) ) continue;
+				MetaMessageType type = MetaMessageType.getByMessage((MetaMessage)message);
+				if( type == null ) continue;
+				eventLists.get(type.ordinal()).add(event);
 			}
-			Track[] sourceTracks = sourceSequence.getTracks();
-			for( Track tk : sourceTracks ) {
-				for( int i_evt = 0 ; i_evt < tk.size(); i_evt++ ) {
-					MidiEvent evt = tk.get(i_evt);
-					MidiMessage msg = evt.getMessage();
-					if( ! (msg instanceof MetaMessage) ) continue;
-					MetaMessageType type = MetaMessageType.getByMessage((MetaMessage)msg);
-					if( type == null ) continue;
-					trackMap.get(type).add(evt);
-				}
+		}
+		MetaEventList[] lists = new MetaEventList[types.length];
+		for( int i = 0; i < types.length; i++ ) {
+			List<MidiEvent> eventList = eventLists.get(i);
+			eventList.sort(Comparator.comparingLong(MidiEvent::getTick));
+			lists[i] = new MetaEventList(eventList.toArray(new MidiEvent[eventList.size()]));
+		}
+		metaEventLists = lists;
+		buildTimeSignatureSegments(0L);
+		buildTempoSegments(0L);
+	}
+	/**
+	 * 種類ごとのメタイベントの一覧
+	 * <p>tick位置の昇順に並べたイベントと、そのtick位置だけを抜き出した配列を保持します。
+	 * 配列の中身は変更しません。</p>
+	 */
+	private static class MetaEventList {
+		/** メタイベントの配列（tick位置の昇順） */
+		final MidiEvent[] events;
+		/** {@link #events} のtick位置だけを抜き出した配列 */
+		final long[] ticks;
+		MetaEventList(MidiEvent[] events) {
+			this.events = events;
+			ticks = new long[events.length];
+			for( int i = 0; i < events.length; i++ ) ticks[i] = events[i].getTick();
+		}
+		/**
+		 * 指定のtick位置以降にある最初のイベントのインデックスを二分探索します。
+		 * @param tickPosition tick位置
+		 * @return イベントのインデックス（該当なしの場合はイベント数）
+		 */
+		int lowerBound(long tickPosition) {
+			int low = 0;
+			int high = ticks.length;
+			while( low < high ) {
+				int mid = (low + high) >>> 1;
+				if( ticks[mid] < tickPosition ) low = mid + 1; else high = mid;
 			}
+			return low;
 		}
-		catch ( InvalidMidiDataException e ) {
-			e.printStackTrace();
+		/**
+		 * 指定のtick位置より後にある最初のイベントのインデックスを二分探索します。
+		 * @param tickPosition tick位置
+		 * @return イベントのインデックス（該当なしの場合はイベント数）
+		 */
+		int upperBound(long tickPosition) {
+			int low = 0;
+			int high = ticks.length;
+			while( low < high ) {
+				int mid = (low + high) >>> 1;
+				if( ticks[mid] <= tickPosition ) low = mid + 1; else high = mid;
+			}
+			return low;
+		}
+		/**
+		 * 指定のイベントを追加した一覧を返します。
+		 * 同じtick位置のイベントがすでにある場合は、その後ろに追加します。
+		 * @param event 追加するイベント
+		 * @return 追加後の一覧
+		 */
+		MetaEventList add(MidiEvent event) {
+			int index = upperBound(event.getTick());
+			MidiEvent[] newEvents = new MidiEvent[events.length + 1];
+			System.arraycopy(events, 0, newEvents, 0, index);
+			newEvents[index] = event;
+			System.arraycopy(events, index, newEvents, index + 1, events.length - index);
+			return new MetaEventList(newEvents);
+		}
+		/**
+		 * 指定のイベントを除去した一覧を返します。
+		 * @param event 除去するイベント
+		 * @return 除去後の一覧（イベントが見つからなければこの一覧自身）
+		 */
+		MetaEventList remove(MidiEvent event) {
+			int index = indexOf(event);
+			if( index < 0 ) return this;
+			MidiEvent[] newEvents = new MidiEvent[events.length - 1];
+			System.arraycopy(events, 0, newEvents, 0, index);
+			System.arraycopy(events, index + 1, newEvents, index, newEvents.length - index);
+			return new MetaEventList(newEvents);
+		}
+		/**
+		 * 指定のイベントのインデックスを返します。
+		 * @param event イベント
+		 * @return イベントのインデックス（見つからなければ -1）
+		 */
+		private int indexOf(MidiEvent event) {
+			long tick = event.getTick();
+			for( int i = lowerBound(tick), end = upperBound(tick); i < end; i++ )
+				if( events[i] == event ) return i;
+			// tick位置が書き換えられていた場合
+			for( int i = 0; i < events.length; i++ )
+				if( events[i] == event ) return i;
+			return -1;
 		}
-		this.sourceSequence = sourceSequence;
 	}
 	/**
-	 * メタメッセージタイプからトラックへの変換マップ
+	 * メタイベントの一覧（{@link MetaMessageType#ordinal()} で引く）
 	 */
-	private Map<MetaMessageType, Track> trackMap = new HashMap<>();
+	private volatile MetaEventList[] metaEventLists;
 	/**
 	 * 元のMIDIシーケンス
 	 */
@@ -92,87 +180,254 @@ public class SequenceTickIndex {
 	 * @return 指定されたtick位置以前の最後のメタメッセージ（見つからなければnull）
 	 */
 	public MetaMessage lastMetaMessageAt(MetaMessageType type, long tickPosition) {
-		Track track = trackMap.get(type);
-		for(int eventIndex = track.size()-1 ; eventIndex >= 0; eventIndex--) {
-			MidiEvent event = track.get(eventIndex);
-			if( event.getTick() > tickPosition )
-				continue;
-			MetaMessage metaMessage = (MetaMessage)(event.getMessage());
-			if( metaMessage.getType() == 0x2F /* skip EOT (last event) */ )
-				continue;
-			return metaMessage;
-		}
-		return null;
+		MetaEventList list = metaEventLists[type.ordinal()];
+		int eventIndex = list.upperBound(tickPosition) - 1;
+		return eventIndex < 0 ? null : (MetaMessage)list.events[eventIndex].getMessage();
+	}
+	/**
+	 * 元のMIDIシーケンスに追加されたイベントをインデックスに反映します。
+	 * <p>インデックス対象外のイベントは無視します。
+	 * 拍子やテンポが追加された場合は、その位置以降の拍子区間やテンポ区間だけを作り直します。
+	 * </p>
+	 * @param midiEvents 追加されたイベント
+	 */
+	public synchronized void addMidiEvents(MidiEvent... midiEvents) {
+		updateMidiEvents(null, midiEvents);
+	}
+	/**
+	 * 元のMIDIシーケンスから除去されたイベントをインデックスに反映します。
+	 * <p>インデックス対象外のイベントは無視します。
+	 * 拍子やテンポが除去された場合は、その位置以降の拍子区間やテンポ区間だけを作り直します。
+	 * </p>
+	 * @param midiEvents 除去されたイベント
+	 */
+	public synchronized void removeMidiEvents(MidiEvent... midiEvents) {
+		updateMidiEvents(midiEvents, null);
+	}
+	/**
+	 * 元のMIDIシーケンスから除去されたイベントと追加されたイベントを、まとめてインデックスに反映します。
+	 * <p>イベントの移動など、除去と追加を伴う変更を一括で反映するときに使います。
+	 * 拍子区間やテンポ区間の作り直しは、変更された最も前の位置から１回ずつしか行いません。
+	 * </p>
+	 * @param removedEvents 除去されたイベント（null可）
+	 * @param addedEvents 追加されたイベント（null可）
+	 */
+	public synchronized void updateMidiEvents(MidiEvent[] removedEvents, MidiEvent[] addedEvents) {
+		MetaEventList[] lists = metaEventLists.clone();
+		boolean isChanged = false;
+		long[] changedTicks = {Long.MAX_VALUE, Long.MAX_VALUE};
+		if( removedEvents != null ) isChanged |= updateMetaEventLists(lists, removedEvents, false, changedTicks);
+		if( addedEvents != null ) isChanged |= updateMetaEventLists(lists, addedEvents, true, changedTicks);
+		if( ! isChanged ) return;
+		metaEventLists = lists;
+		if( changedTicks[0] != Long.MAX_VALUE ) buildTimeSignatureSegments(changedTicks[0]);
+		if( changedTicks[1] != Long.MAX_VALUE ) buildTempoSegments(changedTicks[1]);
+	}
+	/**
+	 * メタイベントリストに追加または除去を反映します。
+	 * @param lists 更新するメタイベントリストの配列
+	 * @param midiEvents 追加または除去されたイベント
+	 * @param isAdded 追加のときtrue、除去のときfalse
+	 * @param changedTicks 変更された最も前の拍子とテンポのtick位置（更新されます）
+	 * @return リストが変更されたらtrue
+	 */
+	private static boolean updateMetaEventLists(MetaEventList[] lists, MidiEvent[] midiEvents, boolean isAdded, long[] changedTicks) {
+		boolean isChanged = false;
+		for( MidiEvent event : midiEvents ) {
+			if( event == null ) continue;
+			MidiMessage message = event.getMessage();
+			if( ! (message instanceof MetaMessage) ) continue;
+			MetaMessageType type = MetaMessageType.getByMessage((MetaMessage)message);
+			if( type == null ) continue;
+			MetaEventList oldList = lists[type.ordinal()];
+			MetaEventList newList = isAdded ? oldList.add(event) : oldList.remove(event);
+			if( newList == oldList ) continue;
+			lists[type.ordinal()] = newList;
+			isChanged = true;
+			if( type == MetaMessageType.TIME_SIGNATURE )
+				changedTicks[0] = Math.min(changedTicks[0], event.getTick());
+			else if( type == MetaMessageType.TEMPO )
+				changedTicks[1] = Math.min(changedTicks[1], event.getTick());
+		}
+		return isChanged;
 	}
 
 	private int wholeNoteTickLength;
-	public int lastBeat;
-	public int lastExtraTick;
-	public byte timesigUpper;
-	public byte timesigLowerIndex;
+	/**
+	 * 小節位置
+	 * <p>tick位置を変換した結果の小節、拍、拍内tick、およびその位置の拍子を保持します。
+	 * 呼び出し側で確保したものを {@link SequenceTickIndex#tickToMeasure(long, MeasurePosition)}
+	 * に繰り返し渡すことで、変換のたびにオブジェクトを生成せずに済みます。
+	 * インデックスは変換結果を内部に保持しないため、
+	 * 小節位置をスレッドごとに用意すれば、同じインデックスを複数のスレッドから使えます。
+	 * </p>
+	 */
+	public static class MeasurePosition {
+		/** 小節位置（先頭 0） */
+		public int measure;
+		/** 拍（先頭 0） */
+		public int beat;
+		/** 拍内tick */
+		public int extraTick;
+		/** 拍子の分子 */
+		public byte timesigUpper = 4;
+		/** 拍子の分母の2を底とする対数 */
+		public byte timesigLowerIndex = 2;
+	}
+	/**
+	 * 拍子区間
+	 * <p>拍子が変わらない区間の開始tick位置、開始小節位置、拍子を保持します。</p>
+	 */
+	private static class TimeSignatureSegment {
+		/** 区間の開始tick位置 */
+		final long startTick;
+		/** 区間の開始小節位置 */
+		final int startMeasure;
+		/** 拍子の分子（1小節の拍数） */
+		final byte upper;
+		/** 拍子の分母の2を底とする対数 */
+		final byte lowerIndex;
+		/** 1拍のtick数 */
+		final int beatTickLength;
+		TimeSignatureSegment(long startTick, int startMeasure, byte upper, byte lowerIndex, int wholeNoteTickLength) {
+			this.startTick = startTick;
+			this.startMeasure = startMeasure;
+			this.upper = upper > 0 ? upper : 1;
+			this.lowerIndex = lowerIndex;
+			this.beatTickLength = Math.max(1, wholeNoteTickLength >> lowerIndex);
+		}
+		/**
+		 * この区間内のtick位置を、区間先頭からの拍数に換算します。
+		 * @param tickPosition tick位置
+		 * @return 区間先頭からの拍数
+		 */
+		long beatsAt(long tickPosition) { return (tickPosition - startTick) / beatTickLength; }
+		/**
+		 * この区間の末尾が指定のtick位置だった場合の、次の区間の開始小節位置を返します。
+		 * 1小節に満たない端数は1小節として扱います。
+		 * @param endTick 区間の末尾のtick位置
+		 * @return 次の区間の開始小節位置
+		 */
+		int nextStartMeasure(long endTick) {
+			long measureTickLength = (long)beatTickLength * upper;
+			return startMeasure + (int)((endTick - startTick + measureTickLength - 1) / measureTickLength);
+		}
+	}
+	/**
+	 * 拍子区間の配列（tick位置の昇順、先頭は常にtick 0）
+	 * <p>配列の中身は変更せず、作り直したときは配列ごと差し替えます。</p>
+	 */
+	private volatile TimeSignatureSegment[] timeSignatureSegments;
+	/**
+	 * 拍子のメタイベントから拍子区間の配列を構築します。
+	 * <p>指定のtick位置より前の拍子区間はそのまま残し、それ以降だけを作り直します。</p>
+	 * @param fromTick 作り直す範囲の先頭tick位置（0 以下の場合はすべて作り直す）
+	 */
+	private void buildTimeSignatureSegments(long fromTick) {
+		List<TimeSignatureSegment> segments = new ArrayList<>();
+		TimeSignatureSegment[] oldSegments = timeSignatureSegments;
+		TimeSignatureSegment last;
+		if( oldSegments == null || fromTick <= 0 ) {
+			segments.add(last = new TimeSignatureSegment(0L, 0, (byte)4, (byte)2, wholeNoteTickLength));
+		}
+		else {
+			int keepCount = segmentIndexAtTick(oldSegments, fromTick - 1) + 1;
+			segments.addAll(Arrays.asList(oldSegments).subList(0, keepCount));
+			last = oldSegments[keepCount - 1];
+		}
+		MetaEventList list = metaEventLists[MetaMessageType.TIME_SIGNATURE.ordinal()];
+		for( int eventIndex = list.lowerBound(fromTick); eventIndex < list.events.length; eventIndex++ ) {
+			byte[] data = ((MetaMessage)list.events[eventIndex].getMessage()).getData();
+			if( data.length < 2 ) continue;
+			long tick = list.ticks[eventIndex];
+			if( tick <= last.startTick ) {
+				// 同じ位置の拍子は後のものを優先
+				segments.remove(segments.size() - 1);
+				last = new TimeSignatureSegment(last.startTick, last.startMeasure, data[0], data[1], wholeNoteTickLength);
+			}
+			else {
+				last = new TimeSignatureSegment(tick, last.nextStartMeasure(tick), data[0], data[1], wholeNoteTickLength);
+			}
+			segments.add(last);
+		}
+		timeSignatureSegments = segments.toArray(new TimeSignatureSegment[segments.size()]);
+		timeSignatureModCount++;
+	}
+	/**
+	 * 拍子区間を作り直した回数
+	 */
+	private volatile int timeSignatureModCount = 0;
+	/**
+	 * 拍子区間を作り直した回数を返します。
+	 * <p>tick位置から変換した小節位置をキャッシュしている場合、
+	 * この値が変わっていたら変換し直す必要があります。</p>
+	 * @return 拍子区間を作り直した回数
+	 */
+	public int getTimeSignatureModCount() { return timeSignatureModCount; }
+	/**
+	 * 指定のtick位置を含む拍子区間のインデックスを二分探索します。
+	 * @param segments 拍子区間の配列
+	 * @param tickPosition tick位置
+	 * @return 拍子区間のインデックス
+	 */
+	private static int segmentIndexAtTick(TimeSignatureSegment[] segments, long tickPosition) {
+		int low = 0;
+		int high = segments.length - 1;
+		while( low < high ) {
+			int mid = (low + high + 1) >>> 1;
+			if( segments[mid].startTick <= tickPosition ) low = mid; else high = mid - 1;
+		}
+		return low;
+	}
+	/**
+	 * 指定のtick位置を含む拍子区間を二分探索します。
+	 * @param tickPosition tick位置
+	 * @return 拍子区間
+	 */
+	private TimeSignatureSegment segmentAtTick(long tickPosition) {
+		TimeSignatureSegment[] segments = timeSignatureSegments;
+		return segments[segmentIndexAtTick(segments, tickPosition)];
+	}
+	/**
+	 * 指定の小節位置を含む拍子区間を二分探索します。
+	 * @param measure 小節位置
+	 * @return 拍子区間
+	 */
+	private TimeSignatureSegment segmentAtMeasure(int measure) {
+		TimeSignatureSegment[] segments = timeSignatureSegments;
+		int low = 0;
+		int high = segments.length - 1;
+		while( low < high ) {
+			int mid = (low + high + 1) >>> 1;
+			if( segments[mid].startMeasure <= measure ) low = mid; else high = mid - 1;
+		}
+		return segments[low];
+	}
 	/**
 	 * tick位置を小節位置に変換します。
 	 * @param tickPosition tick位置
 	 * @return 小節位置
 	 */
 	public int tickToMeasure(long tickPosition) {
-		byte extraBeats = 0;
-		MidiEvent event = null;
-		MidiMessage message = null;
-		byte[] data = null;
-		long currentTick = 0L;
-		long nextTimesigTick = 0L;
-		long prevTick = 0L;
-		long duration = 0L;
-		int lastMeasure = 0;
-		int eventIndex = 0;
-		timesigUpper = 4;
-		timesigLowerIndex = 2; // =log2(4)
-		Track tst = trackMap.get(MetaMessageType.TIME_SIGNATURE);
-		if( tst != null ) {
-			do {
-				// Check current time-signature event
-				if( eventIndex < tst.size() ) {
-					message = (event = tst.get(eventIndex)).getMessage();
-					currentTick = nextTimesigTick = event.getTick();
-					if(currentTick > tickPosition || (message.getStatus() == 0xFF && ((MetaMessage)message).getType() == 0x2F /* EOT */)) {
-						currentTick = tickPosition;
-					}
-				}
-				else { // No event
-					currentTick = nextTimesigTick = tickPosition;
-				}
-				// Add measure from last event
-				//
-				int beatTickLength = wholeNoteTickLength >> timesigLowerIndex;
-				duration = currentTick - prevTick;
-				int beats = (int)( duration / beatTickLength );
-				lastExtraTick = (int)(duration % beatTickLength);
-				int measures = beats / timesigUpper;
-				extraBeats = (byte)(beats % timesigUpper);
-				lastMeasure += measures;
-				if( nextTimesigTick > tickPosition ) break;  // Not reached to next time signature
-				//
-				// Reached to the next time signature, so get it.
-				if( ( data = ((MetaMessage)message).getData() ).length > 0 ) { // To skip EOT, check the data length.
-					timesigUpper = data[0];
-					timesigLowerIndex = data[1];
-				}
-				if( currentTick == tickPosition )  break;  // Calculation complete
-				//
-				// Calculation incomplete, so prepare for next
-				//
-				if( extraBeats > 0 ) {
-					//
-					// Extra beats are treated as 1 measure
-					lastMeasure++;
-				}
-				prevTick = currentTick;
-				eventIndex++;
-			} while( true );
-		}
-		lastBeat = extraBeats;
-		return lastMeasure;
+		TimeSignatureSegment segment = segmentAtTick(tickPosition);
+		return segment.startMeasure + (int)(segment.beatsAt(tickPosition) / segment.upper);
+	}
+	/**
+	 * tick位置を小節位置、拍、拍内tickに変換し、指定の小節位置オブジェクトに格納します。
+	 * @param tickPosition tick位置
+	 * @param position 変換結果の格納先
+	 * @return 変換結果を格納した小節位置オブジェクト（引数と同じもの）
+	 */
+	public MeasurePosition tickToMeasure(long tickPosition, MeasurePosition position) {
+		TimeSignatureSegment segment = segmentAtTick(tickPosition);
+		long duration = tickPosition - segment.startTick;
+		long beats = duration / segment.beatTickLength;
+		position.measure = segment.startMeasure + (int)(beats / segment.upper);
+		position.beat = (int)(beats % segment.upper);
+		position.extraTick = (int)(duration % segment.beatTickLength);
+		position.timesigUpper = segment.upper;
+		position.timesigLowerIndex = segment.lowerIndex;
+		return position;
 	}
 	/**
 	 * 小節位置を MIDI tick に変換します。
@@ -190,43 +445,134 @@ public class SequenceTickIndex {
 	 * @return そのシーケンス全体の MIDI tick
 	 */
 	public long measureToTick(int measure, int beat, int extraTick) {
-		MidiEvent evt = null;
-		MidiMessage msg = null;
-		byte[] data = null;
-		long tick = 0L;
-		long prev_tick = 0L;
-		long duration = 0L;
-		long duration_sum = 0L;
-		long estimated_ticks;
-		int ticks_per_beat;
-		int i_evt = 0;
-		timesigUpper = 4;
-		timesigLowerIndex = 2; // =log2(4)
-		Track tst = trackMap.get(MetaMessageType.TIME_SIGNATURE);
-		do {
-			ticks_per_beat = wholeNoteTickLength >> timesigLowerIndex;
-			estimated_ticks = ((measure * timesigUpper) + beat) * ticks_per_beat + extraTick;
-			if( tst == null || i_evt > tst.size() ) {
-				return duration_sum + estimated_ticks;
-			}
-			msg = (evt = tst.get(i_evt)).getMessage();
-			if( msg.getStatus() == 0xFF && ((MetaMessage)msg).getType() == 0x2F /* EOT */ ) {
-				return duration_sum + estimated_ticks;
+		TimeSignatureSegment segment = segmentAtMeasure(measure);
+		long beats = (long)(measure - segment.startMeasure) * segment.upper + beat;
+		return segment.startTick + beats * segment.beatTickLength + extraTick;
+	}
+	/**
+	 * テンポ区間
+	 * <p>テンポが変わらない区間の開始tick位置、開始マイクロ秒位置、1tickあたりのマイクロ秒数を保持します。</p>
+	 */
+	private static class TempoSegment {
+		/** 区間の開始tick位置 */
+		final long startTick;
+		/** 区間の開始マイクロ秒位置 */
+		final long startMicrosecond;
+		/** 1tickあたりのマイクロ秒数 */
+		final double microsecondsPerTick;
+		TempoSegment(long startTick, long startMicrosecond, double microsecondsPerTick) {
+			this.startTick = startTick;
+			this.startMicrosecond = startMicrosecond;
+			this.microsecondsPerTick = microsecondsPerTick;
+		}
+		long tickToMicrosecond(long tickPosition) {
+			return startMicrosecond + (long)((tickPosition - startTick) * microsecondsPerTick);
+		}
+		long microsecondToTick(long microsecondPosition) {
+			return startTick + Math.round((microsecondPosition - startMicrosecond) / microsecondsPerTick);
+		}
+	}
+	/**
+	 * テンポ区間の配列（tick位置の昇順、先頭は常にtick 0）
+	 * <p>配列の中身は変更せず、作り直したときは配列ごと差し替えます。</p>
+	 */
+	private volatile TempoSegment[] tempoSegments;
+	/**
+	 * テンポのメタイベントからテンポ区間の配列を構築します。
+	 * <p>指定のtick位置より前のテンポ区間はそのまま残し、それ以降だけを作り直します。
+	 * PPQ以外（SMPTE）のタイミング解像度の場合、テンポは無視されます。
+	 * </p>
+	 * @param fromTick 作り直す範囲の先頭tick位置（0 以下の場合はすべて作り直す）
+	 */
+	private void buildTempoSegments(long fromTick) {
+		float divisionType = sourceSequence.getDivisionType();
+		int resolution = sourceSequence.getResolution();
+		if( divisionType != Sequence.PPQ ) {
+			double microsecondsPerTick = 1000000.0 / (divisionType * resolution);
+			tempoSegments = new TempoSegment[] {new TempoSegment(0L, 0L, microsecondsPerTick)};
+			return;
+		}
+		List<TempoSegment> segments = new ArrayList<>();
+		TempoSegment[] oldSegments = tempoSegments;
+		TempoSegment last;
+		if( oldSegments == null || fromTick <= 0 ) {
+			segments.add(last = new TempoSegment(0L, 0L, (double)DEFAULT_MICROSECONDS_PER_QUARTER / resolution));
+		}
+		else {
+			int keepCount = tempoSegmentIndexAtTick(oldSegments, fromTick - 1) + 1;
+			segments.addAll(Arrays.asList(oldSegments).subList(0, keepCount));
+			last = oldSegments[keepCount - 1];
+		}
+		MetaEventList list = metaEventLists[MetaMessageType.TEMPO.ordinal()];
+		for( int eventIndex = list.lowerBound(fromTick); eventIndex < list.events.length; eventIndex++ ) {
+			byte[] data = ((MetaMessage)list.events[eventIndex].getMessage()).getData();
+			if( data.length < 3 ) continue;
+			int microsecondsPerQuarter = ((data[0] & 0xFF) << 16) | ((data[1] & 0xFF) << 8) | (data[2] & 0xFF);
+			if( microsecondsPerQuarter <= 0 ) continue;
+			double microsecondsPerTick = (double)microsecondsPerQuarter / resolution;
+			long tick = list.ticks[eventIndex];
+			if( tick <= last.startTick ) {
+				// 同じ位置のテンポは後のものを優先
+				segments.remove(segments.size() - 1);
+				last = new TempoSegment(last.startTick, last.startMicrosecond, microsecondsPerTick);
 			}
-			duration = (tick = evt.getTick()) - prev_tick;
-			if( duration >= estimated_ticks ) {
-				return duration_sum + estimated_ticks;
+			else {
+				last = new TempoSegment(tick, last.tickToMicrosecond(tick), microsecondsPerTick);
 			}
-			// Re-calculate measure (ignore extra beats/ticks)
-			measure -= ( duration / (ticks_per_beat * timesigUpper) );
-			duration_sum += duration;
-			//
-			// Get next time-signature
-			data = ( (MetaMessage)msg ).getData();
-			timesigUpper = data[0];
-			timesigLowerIndex = data[1];
-			prev_tick = tick;
-			i_evt++;
-		} while( true );
-	}
-}
\ No newline at end of file
+			segments.add(last);
+		}
+		tempoSegments = segments.toArray(new TempoSegment[segments.size()]);
+	}
+	/**
+	 * テンポが指定されていないときの4分音符の長さ[マイクロ秒]（120QPM）
+	 */
+	private static final int DEFAULT_MICROSECONDS_PER_QUARTER = 500000;
+	/**
+	 * 指定のtick位置を含むテンポ区間のインデックスを二分探索します。
+	 * @param segments テンポ区間の配列
+	 * @param tickPosition tick位置
+	 * @return テンポ区間のインデックス
+	 */
+	private static int tempoSegmentIndexAtTick(TempoSegment[] segments, long tickPosition) {
+		int low = 0;
+		int high = segments.length - 1;
+		while( low < high ) {
+			int mid = (low + high + 1) >>> 1;
+			if( segments[mid].startTick <= tickPosition ) low = mid; else high = mid - 1;
+		}
+		return low;
+	}
+	/**
+	 * tick位置をマイクロ秒位置に変換します。
+	 * @param tickPosition tick位置
+	 * @return マイクロ秒位置
+	 */
+	public long tickToMicrosecond(long tickPosition) {
+		TempoSegment[] segments = tempoSegments;
+		return segments[tempoSegmentIndexAtTick(segments, tickPosition)].tickToMicrosecond(tickPosition);
+	}
+	/**
+	 * マイクロ秒位置をtick位置に変換します。
+	 * @param microsecondPosition マイクロ秒位置
+	 * @return tick位置
+	 */
+	public long microsecondToTick(long microsecondPosition) {
+		TempoSegment[] segments = tempoSegments;
+		int low = 0;
+		int high = segments.length - 1;
+		while( low < high ) {
+			int mid = (low + high + 1) >>> 1;
+			if( segments[mid].startMicrosecond <= microsecondPosition ) low = mid; else high = mid - 1;
+		}
+		return segments[low].microsecondToTick(microsecondPosition);
+	}
+	/**
+	 * 元のMIDIシーケンスのマイクロ秒単位の長さを返します。
+	 * <p>{@link Sequence#getMicrosecondLength()} と違い、
+	 * シーケンス全体を走査せずにテンポ区間から求めます。</p>
+	 * @return 元のMIDIシーケンスの長さ[マイクロ秒]
+	 */
+	public long getMicrosecondLength() {
+		return tickToMicrosecond(sourceSequence.getTickLength());
+	}
+}
@@ -98,6 +98,7 @@ public class SequenceTrackListTable extends JTable {
 	public void setModel(SequenceTrackListTableModel model) {
 		if( dataModel == model ) return;
 		cancelCellEditing();
+		SequenceTrackListTableModel oldModel = getModel();
 		if( model == null ) {
 			model = getModel().getParent().emptyTrackListTableModel;
 			addTrackAction.setEnabled(false);
@@ -106,6 +107,8 @@ public class SequenceTrackListTable extends JTable {
 			addTrackAction.setEnabled(true);
 		}
 		super.setModel(model);
+		// 表示されなくなった曲のイベントは、再生中でなければコンパクトな形式にしておく
+		oldModel.packTracksIfIdle();
 	}
 	/**
 	 * 曲番号表示付きタイトルラベル
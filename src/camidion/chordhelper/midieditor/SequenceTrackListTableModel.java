@@ -4,9 +4,14 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
-import java.util.stream.Stream;
+import java.util.Map;
+import java.util.Objects;
 
+import javax.sound.midi.MidiEvent;
 import javax.sound.midi.MidiSystem;
 import javax.sound.midi.Sequence;
 import javax.sound.midi.Track;
@@ -86,11 +91,28 @@ public class SequenceTrackListTableModel extends AbstractTableModel {
 	 * タイトルや歌詞などで使うテキストの文字コードを設定します。
 	 * @param charset テキストの文字コード
 	 */
-	public void setCharset(Charset charset) { this.charset = charset; }
+	public void setCharset(Charset charset) {
+		this.charset = charset;
+		trackModelList.stream().filter(Objects::nonNull).forEach(MidiEventTableModel::clearDecodedRows);
+	}
 	/**
-	 * トラックリスト
+	 * トラックリスト（トラックモデルは必要になったときに生成するため、未生成の要素はnull）
 	 */
 	private List<MidiEventTableModel> trackModelList = new ArrayList<>();
+	/**
+	 * 指定された位置のトラックモデルを返します。未生成の場合は生成します。
+	 * @param row トラックのインデックス
+	 * @return トラックモデル
+	 */
+	private MidiEventTableModel trackModelAt(int row) {
+		MidiEventTableModel trackModel = trackModelList.get(row);
+		if( trackModel == null ) trackModelList.set(row, trackModel = createModelOf(sequence.getTracks()[row]));
+		return trackModel;
+	}
+	/**
+	 * トラックに入れずに保持している、メタイベント以外のイベント（キーはトラック）
+	 */
+	private Map<Track, UnloadedTrack> unloadedTracks = new HashMap<>();
 	/**
 	 * MIDIシーケンスとファイル名から {@link SequenceTrackListTableModel} を構築します。
 	 * @param sequenceListTableModel 親のプレイリスト
@@ -103,10 +125,32 @@ public class SequenceTrackListTableModel extends AbstractTableModel {
 		Sequence sequence,
 		Charset charset,
 		String filename
+	) {
+		this(sequenceListTableModel, sequence, null, charset, filename);
+	}
+	/**
+	 * メタイベント以外のイベントの解析を後回しにしたMIDIシーケンスから {@link SequenceTrackListTableModel} を構築します。
+	 * <p>後回しにしたイベントは、トラックが選択されたとき、シーケンサーに渡されるとき、
+	 * 保存されるときに読み込まれます。それまではトラックチャンクのバイト列のまま保持されます。
+	 * </p>
+	 * @param sequenceListTableModel 親のプレイリスト
+	 * @param sequence MIDIシーケンス
+	 * @param unloadedTracks 解析を後回しにしたイベント（キーはトラック、null可）
+	 * @param charset MIDIシーケンスのテキスト文字コード
+	 * @param filename ファイル名
+	 * @see StandardMidiFileReader#getSequence(java.io.File, Map)
+	 */
+	public SequenceTrackListTableModel(
+		PlaylistTableModel sequenceListTableModel,
+		Sequence sequence,
+		Map<Track, UnloadedTrack> unloadedTracks,
+		Charset charset,
+		String filename
 	) {
 		this.sequenceListTableModel = sequenceListTableModel;
 		this.charset = charset;
 		setSequence(sequence);
+		if( unloadedTracks != null ) this.unloadedTracks.putAll(unloadedTracks);
 		setFilename(filename);
 	}
 	@Override
@@ -149,18 +193,23 @@ public class SequenceTrackListTableModel extends AbstractTableModel {
 		SequenceTrackListTableModel.Column c = Column.values()[column];
 		switch(c) {
 		case TRACK_NUMBER: return row;
-		case EVENTS: return sequence.getTracks()[row].size();
+		case EVENTS: {
+			Track track = sequence.getTracks()[row];
+			UnloadedTrack unloadedTrack = unloadedTracks.get(track);
+			return unloadedTrack == null ? track.size() : track.size() + unloadedTrack.getUnloadedEventCount();
+		}
 		case MUTE:
 			return isOnSequencer() ? sequenceListTableModel.getSequencerModel().getSequencer().getTrackMute(row) : "";
 		case SOLO:
 			return isOnSequencer() ? sequenceListTableModel.getSequencerModel().getSequencer().getTrackSolo(row) : "";
 		case RECORD_CHANNEL:
-			return isOnSequencer() ? trackModelList.get(row).getRecordingChannel() : "";
+			return isOnSequencer() ? trackModelAt(row).getRecordingChannel() : "";
 		case CHANNEL: {
-			int ch = trackModelList.get(row).getChannel();
+			UnloadedTrack unloadedTrack = unloadedTracks.get(sequence.getTracks()[row]);
+			int ch = unloadedTrack == null ? trackModelAt(row).getChannel() : unloadedTrack.getChannel();
 			return ch < 0 ? "" : ch + 1 ;
 		}
-		case TRACK_NAME: return trackModelList.get(row).toString();
+		case TRACK_NAME: return trackModelAt(row).toString();
 		default: return "";
 		}
 	}
@@ -193,7 +242,7 @@ public class SequenceTrackListTableModel extends AbstractTableModel {
 			sequenceListTableModel.getSequencerModel().getSequencer().setTrackSolo(row, ((Boolean)val).booleanValue());
 			break;
 		case RECORD_CHANNEL:
-			trackModelList.get(row).setRecordingChannel((String)val);
+			trackModelAt(row).setRecordingChannel((String)val);
 			break;
 		case CHANNEL: {
 			Integer ch;
@@ -206,14 +255,15 @@ public class SequenceTrackListTableModel extends AbstractTableModel {
 			}
 			if( --ch <= 0 || ch > MIDISpec.MAX_CHANNELS )
 				break;
-			MidiEventTableModel trackTableModel = trackModelList.get(row);
+			MidiEventTableModel trackTableModel = trackModelAt(row);
+			loadTrack(trackTableModel.getTrack());
 			if( ch == trackTableModel.getChannel() ) break;
 			trackTableModel.setChannel(ch);
 			setModified(true);
 			fireTableCellUpdated(row, Column.EVENTS);
 			break;
 		}
-		case TRACK_NAME: trackModelList.get(row).setString((String)val); break;
+		case TRACK_NAME: trackModelAt(row).setString((String)val); break;
 		default: break;
 		}
 		fireTableCellUpdated(row,column);
@@ -226,12 +276,12 @@ public class SequenceTrackListTableModel extends AbstractTableModel {
 	private Sequence sequence;
 	/**
 	 * MIDIシーケンスのマイクロ秒単位の長さを返します。
-	 * 曲が長すぎて {@link Sequence#getMicrosecondLength()} が負数を返してしまった場合の補正も行います。
+	 * <p>シーケンス全体を走査する {@link Sequence#getMicrosecondLength()} の代わりに、
+	 * シーケンスtickインデックスのテンポ情報から求めます。</p>
 	 * @return MIDIシーケンスの長さ[マイクロ秒]
 	 */
 	public long getMicrosecondLength() {
-		long usec = sequence.getMicrosecondLength();
-		return usec < 0 ? usec += 0x100000000L : usec;
+		return sequenceTickIndex.getMicrosecondLength();
 	}
 	/**
 	 * シーケンスtickインデックスを返します。
@@ -256,6 +306,7 @@ public class SequenceTrackListTableModel extends AbstractTableModel {
 		if( sequencerModel != null ) sequencerModel.getSequencer().recordDisable(null);
 		//
 		// トラックリストをクリア
+		unloadedTracks.clear();
 		int oldSize = trackModelList.size();
 		if( oldSize > 0 ) {
 			trackModelList.clear();
@@ -270,16 +321,20 @@ public class SequenceTrackListTableModel extends AbstractTableModel {
 		// tickインデックスを再構築
 		fireTimeSignatureChanged();
 		//
-		// トラックリストを再構築
-		Track[] tracks = sequence.getTracks();
-		int newSize = tracks.length;
-		Stream.of(tracks).forEach(track -> trackModelList.add(createModelOf(track)));
+		// トラックリストを再構築（トラックモデルは必要になったときに生成）
+		int newSize = sequence.getTracks().length;
+		trackModelList.addAll(Collections.nCopies(newSize, null));
 		//
 		// トラックが挿入されたことを通知
 		fireTableRowsInserted(0, newSize-1);
 	}
 	/**
-	 * 拍子が変更されたとき、シーケンスtickインデックスを再作成します。
+	 * シーケンスtickインデックスを再作成します。
+	 * <p>個々のイベントの追加や除去は
+	 * {@link SequenceTickIndex#addMidiEvents(MidiEvent...)}、
+	 * {@link SequenceTickIndex#removeMidiEvents(MidiEvent...)}
+	 * でインデックスに反映できるため、シーケンス全体が入れ替わったときだけ使います。
+	 * </p>
 	 */
 	public void fireTimeSignatureChanged() {
 		sequenceTickIndex = new SequenceTickIndex(sequence);
@@ -317,6 +372,7 @@ public class SequenceTrackListTableModel extends AbstractTableModel {
 	public boolean setName(String name) {
 		if( name.equals(toString()) || ! MIDISpec.setNameBytesOf(sequence, name.getBytes(charset)) )
 			return false;
+		trackModelList.stream().filter(Objects::nonNull).forEach(MidiEventTableModel::clearDecodedRows);
 		setModified(true);
 		fireTableDataChanged();
 		if( isOnSequencer() )
@@ -330,6 +386,7 @@ public class SequenceTrackListTableModel extends AbstractTableModel {
 	 */
 	public byte[] getMIDIdata() throws IOException {
 		if( isEmpty() ) return null;
+		loadAllTracks();
 		try( ByteArrayOutputStream out = new ByteArrayOutputStream() ) {
 			MidiSystem.write(sequence, 1, out);
 			return out.toByteArray();
@@ -354,8 +411,97 @@ public class SequenceTrackListTableModel extends AbstractTableModel {
 	 */
 	public MidiEventTableModel getSelectedTrackModel(ListSelectionModel selectionModel) {
 		if( isEmpty() || selectionModel.isSelectionEmpty() ) return null;
-		Track t = sequence.getTracks()[selectionModel.getMinSelectionIndex()];
-		return trackModelList.stream().filter(tm -> tm.getTrack() == t).findFirst().orElse(null);
+		MidiEventTableModel trackModel = trackModelAt(selectionModel.getMinSelectionIndex());
+		loadTrack(trackModel.getTrack());
+		return trackModel;
+	}
+	/**
+	 * 指定のトラックのイベントのうち、まだ読み込んでいないものを読み込みます。
+	 * @param track トラック
+	 */
+	public void loadTrack(Track track) {
+		UnloadedTrack unloadedTrack = unloadedTracks.remove(track);
+		if( unloadedTrack != null ) unloadedTrack.loadInto(track);
+	}
+	/**
+	 * まだ読み込んでいないイベントをすべてのトラックに読み込みます。
+	 * <p>シーケンサーに渡したり、保存したりする前に呼び出します。</p>
+	 */
+	public void loadAllTracks() {
+		if( unloadedTracks.isEmpty() ) return;
+		unloadedTracks.forEach((track, unloadedTrack) -> unloadedTrack.loadInto(track));
+		unloadedTracks.clear();
+	}
+	/**
+	 * シーケンサーに渡されておらず、どのテーブルにも表示されていなければ、
+	 * メタイベント以外のイベントをトラックから抜き出してコンパクトな形式で保持します。
+	 * <p>再生中でも表示中でもないプレイリストの曲が、イベントごとにオブジェクトを抱え込まないようにするためのものです。
+	 * 抜き出したイベントは、{@link #loadTrack(Track)} や {@link #loadAllTracks()} で元に戻ります。
+	 * トラックは新しいものに置き換わりますが、メタイベントは同じ {@link MidiEvent} のまま移すので、
+	 * シーケンスtickインデックスはそのまま使えます。
+	 * </p>
+	 * @see UnloadedTrack#pack(Track, Track)
+	 */
+	public void packTracksIfIdle() {
+		if( isEmpty() || isOnSequencer() || getTableModelListeners().length > 0 ) return;
+		Track[] oldTracks = sequence.getTracks();
+		if( Arrays.stream(oldTracks).allMatch(UnloadedTrack::hasOnlyMetaEvents) ) return;
+		Map<Track, UnloadedTrack> oldUnloadedTracks = new HashMap<>(unloadedTracks);
+		unloadedTracks.clear();
+		for( Track track : oldTracks ) sequence.deleteTrack(track);
+		for( Track oldTrack : oldTracks ) {
+			UnloadedTrack unloadedTrack = oldUnloadedTracks.get(oldTrack);
+			if( unloadedTrack != null && ! UnloadedTrack.hasOnlyMetaEvents(oldTrack) ) {
+				// 未読み込みのトラックにはメタイベントしかないはずだが、そうでなければ読み込んでから一緒に詰め直す
+				unloadedTrack.loadInto(oldTrack);
+				unloadedTrack = null;
+			}
+			Track newTrack = sequence.createTrack();
+			UnloadedTrack packedTrack = UnloadedTrack.pack(oldTrack, newTrack);
+			if( unloadedTrack == null ) unloadedTrack = packedTrack;
+			if( unloadedTrack != null ) unloadedTracks.put(newTrack, unloadedTrack);
+		}
+		// トラックモデルは古いトラックを指しているので、必要になったときに作り直す
+		Collections.fill(trackModelList, null);
+	}
+	/**
+	 * 指定のトラックのイベントを、指定のイベントの並びにまとめて置き換えます。
+	 * <p>{@link Track} には要素をまとめて入れ替える手段がなく、１個ずつ除去や追加をすると
+	 * トラックのイベント数に比例する時間がイベントごとにかかります。そこで、
+	 * {@link #packTracksIfIdle()} と同様に全トラックを新しいものに作り直し、
+	 * 末尾への追加だけでイベントを入れ直します（他のトラックのイベントも同じ {@link MidiEvent} のまま移します）。
+	 * トラックモデルは新しいトラックを指すように付け替えます。
+	 * </p>
+	 * <p>シーケンサーは設定されたときのトラックを保持しているため、
+	 * シーケンサーに渡されている間は置き換えません。
+	 * </p>
+	 * @param track 置き換えるトラック
+	 * @param events tick 順に並んだ新しいイベント（End of Track を除く）
+	 * @param endOfTrack 新しいトラックの End of Track の tick 位置
+	 * @return 置き換えた新しいトラック（シーケンサーに渡されていて置き換えなかった場合null）
+	 */
+	Track replaceTrack(Track track, MidiEvent[] events, long endOfTrack) {
+		if( isOnSequencer() ) return null;
+		Track[] oldTracks = sequence.getTracks();
+		Track newTrackOfTarget = null;
+		for( Track oldTrack : oldTracks ) sequence.deleteTrack(oldTrack);
+		for( int i = 0; i < oldTracks.length; i++ ) {
+			Track oldTrack = oldTracks[i];
+			Track newTrack = sequence.createTrack();
+			if( oldTrack == track ) {
+				for( MidiEvent event : events ) newTrack.add(event);
+				// End of Track の MidiEvent は追加されず、tick 位置だけが反映される
+				newTrack.add(new MidiEvent(oldTrack.get(oldTrack.size() - 1).getMessage(), endOfTrack));
+				newTrackOfTarget = newTrack;
+			} else {
+				for( int j = 0; j < oldTrack.size(); j++ ) newTrack.add(oldTrack.get(j));
+			}
+			UnloadedTrack unloadedTrack = unloadedTracks.remove(oldTrack);
+			if( unloadedTrack != null ) unloadedTracks.put(newTrack, unloadedTrack);
+			MidiEventTableModel trackModel = trackModelList.get(i);
+			if( trackModel != null ) trackModel.setTrack(newTrack);
+		}
+		return newTrackOfTarget;
 	}
 	/**
 	 * 指定のトラックがある位置のインデックスを返します。
@@ -390,7 +536,12 @@ public class SequenceTrackListTableModel extends AbstractTableModel {
 		Track tracks[] = sequence.getTracks();
 		for( int i = maxIndex; i >= minIndex; i-- ) {
 			if( ! selectionModel.isSelectedIndex(i) ) continue;
-			sequence.deleteTrack(tracks[i]);
+			Track track = tracks[i];
+			MidiEvent[] events = new MidiEvent[track.size()];
+			for( int eventIndex = 0; eventIndex < events.length; eventIndex++ ) events[eventIndex] = track.get(eventIndex);
+			sequence.deleteTrack(track);
+			unloadedTracks.remove(track);
+			sequenceTickIndex.removeMidiEvents(events);
 			trackModelList.remove(i);
 		}
 		fireTableRowsDeleted(minIndex, maxIndex);
@@ -0,0 +1,338 @@
+package camidion.chordhelper.midieditor;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.SysexMessage;
+import javax.sound.midi.Track;
+
+/**
+ * 標準MIDIファイル（SMF）を読み込んで {@link Sequence} を構築するリーダー
+ * <p>{@link MidiSystem#getSequence(InputStream)} の代わりに使います。
+ * ファイル全体を１個のバイト配列に読み込んだ後、トラックチャンク（MTrk）ごとに並列に解析し、
+ * 各トラックには tick 順に並んだイベントを末尾へ追加していくだけにすることで、
+ * 大きなマルチトラックのファイルを読み込む時間を短縮します。
+ * ショートメッセージは、読み込んだバイト列をそのまま使って生成します（値の検査やコピーはしません）。
+ * </p>
+ * <p>先頭が MThd チャンクでないファイル（RMID など）は {@link MidiSystem#getSequence(InputStream)} に任せます。</p>
+ * <p>メタイベント以外のイベントの解析を後回しにすることもできます（{@link UnloadedTrack} を参照）。</p>
+ */
+public class StandardMidiFileReader {
+	private StandardMidiFileReader() { }
+	/**
+	 * MIDIファイルを読み込みます。
+	 * @param file MIDIファイル
+	 * @return MIDIシーケンス
+	 * @throws InvalidMidiDataException MIDIファイルとして解析できなかった場合
+	 * @throws IOException 読み込みに失敗した場合
+	 */
+	public static Sequence getSequence(File file) throws InvalidMidiDataException, IOException {
+		return getSequence(Files.readAllBytes(file.toPath()));
+	}
+	/**
+	 * MIDIファイルを読み込みます。メタイベント以外のイベントは解析を後回しにします。
+	 * <p>返されるシーケンスの各トラックにはメタイベントだけが入っていて、
+	 * 残りのイベントはトラックチャンクのバイト列のまま、トラックごとに {@link UnloadedTrack} として指定のマップに追加されます。
+	 * テンポ、拍子、調号、トラック名、歌詞などはすぐに参照できますが、
+	 * 再生や保存、イベントの編集の前には {@link UnloadedTrack#loadInto(Track)} でトラックに読み込む必要があります。
+	 * </p>
+	 * @param file MIDIファイル
+	 * @param unloadedTracks 解析を後回しにしたイベントの追加先（キーはトラック）
+	 * @return メタイベントだけが入ったMIDIシーケンス（MThd チャンクのないファイルの場合はすべて解析済み）
+	 * @throws InvalidMidiDataException MIDIファイルとして解析できなかった場合
+	 * @throws IOException 読み込みに失敗した場合
+	 */
+	public static Sequence getSequence(File file, Map<Track, UnloadedTrack> unloadedTracks)
+		throws InvalidMidiDataException, IOException
+	{
+		return getSequence(Files.readAllBytes(file.toPath()), unloadedTracks);
+	}
+	/**
+	 * URLで指定されたMIDIファイルを読み込みます。
+	 * @param url MIDIファイルのURL
+	 * @return MIDIシーケンス
+	 * @throws InvalidMidiDataException MIDIファイルとして解析できなかった場合
+	 * @throws IOException 読み込みに失敗した場合
+	 */
+	public static Sequence getSequence(URL url) throws InvalidMidiDataException, IOException {
+		try( InputStream in = url.openStream() ) {
+			return getSequence(in);
+		}
+	}
+	/**
+	 * 入力ストリームからMIDIファイルを最後まで読み込みます。ストリームは閉じません。
+	 * @param in 入力ストリーム
+	 * @return MIDIシーケンス
+	 * @throws InvalidMidiDataException MIDIファイルとして解析できなかった場合
+	 * @throws IOException 読み込みに失敗した場合
+	 */
+	public static Sequence getSequence(InputStream in) throws InvalidMidiDataException, IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(8192, in.available()));
+		byte[] buffer = new byte[8192];
+		for( int n; (n = in.read(buffer)) > 0; ) out.write(buffer, 0, n);
+		return getSequence(out.toByteArray());
+	}
+	/**
+	 * バイト配列に読み込まれたMIDIファイルを解析します。
+	 * <p>トラックチャンクの長さがファイルの残りより長い場合は、ファイルの終わりまでをそのトラックとみなします。</p>
+	 * @param data MIDIファイルの内容
+	 * @return MIDIシーケンス
+	 * @throws InvalidMidiDataException MIDIファイルとして解析できなかった場合
+	 * @throws IOException MThd チャンクのないファイルの読み込みに失敗した場合
+	 */
+	public static Sequence getSequence(byte[] data) throws InvalidMidiDataException, IOException {
+		return getSequence(data, null);
+	}
+	private static Sequence getSequence(byte[] data, Map<Track, UnloadedTrack> unloadedTracks)
+		throws InvalidMidiDataException, IOException
+	{
+		if( ! isChunkOf("MThd", data, 0) ) {
+			return MidiSystem.getSequence(new ByteArrayInputStream(data));
+		}
+		int headerLength = readInt(data, 4);
+		if( headerLength < 6 || headerLength > data.length - 8 ) {
+			throw new InvalidMidiDataException("Invalid MThd chunk length: " + headerLength);
+		}
+		int format = readShort(data, 8);
+		if( format > 2 ) {
+			throw new InvalidMidiDataException("Unsupported MIDI file format: " + format);
+		}
+		int numberOfTracks = readShort(data, 10);
+		int division = readShort(data, 12);
+		Sequence sequence;
+		if( (division & 0x8000) == 0 ) {
+			sequence = new Sequence(Sequence.PPQ, division);
+		} else {
+			float divisionType;
+			switch( -(byte)(division >> 8) ) {
+			case 24: divisionType = Sequence.SMPTE_24; break;
+			case 25: divisionType = Sequence.SMPTE_25; break;
+			case 29: divisionType = Sequence.SMPTE_30DROP; break;
+			case 30: divisionType = Sequence.SMPTE_30; break;
+			default: throw new InvalidMidiDataException("Invalid SMPTE division: " + Integer.toHexString(division));
+			}
+			sequence = new Sequence(divisionType, division & 0xFF);
+		}
+		// トラックチャンクの位置を先に調べておく（MTrk 以外のチャンクは読み飛ばす）
+		List<int[]> trackChunks = new ArrayList<>(numberOfTracks);
+		for( int pos = 8 + headerLength; trackChunks.size() < numberOfTracks && pos <= data.length - 8; ) {
+			long chunkLength = readInt(data, pos + 4) & 0xFFFFFFFFL;
+			int start = pos + 8;
+			int end = (int)Math.min(data.length, start + chunkLength);
+			if( isChunkOf("MTrk", data, pos) ) trackChunks.add(new int[] {start, end});
+			pos = end;
+		}
+		// トラックごとに並列に解析
+		Track[] tracks = new Track[trackChunks.size()];
+		for( int i = 0; i < tracks.length; i++ ) tracks[i] = sequence.createTrack();
+		UnloadedTrack[] unloaded = new UnloadedTrack[tracks.length];
+		InvalidMidiDataException[] exceptions = new InvalidMidiDataException[tracks.length];
+		IntStream.range(0, tracks.length).parallel().forEach(i->{
+			int[] chunk = trackChunks.get(i);
+			Track track = tracks[i];
+			TrackChunkCursor cursor = new TrackChunkCursor(data, chunk[0], chunk[1]);
+			try {
+				if( unloadedTracks == null ) {
+					readTrack(cursor, track::add, track::add);
+				} else {
+					UnloadedTrack.MetaEventPositions metaEventPositions = new UnloadedTrack.MetaEventPositions();
+					readTrack(cursor, event->{
+						track.add(event);
+						// 同じ tick 位置で後回しにしたイベントより後ろにあったメタイベントは、元の位置を記録しておく
+						if( cursor.skippedCount > 0 && cursor.lastSkippedTick == event.getTick() ) {
+							metaEventPositions.add(event, cursor.skippedCount);
+						}
+					}, null);
+					if( cursor.skippedCount > 0 ) unloaded[i] = new TrackChunk(
+						Arrays.copyOfRange(data, chunk[0], chunk[1]), cursor.skippedCount, cursor.getChannel(), metaEventPositions
+					);
+				}
+			} catch( InvalidMidiDataException e ) {
+				exceptions[i] = e;
+			}
+		});
+		for( InvalidMidiDataException e : exceptions ) if( e != null ) throw e;
+		if( unloadedTracks != null ) {
+			for( int i = 0; i < tracks.length; i++ ) if( unloaded[i] != null ) unloadedTracks.put(tracks[i], unloaded[i]);
+		}
+		return sequence;
+	}
+	private static boolean isChunkOf(String type, byte[] data, int pos) {
+		if( data.length < pos + 4 ) return false;
+		for( int i = 0; i < 4; i++ ) if( data[pos + i] != type.charAt(i) ) return false;
+		return true;
+	}
+	private static int readShort(byte[] data, int pos) {
+		return (data[pos] & 0xFF) << 8 | (data[pos + 1] & 0xFF);
+	}
+	private static int readInt(byte[] data, int pos) {
+		return readShort(data, pos) << 16 | readShort(data, pos + 2);
+	}
+	/**
+	 * トラックチャンクの中の読み込み位置
+	 */
+	private static class TrackChunkCursor {
+		private final byte[] data;
+		private int pos;
+		private final int end;
+		private long tick = 0;
+		/** 読み飛ばしたイベントの数 */
+		private int skippedCount = 0;
+		/** 最後に読み飛ばしたイベントの tick 位置 */
+		private long lastSkippedTick = -1;
+		/** チャンネルメッセージのMIDIチャンネル（まだない場合 -1、不統一の場合 -2） */
+		private int channel = -1;
+		private TrackChunkCursor(byte[] data, int start, int end) {
+			this.data = data;
+			this.pos = start;
+			this.end = end;
+		}
+		private boolean hasRemaining() { return pos < end; }
+		private InvalidMidiDataException endOfTrack() {
+			return new InvalidMidiDataException("Unexpected end of track at tick " + tick);
+		}
+		private int peek() throws InvalidMidiDataException {
+			if( pos >= end ) throw endOfTrack();
+			return data[pos] & 0xFF;
+		}
+		private int read() throws InvalidMidiDataException {
+			int b = peek();
+			pos++;
+			return b;
+		}
+		private long readVariableLength() throws InvalidMidiDataException {
+			long value = 0;
+			int b;
+			do {
+				b = read();
+				value = value << 7 | b & 0x7F;
+			} while( (b & 0x80) != 0 );
+			return value;
+		}
+		/**
+		 * 指定された長さのバイト列を、先頭を offset バイト空けた新しい配列へ読み込みます。
+		 */
+		private byte[] read(int offset, long length) throws InvalidMidiDataException {
+			if( length > end - pos ) throw endOfTrack();
+			byte[] bytes = new byte[offset + (int)length];
+			System.arraycopy(data, pos, bytes, offset, (int)length);
+			pos += length;
+			return bytes;
+		}
+		private void skip(long length) throws InvalidMidiDataException {
+			if( length > end - pos ) throw endOfTrack();
+			pos += length;
+		}
+		/**
+		 * チャンネルメッセージのMIDIチャンネルを返します。
+		 * @return MIDIチャンネル（チャンネルメッセージがない場合や、不統一の場合 -1）
+		 */
+		private int getChannel() { return Math.max(-1, channel); }
+	}
+	/**
+	 * １個のトラックチャンクを解析し、イベントを tick 順に渡します。
+	 * <p>SMF のイベントはもともと tick 順に並んでいるため、
+	 * トラックに渡す場合も {@link Track#add(MidiEvent)} で挿入位置を探し回ることはありません。
+	 * ランニングステータスは、メタイベントやシステムエクスクルーシブをはさんでも引き継ぎます
+	 * （{@link MidiSystem#getSequence(InputStream)} と同じ扱い）。
+	 * </p>
+	 * @param cursor 読み込み位置
+	 * @param metaEventSink メタイベント（End of Track を含む）の渡し先（null の場合は読み飛ばす）
+	 * @param otherEventSink メタイベント以外のイベントの渡し先（null の場合は読み飛ばして数とチャンネルだけを記録）
+	 * @throws InvalidMidiDataException 解析できなかった場合
+	 */
+	private static void readTrack(
+		TrackChunkCursor cursor, Consumer<MidiEvent> metaEventSink, Consumer<MidiEvent> otherEventSink
+	) throws InvalidMidiDataException {
+		int runningStatus = 0;
+		while( cursor.hasRemaining() ) {
+			cursor.tick += cursor.readVariableLength();
+			int status = cursor.peek();
+			if( status < 0x80 ) {
+				if( runningStatus == 0 ) {
+					throw new InvalidMidiDataException("Missing status byte at tick " + cursor.tick);
+				}
+				status = runningStatus;
+			} else {
+				cursor.pos++;
+			}
+			if( status < 0xF0 ) {
+				// プログラムチェンジとチャンネルプレッシャーのデータは１バイト
+				int dataLength = (status & 0xE0) == 0xC0 ? 1 : 2;
+				runningStatus = status;
+				if( otherEventSink == null ) {
+					cursor.skip(dataLength);
+					cursor.skippedCount++;
+					cursor.lastSkippedTick = cursor.tick;
+					int ch = status & 0x0F;
+					if( cursor.channel == -1 ) cursor.channel = ch; else if( cursor.channel != ch ) cursor.channel = -2;
+					continue;
+				}
+				byte[] bytes = cursor.read(1, dataLength);
+				bytes[0] = (byte)status;
+				otherEventSink.accept(new MidiEvent(UnloadedTrack.newShortMessage(bytes), cursor.tick));
+			} else if( status == 0xFF ) {
+				int type = cursor.read();
+				long length = cursor.readVariableLength();
+				if( metaEventSink == null ) {
+					cursor.skip(length);
+					if( type == 0x2F ) break;
+					continue;
+				}
+				byte[] bytes = cursor.read(0, length);
+				metaEventSink.accept(new MidiEvent(new MetaMessage(type, bytes, bytes.length), cursor.tick));
+				// End of Track 以降は読まない
+				if( type == 0x2F ) break;
+			} else if( status == 0xF0 || status == 0xF7 ) {
+				long length = cursor.readVariableLength();
+				if( otherEventSink == null ) {
+					cursor.skip(length);
+					cursor.skippedCount++;
+					cursor.lastSkippedTick = cursor.tick;
+					continue;
+				}
+				byte[] bytes = cursor.read(1, length);
+				bytes[0] = (byte)status;
+				otherEventSink.accept(new MidiEvent(new SysexMessage(bytes, bytes.length), cursor.tick));
+			} else {
+				throw new InvalidMidiDataException(
+					"Invalid status byte " + Integer.toHexString(status) + " at tick " + cursor.tick);
+			}
+		}
+	}
+	/**
+	 * 解析を後回しにした、トラックチャンクのバイト列のままのイベント
+	 */
+	private static class TrackChunk extends UnloadedTrack {
+		private final byte[] chunk;
+		private TrackChunk(byte[] chunk, int unloadedEventCount, int channel, MetaEventPositions metaEventPositions) {
+			super(unloadedEventCount, channel, metaEventPositions);
+			this.chunk = chunk;
+		}
+		@Override
+		void readEvents(Consumer<MidiEvent> eventSink) {
+			try {
+				readTrack(new TrackChunkCursor(chunk, 0, chunk.length), null, eventSink);
+			} catch( InvalidMidiDataException e ) {
+				// 後回しにしたときに同じバイト列を解析済みなので、ここへは来ないはず
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+}
@@ -0,0 +1,208 @@
+package camidion.chordhelper.midieditor;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.util.function.IntConsumer;
+
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.SysexMessage;
+import javax.sound.midi.Track;
+
+/**
+ * {@link Sequence} を標準MIDIファイル（SMF、フォーマット１）として書き出すライター
+ * <p>{@link MidiSystem#write(Sequence, int, OutputStream)} の代わりに使います。
+ * ファイル全体やトラック全体をメモリ上に組み立てることはせず、
+ * 一定の大きさのバッファを通してチャネルへ順に書き出します。
+ * トラックチャンクの長さは、書き終わってから先頭に戻って書き込みます。
+ * </p>
+ * <p>チャンネルメッセージにはランニングステータスを使います
+ * （メタイベントやシステムエクスクルーシブの後では、ステータスバイトを省略しません）。
+ * SMF に書けないシステムコモンメッセージやシステムリアルタイムメッセージは書き出しません。
+ * </p>
+ */
+public class StandardMidiFileWriter {
+	private StandardMidiFileWriter() { }
+	/**
+	 * 書き出しの途中経過を知らせる間隔（イベント数）
+	 */
+	private static final int PROGRESS_INTERVAL = 4096;
+	/**
+	 * 書き出すトラックのイベントを、その時点の内容で配列に写し取ります。
+	 * <p>トラックを編集するスレッド（イベントディスパッチスレッド）から呼び出してください。
+	 * 写し取った配列は、その後にトラックが編集されたり置き換えられたりしても変わらないので、
+	 * 別のスレッドで {@link #write(Sequence, MidiEvent[][], SeekableByteChannel, IntConsumer)} に渡せます。
+	 * </p>
+	 * @param sequence MIDIシーケンス
+	 * @return トラックごとのイベント（End of Track を含む）の配列
+	 */
+	public static MidiEvent[][] snapshotOf(Sequence sequence) {
+		Track[] tracks = sequence.getTracks();
+		MidiEvent[][] snapshot = new MidiEvent[tracks.length][];
+		for( int i = 0; i < tracks.length; i++ ) {
+			Track track = tracks[i];
+			MidiEvent[] events = new MidiEvent[track.size()];
+			for( int j = 0; j < events.length; j++ ) events[j] = track.get(j);
+			snapshot[i] = events;
+		}
+		return snapshot;
+	}
+	/**
+	 * 書き出すイベントの総数を返します。
+	 * @param tracks {@link #snapshotOf(Sequence)} で写し取ったトラックごとのイベント
+	 * @return 全トラックのイベント数（End of Track を含む）の合計
+	 */
+	public static int getEventCount(MidiEvent[][] tracks) {
+		int count = 0;
+		for( MidiEvent[] events : tracks ) count += events.length;
+		return count;
+	}
+	/**
+	 * 写し取ったトラックのイベントを、標準MIDIファイルとしてチャネルの現在位置から書き出します。チャネルは閉じません。
+	 * <p>MIDIシーケンスからは時間単位だけを使うので、書き出し中にトラックが編集されてもかまいません。
+	 * </p>
+	 * @param sequence MIDIシーケンス
+	 * @param tracks {@link #snapshotOf(Sequence)} で写し取ったトラックごとのイベント
+	 * @param channel 書き出し先のチャネル
+	 * @param progress 書き出し済みのイベント数を受け取る処理（null可）
+	 * @throws IOException 書き出しに失敗した場合
+	 */
+	public static void write(Sequence sequence, MidiEvent[][] tracks, SeekableByteChannel channel, IntConsumer progress)
+		throws IOException
+	{
+		ChunkWriter out = new ChunkWriter(channel);
+		out.beginChunk("MThd");
+		out.writeShort(1);
+		out.writeShort(tracks.length);
+		out.writeShort(getDivision(sequence));
+		out.endChunk();
+		int writtenCount = 0;
+		for( MidiEvent[] events : tracks ) {
+			out.beginChunk("MTrk");
+			long previousTick = 0;
+			int runningStatus = 0;
+			for( MidiEvent event : events ) {
+				MidiMessage message = event.getMessage();
+				long tick = event.getTick();
+				if( ++writtenCount % PROGRESS_INTERVAL == 0 && progress != null ) progress.accept(writtenCount);
+				if( message instanceof ShortMessage ) {
+					int status = message.getStatus();
+					if( status >= 0xF0 ) continue;
+					out.writeVariableLength(tick - previousTick);
+					byte[] bytes = message.getMessage();
+					int length = message.getLength();
+					if( status == runningStatus ) {
+						out.write(bytes, 1, length - 1);
+					} else {
+						out.write(bytes, 0, length);
+						runningStatus = status;
+					}
+				} else if( message instanceof MetaMessage ) {
+					MetaMessage metaMessage = (MetaMessage)message;
+					byte[] data = metaMessage.getData();
+					out.writeVariableLength(tick - previousTick);
+					out.writeByte(0xFF);
+					out.writeByte(metaMessage.getType());
+					out.writeVariableLength(data.length);
+					out.write(data, 0, data.length);
+					runningStatus = 0;
+				} else if( message instanceof SysexMessage ) {
+					byte[] data = ((SysexMessage)message).getData();
+					out.writeVariableLength(tick - previousTick);
+					out.writeByte(message.getStatus());
+					out.writeVariableLength(data.length);
+					out.write(data, 0, data.length);
+					runningStatus = 0;
+				} else {
+					continue;
+				}
+				previousTick = tick;
+			}
+			out.endChunk();
+		}
+		out.flush();
+		if( progress != null ) progress.accept(writtenCount);
+	}
+	/**
+	 * MThd チャンクに書き込む時間単位の値を返します。
+	 */
+	private static int getDivision(Sequence sequence) {
+		float divisionType = sequence.getDivisionType();
+		int resolution = sequence.getResolution();
+		if( divisionType == Sequence.PPQ ) return resolution & 0x7FFF;
+		int framesPerSecond;
+		if( divisionType == Sequence.SMPTE_24 ) framesPerSecond = 24;
+		else if( divisionType == Sequence.SMPTE_25 ) framesPerSecond = 25;
+		else if( divisionType == Sequence.SMPTE_30DROP ) framesPerSecond = 29;
+		else framesPerSecond = 30;
+		return (-framesPerSecond & 0xFF) << 8 | resolution & 0xFF;
+	}
+	/**
+	 * バッファを通してチャネルへチャンクを書き出す処理
+	 */
+	private static class ChunkWriter {
+		private final SeekableByteChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+		/** 書き出し中のチャンクの長さを書き込む位置 */
+		private long chunkLengthPosition;
+		private ChunkWriter(SeekableByteChannel channel) { this.channel = channel; }
+		private void flush() throws IOException {
+			buffer.flip();
+			while( buffer.hasRemaining() ) channel.write(buffer);
+			buffer.clear();
+		}
+		private void writeByte(int b) throws IOException {
+			if( ! buffer.hasRemaining() ) flush();
+			buffer.put((byte)b);
+		}
+		private void writeShort(int value) throws IOException {
+			writeByte(value >> 8);
+			writeByte(value);
+		}
+		private void writeInt(int value) throws IOException {
+			writeShort(value >> 16);
+			writeShort(value);
+		}
+		private void writeVariableLength(long value) throws IOException {
+			int shift = 0;
+			while( shift < 63 && value >>> (shift + 7) != 0 ) shift += 7;
+			for( ; shift > 0; shift -= 7 ) writeByte((int)(value >>> shift) & 0x7F | 0x80);
+			writeByte((int)value & 0x7F);
+		}
+		private void write(byte[] bytes, int offset, int length) throws IOException {
+			if( length > buffer.remaining() ) {
+				flush();
+				if( length > buffer.capacity() ) {
+					ByteBuffer wrapped = ByteBuffer.wrap(bytes, offset, length);
+					while( wrapped.hasRemaining() ) channel.write(wrapped);
+					return;
+				}
+			}
+			buffer.put(bytes, offset, length);
+		}
+		private void beginChunk(String type) throws IOException {
+			for( int i = 0; i < 4; i++ ) writeByte(type.charAt(i));
+			chunkLengthPosition = channel.position() + buffer.position();
+			writeInt(0);
+		}
+		/**
+		 * チャンクを書き終えて、先頭の長さを書き込みます。
+		 */
+		private void endChunk() throws IOException {
+			flush();
+			long end = channel.position();
+			long length = end - chunkLengthPosition - 4;
+			ByteBuffer lengthBuffer = ByteBuffer.allocate(4).putInt((int)length);
+			lengthBuffer.flip();
+			channel.position(chunkLengthPosition);
+			while( lengthBuffer.hasRemaining() ) channel.write(lengthBuffer);
+			channel.position(end);
+		}
+	}
+}
@@ -22,6 +22,7 @@ public class TickPositionModel implements ChangeListener {
 		extraTickModel.addChangeListener(this);
 	}
 	private SequenceTickIndex sequenceTickIndex;
+	private SequenceTickIndex.MeasurePosition measurePosition = new SequenceTickIndex.MeasurePosition();
 	private boolean isChanging = false;
 	@Override
 	public void stateChanged(ChangeEvent e) {
@@ -30,11 +31,11 @@ public class TickPositionModel implements ChangeListener {
 		if( e.getSource() == tickModel ) {
 			isChanging = true;
 			long newTick = tickModel.getNumber().longValue();
-			int newMeasure = 1 + sequenceTickIndex.tickToMeasure(newTick);
-			measureModel.setValue(newMeasure);
-			beatModel.setValue(sequenceTickIndex.lastBeat + 1);
+			sequenceTickIndex.tickToMeasure(newTick, measurePosition);
+			measureModel.setValue(measurePosition.measure + 1);
+			beatModel.setValue(measurePosition.beat + 1);
 			isChanging = false;
-			extraTickModel.setValue(sequenceTickIndex.lastExtraTick);
+			extraTickModel.setValue(measurePosition.extraTick);
 			return;
 		}
 		if( isChanging )
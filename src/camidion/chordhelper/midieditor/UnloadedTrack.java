@@ -0,0 +1,289 @@
+package camidion.chordhelper.midieditor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+
+import camidion.chordhelper.music.MIDISpec;
+
+/**
+ * トラックに入れずに保持している、メタイベント以外のイベント
+ * <p>MIDIイベント１個ごとに {@link MidiEvent}、{@link MidiMessage}、バイト配列の３つのオブジェクトを
+ * 生成しないで済むよう、コンパクトな形式のまま保持します。形式には次の２種類があります。
+ * </p>
+ * <ul>
+ * <li>MIDIファイルのトラックチャンクのバイト列そのもの
+ * （{@link StandardMidiFileReader#getSequence(java.io.File, java.util.Map)} で読み込んだもの）</li>
+ * <li>tick 位置の long 配列とメッセージの int 配列
+ * （{@link #pack(Track, Track)} でトラックから抜き出したもの。
+ * int 値に詰められないシステムエクスクルーシブなどは別の配列に保持）</li>
+ * </ul>
+ * <p>メタイベント（テンポ、拍子、調号、トラック名、歌詞など）は常にトラックに入っているため、
+ * {@link SequenceTickIndex} やシーケンス名はこれらを読み込まなくても使えます。
+ * 再生や保存、イベントの編集の前には {@link #loadInto(Track)} でトラックに読み込む必要があります。
+ * </p>
+ */
+public abstract class UnloadedTrack {
+	/**
+	 * バイト列をそのまま保持するショートメッセージ
+	 */
+	private static class UncheckedShortMessage extends ShortMessage {
+		private UncheckedShortMessage(byte[] data) { super(data); }
+	}
+	/**
+	 * バイト列をそのまま使ってショートメッセージを生成します（値の検査やコピーはしません）。
+	 * @param data ステータスバイトとデータバイト（１～３バイト）
+	 * @return ショートメッセージ
+	 */
+	static ShortMessage newShortMessage(byte[] data) { return new UncheckedShortMessage(data); }
+
+	/**
+	 * メタイベントの元の位置の記録
+	 * <p>同じ tick 位置にあるメタイベント以外のイベントより後ろにあったメタイベントについて、
+	 * その前にあったメタイベント以外のイベントの数を記録します。
+	 * 記録のないメタイベントは、同じ tick 位置のメタイベント以外のイベントより前にあったものとみなします。
+	 * </p>
+	 */
+	static class MetaEventPositions {
+		private MidiEvent[] metaEvents;
+		private int[] positions;
+		private int size = 0;
+		/**
+		 * メタイベントの元の位置を記録します。
+		 * @param metaEvent トラックに入れたメタイベント
+		 * @param position その前にあった、メタイベント以外のイベントの数
+		 */
+		void add(MidiEvent metaEvent, int position) {
+			if( metaEvents == null ) {
+				metaEvents = new MidiEvent[4];
+				positions = new int[4];
+			} else if( size == metaEvents.length ) {
+				metaEvents = Arrays.copyOf(metaEvents, size * 2);
+				positions = Arrays.copyOf(positions, size * 2);
+			}
+			metaEvents[size] = metaEvent;
+			positions[size++] = position;
+		}
+		private boolean isEmpty() { return size == 0; }
+		private void trim() {
+			metaEvents = Arrays.copyOf(metaEvents, size);
+			positions = Arrays.copyOf(positions, size);
+		}
+		private Map<MidiEvent, Integer> toMap() {
+			Map<MidiEvent, Integer> map = new IdentityHashMap<>(size);
+			for( int i = 0; i < size; i++ ) map.put(metaEvents[i], positions[i]);
+			return map;
+		}
+	}
+	private final int unloadedEventCount;
+	private final int channel;
+	private final MetaEventPositions metaEventPositions;
+	/**
+	 * 保持しているイベントの数とMIDIチャンネルを指定して構築します。
+	 * @param unloadedEventCount イベント数
+	 * @param channel チャンネルメッセージのMIDIチャンネル（ない場合や、不統一の場合 -1）
+	 * @param metaEventPositions トラックに入れたメタイベントの元の位置（記録がない場合 null）
+	 */
+	UnloadedTrack(int unloadedEventCount, int channel, MetaEventPositions metaEventPositions) {
+		this.unloadedEventCount = unloadedEventCount;
+		this.channel = channel;
+		if( metaEventPositions == null || metaEventPositions.isEmpty() ) {
+			this.metaEventPositions = null;
+		} else {
+			metaEventPositions.trim();
+			this.metaEventPositions = metaEventPositions;
+		}
+	}
+	/**
+	 * まだトラックに入っていないイベントの数を返します。
+	 * @return イベント数
+	 */
+	public int getUnloadedEventCount() { return unloadedEventCount; }
+	/**
+	 * チャンネルメッセージのMIDIチャンネルを返します。
+	 * <p>{@link MidiEventTableModel#getChannel()} を読み込み前に求めたものです。</p>
+	 * @return MIDIチャンネル（チャンネルメッセージがない場合や、不統一の場合 -1）
+	 */
+	public int getChannel() { return channel; }
+	/**
+	 * 保持しているイベントを tick 順に生成して渡します。
+	 * @param eventSink 生成したイベントの渡し先
+	 */
+	abstract void readEvents(Consumer<MidiEvent> eventSink);
+	/**
+	 * 保持しているイベントを生成し、トラックに入れます。
+	 * <p>トラックにすでにあるイベント（メタイベントと、その後で追加されたイベント）は残したまま、
+	 * tick 順に合流させます。同じ tick 位置では、元の位置が記録されているメタイベントは元の順序に戻し、
+	 * それ以外のすでにあったイベントは先になります。
+	 * </p>
+	 * @param track 読み込み先のトラック
+	 */
+	public void loadInto(Track track) {
+		List<MidiEvent> loadedEvents = new ArrayList<>(unloadedEventCount);
+		readEvents(loadedEvents::add);
+		int existingCount = track.size() - 1; // 最後は End of Track
+		MidiEvent[] existingEvents = new MidiEvent[existingCount];
+		for( int i = 0; i < existingCount; i++ ) existingEvents[i] = track.get(i);
+		Map<MidiEvent, Integer> positions = metaEventPositions == null ?
+			Collections.emptyMap() : metaEventPositions.toMap();
+		//
+		// 合流後の並びを求める。
+		// すでにあるイベントのうち、同じ tick 位置の読み込むイベントより後ろに回るものは、
+		// Track.add() では前に入ってしまうため、いったん外して入れ直す。
+		int loadedCount = loadedEvents.size();
+		MidiEvent[] mergedEvents = new MidiEvent[existingCount + loadedCount];
+		boolean[] isKept = new boolean[mergedEvents.length];
+		boolean[] isMoved = new boolean[existingCount];
+		int movedCount = 0;
+		int i = 0, n = 0;
+		for( int k = 0; k <= loadedCount; k++ ) {
+			MidiEvent loadedEvent = k < loadedCount ? loadedEvents.get(k) : null;
+			long previousTick = k > 0 ? loadedEvents.get(k - 1).getTick() : -1;
+			while( i < existingCount ) {
+				MidiEvent event = existingEvents[i];
+				long tick = event.getTick();
+				if( loadedEvent != null && (tick > loadedEvent.getTick() ||
+					tick == loadedEvent.getTick() && positions.getOrDefault(event, 0) > k) ) break;
+				if( tick == previousTick ) {
+					isMoved[i] = true;
+					movedCount++;
+				} else {
+					isKept[n] = true;
+				}
+				mergedEvents[n++] = event;
+				i++;
+			}
+			if( loadedEvent != null ) mergedEvents[n++] = loadedEvent;
+		}
+		// 残すイベントを後ろから飛び越す数と外す数から、すべて外して末尾への追加だけで入れ直すほうがよいか判断
+		int keptCount = existingCount - movedCount;
+		long cost = (long)movedCount * existingCount;
+		for( int j = 0, keptBefore = 0; j < mergedEvents.length; j++ ) {
+			if( isKept[j] ) keptBefore++; else cost += keptCount - keptBefore;
+		}
+		boolean isRebuilding = cost > (long)existingCount * existingCount / 2;
+		for( int j = existingCount - 1; j >= 0; j-- ) {
+			if( isRebuilding || isMoved[j] ) track.remove(existingEvents[j]);
+		}
+		for( int j = 0; j < mergedEvents.length; j++ ) {
+			if( isRebuilding || ! isKept[j] ) track.add(mergedEvents[j]);
+		}
+	}
+	/**
+	 * トラックにメタイベントしかないかどうかを調べます。
+	 * @param track トラック
+	 * @return メタイベント（End of Track を含む）しかなければtrue
+	 */
+	static boolean hasOnlyMetaEvents(Track track) {
+		int lastIndex = track.size() - 1;
+		for( int i = 0; i < lastIndex; i++ ) {
+			if( ! (track.get(i).getMessage() instanceof MetaMessage) ) return false;
+		}
+		return true;
+	}
+	/**
+	 * トラックの内容を、メタイベントとそれ以外に分けて詰め直します。
+	 * <p>メタイベントは同じ {@link MidiEvent} のまま移し先のトラックに入れ、
+	 * それ以外のイベントはコンパクトな形式にして返します。
+	 * 移し先のトラックの End of Track は、元のトラックと同じ tick 位置になります。
+	 * 元のトラックは変更しません。
+	 * </p>
+	 * <p>{@link Track} には要素をまとめて除去する手段がなく、１個ずつ除去すると
+	 * イベント数の２乗に比例する時間がかかるため、新しいトラックへ移す方法をとっています。
+	 * </p>
+	 * @param source 元のトラック
+	 * @param destination 移し先の空のトラック
+	 * @return メタイベント以外のイベント（ない場合はnull）
+	 */
+	public static UnloadedTrack pack(Track source, Track destination) {
+		int lastIndex = source.size() - 1; // 最後は End of Track
+		int count = 0;
+		for( int i = 0; i < lastIndex; i++ ) {
+			if( ! (source.get(i).getMessage() instanceof MetaMessage) ) count++;
+		}
+		long[] ticks = new long[count];
+		int[] messages = new int[count];
+		List<MidiMessage> otherMessages = new ArrayList<>();
+		int channel = -1;
+		boolean isMixed = false;
+		MetaEventPositions metaEventPositions = new MetaEventPositions();
+		int n = 0;
+		for( int i = 0; i < lastIndex; i++ ) {
+			MidiEvent event = source.get(i);
+			MidiMessage message = event.getMessage();
+			if( message instanceof MetaMessage ) {
+				destination.add(event);
+				// 同じ tick 位置で詰めたイベントより後ろにあったメタイベントは、元の位置を記録しておく
+				if( n > 0 && ticks[n - 1] == event.getTick() ) metaEventPositions.add(event, n);
+				continue;
+			}
+			ticks[n] = event.getTick();
+			if( message instanceof ShortMessage ) {
+				byte[] b = message.getMessage();
+				int length = message.getLength();
+				int packed = length << 24 | b[0] & 0xFF;
+				if( length > 1 ) packed |= (b[1] & 0xFF) << 8;
+				if( length > 2 ) packed |= (b[2] & 0xFF) << 16;
+				messages[n++] = packed;
+				int status = b[0] & 0xFF;
+				if( ! isMixed && MIDISpec.isChannelMessage(status) ) {
+					int ch = status & 0x0F;
+					if( channel < 0 ) channel = ch; else if( channel != ch ) isMixed = true;
+				}
+			} else {
+				// int 値に詰められないメッセージは別に保持し、その位置を入れておく（長さのバイトは 0）
+				messages[n++] = otherMessages.size();
+				otherMessages.add(message);
+			}
+		}
+		destination.add(source.get(lastIndex));
+		if( count == 0 ) return null;
+		return new PackedEvents(
+			ticks, messages, otherMessages.toArray(new MidiMessage[otherMessages.size()]),
+			isMixed ? -1 : channel, metaEventPositions
+		);
+	}
+	/**
+	 * tick 位置の long 配列とメッセージの int 配列に詰めたイベント
+	 * <p>ショートメッセージは、下位から順にステータス、データ１、データ２、長さの各バイトを int 値に詰めます。
+	 * 長さのバイトが 0 の値は、別に保持しているメッセージの位置を表します。
+	 * </p>
+	 */
+	private static class PackedEvents extends UnloadedTrack {
+		private final long[] ticks;
+		private final int[] messages;
+		private final MidiMessage[] otherMessages;
+		private PackedEvents(long[] ticks, int[] messages, MidiMessage[] otherMessages, int channel, MetaEventPositions metaEventPositions) {
+			super(ticks.length, channel, metaEventPositions);
+			this.ticks = ticks;
+			this.messages = messages;
+			this.otherMessages = otherMessages;
+		}
+		@Override
+		void readEvents(Consumer<MidiEvent> eventSink) {
+			for( int i = 0; i < ticks.length; i++ ) {
+				int packed = messages[i];
+				int length = packed >>> 24;
+				MidiMessage message;
+				if( length == 0 ) {
+					message = otherMessages[packed];
+				} else {
+					byte[] b = new byte[length];
+					for( int j = 0; j < length; j++ ) b[j] = (byte)(packed >> (8 * j));
+					message = newShortMessage(b);
+				}
+				eventSink.accept(new MidiEvent(message, ticks[i]));
+			}
+		}
+	}
+}
@@ -0,0 +1,508 @@
+package camidion.chordhelper.music;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.SysexMessage;
+
+/**
+ * MIDIメッセージの内容を文字列にするフォーマッタ
+ * <p>呼び出し側の {@link StringBuilder} に直接追記するため、
+ * 大量のMIDIメッセージを続けて文字列化しても、途中で文字列を生成しません。
+ * 「Ch.1: 」のようなチャンネル名、ステータス名、音名、コントローラ名はあらかじめ生成したものを使い、
+ * メタメッセージのテキストは文字コードごとに使い回す {@link CharsetDecoder} で変換します。
+ * </p>
+ * <p>内部に状態を持つため、スレッドごとに別のインスタンスを使ってください。</p>
+ */
+public class MidiMessageFormatter {
+	private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+	/**
+	 * チャンネル名（"Ch.1: " ～ "Ch.16: "）
+	 */
+	private static final String[] CHANNEL_PREFIXES = new String[MIDISpec.MAX_CHANNELS];
+	/**
+	 * チャンネルメッセージのステータス名（"NoteON: " など、コマンドごと）
+	 */
+	private static final String[] COMMAND_PREFIXES = new String[8];
+	/**
+	 * MIDIノート番号ごとの音名
+	 */
+	private static final String[] NOTE_SYMBOLS = new String[128];
+	/**
+	 * コントローラ番号ごとのコントロールチェンジ名（未定義の場合null）
+	 */
+	private static final String[] CONTROLLER_NAMES = new String[128];
+	static {
+		for( int ch = 0; ch < CHANNEL_PREFIXES.length; ch++ )
+			CHANNEL_PREFIXES[ch] = "Ch." + (ch + 1) + ": ";
+		for( int i = 0; i < COMMAND_PREFIXES.length - 1; i++ )
+			COMMAND_PREFIXES[i] = MIDISpec.getStatusName(0x80 + (i << 4)) + ": ";
+		for( int n = 0; n < NOTE_SYMBOLS.length; n++ ) NOTE_SYMBOLS[n] = Note.noteNumberToSymbol(n);
+		for( int c = 0; c < CONTROLLER_NAMES.length; c++ ) CONTROLLER_NAMES[c] = MIDISpec.getControllerName(c);
+	}
+	/**
+	 * {@link #format(MidiMessage, Charset)} で使い回すバッファ
+	 */
+	private StringBuilder buffer = new StringBuilder(128);
+	/**
+	 * 文字コードごとのデコーダ
+	 */
+	private Map<Charset, CharsetDecoder> decoders = new HashMap<>();
+	/**
+	 * テキストのデコード先として使い回すバッファ
+	 */
+	private CharBuffer charBuffer = CharBuffer.allocate(64);
+	/**
+	 * MIDIメッセージの内容を文字列で返します。
+	 * @param msg MIDIメッセージ
+	 * @param charset MIDIメタメッセージに含まれるテキストデータの文字コード
+	 * @return MIDIメッセージの内容を表す文字列
+	 */
+	public String format(MidiMessage msg, Charset charset) {
+		buffer.setLength(0);
+		return append(buffer, msg, charset).toString();
+	}
+	/**
+	 * MIDIメッセージの内容を表す文字列を追記します。
+	 * @param sb 追記先
+	 * @param msg MIDIメッセージ
+	 * @param charset MIDIメタメッセージに含まれるテキストデータの文字コード
+	 * @return 追記先（引数と同じもの）
+	 */
+	public StringBuilder append(StringBuilder sb, MidiMessage msg, Charset charset) {
+		if( msg instanceof ShortMessage ) return appendShortMessage(sb, (ShortMessage)msg);
+		if( msg instanceof MetaMessage ) return appendMetaMessage(sb, (MetaMessage)msg, charset);
+		if( msg instanceof SysexMessage ) return appendSysexMessage(sb, (SysexMessage)msg);
+		sb.append('(');
+		appendHexBytes(sb, msg.getMessage(), 0, msg.getLength());
+		return sb.append(" )");
+	}
+	private StringBuilder appendShortMessage(StringBuilder sb, ShortMessage shortmsg) {
+		int status = shortmsg.getStatus();
+		int data1 = shortmsg.getData1();
+		int data2 = shortmsg.getData2();
+		if( ! MIDISpec.isChannelMessage(status) ) {
+			// System Message
+			String statusName = MIDISpec.getStatusName(status);
+			if( statusName == null ) sb.append("status=").append(status); else sb.append(statusName);
+			return sb.append(" (").append(data1).append(',').append(data2).append(')');
+		}
+		int channel = shortmsg.getChannel();
+		String channelPrefix = CHANNEL_PREFIXES[channel];
+		String commandPrefix = COMMAND_PREFIXES[(status >> 4) - 0x08];
+		switch( shortmsg.getCommand() ) {
+		case ShortMessage.NOTE_OFF:
+		case ShortMessage.NOTE_ON:
+			sb.append(channelPrefix).append(commandPrefix).append(data1).append(":[");
+			sb.append(MIDISpec.isRhythmPart(channel) ? MIDISpec.getPercussionName(data1) : NOTE_SYMBOLS[data1]);
+			return sb.append("] Velocity=").append(data2);
+		case ShortMessage.POLY_PRESSURE:
+			return sb.append(channelPrefix).append(commandPrefix)
+				.append("Note=").append(data1).append(" Pressure=").append(data2);
+		case ShortMessage.PROGRAM_CHANGE:
+			sb.append(channelPrefix).append(commandPrefix)
+				.append(data1).append(":[").append(MIDISpec.instrumentNames[data1]).append(']');
+			if( data2 != 0 ) sb.append(" data2=").append(data2);
+			return sb;
+		case ShortMessage.CHANNEL_PRESSURE:
+			sb.append(channelPrefix).append(commandPrefix).append(data1);
+			if( data2 != 0 ) sb.append(" data2=").append(data2);
+			return sb;
+		case ShortMessage.PITCH_BEND: {
+			int val = ((data1 & 0x7F) | ((data2 & 0x7F) << 7));
+			return sb.append(channelPrefix).append(commandPrefix)
+				.append((val-8192) * 100 / 8191).append("% (").append(val).append(')');
+		}
+		case ShortMessage.CONTROL_CHANGE: {
+			// Control / Mode message name
+			String ctrlName = CONTROLLER_NAMES[data1];
+			sb.append(channelPrefix).append(data1 < 0x78 ? "CtrlChg: " : "ModeMsg: ");
+			if( ctrlName == null ) return sb.append(" No.=").append(data1).append(" Value=").append(data2);
+			sb.append(ctrlName).append(' ');
+			//
+			// Controller's value
+			switch( data1 ) {
+			case 0x40: case 0x41: case 0x42: case 0x43: case 0x45:
+				return data2==0x3F ? sb.append("OFF") : data2==0x40 ? sb.append("ON") : sb.append(data2);
+			case 0x44: // Legato Footswitch
+				return data2==0x3F ? sb.append("Normal") : data2==0x40 ? sb.append("Legato") : sb.append(data2);
+			case 0x7A: // Local Control
+				return data2==0x00 ? sb.append("OFF") : data2==0x7F ? sb.append("ON") : sb.append(data2);
+			default:
+				return sb.append(data2);
+			}
+		}
+		default:
+			// Never reached here
+			return sb;
+		}
+	}
+	private StringBuilder appendMetaMessage(StringBuilder sb, MetaMessage metamsg, Charset charset) {
+		byte[] msgdata = metamsg.getData();
+		int msgtype = metamsg.getType();
+		sb.append("Meta: ");
+		String metaName = MIDISpec.getMetaName(msgtype);
+		if( metaName == null ) {
+			sb.append("Unknown MessageType=").append(msgtype).append(" Values=(");
+			return appendHexBytes(sb, msgdata, 0, msgdata.length).append(" )");
+		}
+		// Add the message type name
+		sb.append(metaName);
+		//
+		// Add the text data
+		if( MIDISpec.hasMetaMessageText(msgtype) ) {
+			sb.append(" [");
+			return appendText(sb, msgdata, 0, msgdata.length, charset).append(']');
+		}
+		// Add the numeric data
+		switch(msgtype) {
+		case 0x00: // Sequence Number (for MIDI Format 2）
+			if( msgdata.length == 2 ) {
+				sb.append(": ");
+				return appendHex(appendHex(sb, msgdata[0]), msgdata[1]);
+			}
+			return appendInvalidSize(sb, msgdata, 2);
+		case 0x20: // MIDI Ch.Prefix
+		case 0x21: // MIDI Output Port
+			if( msgdata.length == 1 ) return appendHex(sb.append(": "), msgdata[0]);
+			return appendInvalidSize(sb, msgdata, 1);
+		case 0x51: // Tempo
+			sb.append(": ").append(MIDISpec.byteArrayToQpmTempo(msgdata)).append("[QPM] (");
+			return appendHexBytes(sb, msgdata, 0, msgdata.length).append(" )");
+		case 0x54: // SMPTE Offset
+			if( msgdata.length == 5 ) {
+				return sb.append(": ")
+					.append(msgdata[0] & 0xFF).append(':')
+					.append(msgdata[1] & 0xFF).append(':')
+					.append(msgdata[2] & 0xFF).append('.')
+					.append(msgdata[3] & 0xFF).append('.')
+					.append(msgdata[4] & 0xFF);
+			}
+			return appendInvalidSize(sb, msgdata, 5);
+		case 0x58: // Time Signature
+			if( msgdata.length == 4 ) {
+				return sb.append(": ").append(msgdata[0]).append('/').append(1 << msgdata[1])
+					.append(", ").append(msgdata[2]).append("[clk/beat], ")
+					.append(msgdata[3]).append("[32nds/24clk]");
+			}
+			return appendInvalidSize(sb, msgdata, 4);
+		case 0x59: // Key Signature
+			if( msgdata.length == 2 ) {
+				Key key = new Key(msgdata);
+				return sb.append(": ").append(key.signatureDescription())
+					.append(" (").append(key.toStringIn(Note.Language.NAME)).append(')');
+			}
+			return appendInvalidSize(sb, msgdata, 2);
+		case 0x7F: // Sequencer Specific Meta Event
+			sb.append(" (");
+			return appendHexBytes(sb, msgdata, 0, msgdata.length).append(" )");
+		default:
+			return sb;
+		}
+	}
+	private StringBuilder appendInvalidSize(StringBuilder sb, byte[] msgdata, int expectedSize) {
+		sb.append(": Size not ").append(expectedSize).append(" byte : data=(");
+		return appendHexBytes(sb, msgdata, 0, msgdata.length).append(" )");
+	}
+	private StringBuilder appendSysexMessage(StringBuilder sb, SysexMessage sysexmsg) {
+		int status = sysexmsg.getStatus();
+		byte[] msgdata = sysexmsg.getData();
+		int dataBytePos = 1;
+		switch( status ) {
+		case SysexMessage.SYSTEM_EXCLUSIVE:
+			sb.append("SysEx: ");
+			break;
+		case SysexMessage.SPECIAL_SYSTEM_EXCLUSIVE:
+			sb.append("SysEx(Special): ");
+			break;
+		default:
+			sb.append("SysEx: Invalid (status=").append(status).append(") ");
+			break;
+		}
+		if( msgdata.length < 1 ) {
+			return sb.append(" Invalid data size: ").append(msgdata.length);
+		}
+		int manufacturerId = (int)(msgdata[0] & 0xFF);
+		int deviceId = (int)(msgdata[1] & 0xFF);
+		int modelId = (int)(msgdata[2] & 0xFF);
+		String manufacturerName = MIDISpec.SYSEX_MANUFACTURER_NAMES.get(manufacturerId);
+		if( manufacturerName == null ) {
+			appendHex(sb.append("[Manufacturer code "), msgdata[0]).append(']');
+		}
+		else sb.append(manufacturerName);
+		appendHex(sb.append(" (DevID=0x"), msgdata[1]).append(')');
+		switch( manufacturerId ) {
+		case 0x7E: // Non-Realtime Universal
+			dataBytePos++;
+			int sub_id_1 = modelId;
+			int sub_id_2 = (int)(msgdata[3] & 0xFF);
+			switch( sub_id_1 ) {
+			case 0x09: // General MIDI (GM)
+				switch( sub_id_2 ) {
+				case 0x01: return sb.append(" GM System ON");
+				case 0x02: return sb.append(" GM System OFF");
+				}
+				break;
+			default:
+				break;
+			}
+			break;
+			// case 0x7F: // Realtime Universal
+		case 0x41: // Roland
+			dataBytePos++;
+			switch( modelId ) {
+			case 0x42:
+				sb.append(" [GS]"); dataBytePos++;
+				if( msgdata[3]==0x12 ) {
+					sb.append("DT1:"); dataBytePos++;
+					switch( msgdata[4] ) {
+					case 0x00:
+						if( msgdata[5]==0x00 ) {
+							if( msgdata[6]==0x7F ) {
+								if( msgdata[7]==0x00 ) {
+									return sb.append(" [88] System Mode Set (Mode 1: Single Module)");
+								}
+								else if( msgdata[7]==0x01 ) {
+									return sb.append(" [88] System Mode Set (Mode 2: Double Module)");
+								}
+							}
+						}
+						else if( msgdata[5]==0x01 ) {
+							int port = (msgdata[7] & 0xFF);
+							appendHex(sb.append(" [88] Ch.Msg Rx Port: Block=0x"), msgdata[6]).append(", Port=");
+							return port==0 ? sb.append('A') : port==1 ? sb.append('B') : appendHex(sb.append("0x"), msgdata[7]);
+						}
+						break;
+					case 0x40:
+						if( msgdata[5]==0x00 ) {
+							switch( msgdata[6] ) {
+							case 0x00: sb.append(" Master Tune: "); dataBytePos += 3; break;
+							case 0x04: sb.append(" Master Volume: "); dataBytePos += 3; break;
+							case 0x05: sb.append(" Master Key Shift: "); dataBytePos += 3; break;
+							case 0x06: sb.append(" Master Pan: "); dataBytePos += 3; break;
+							case 0x7F:
+								switch( msgdata[7] ) {
+								case 0x00: return sb.append(" GS Reset");
+								case 0x7F: return sb.append(" Exit GS Mode");
+								}
+								break;
+							}
+						}
+						else if( msgdata[5]==0x01 ) {
+							switch( msgdata[6] ) {
+							// case 0x00: sb.append(""); break;
+							// case 0x10: sb.append(""); break;
+							case 0x30: sb.append(" Reverb Macro: "); dataBytePos += 3; break;
+							case 0x31: sb.append(" Reverb Character: "); dataBytePos += 3; break;
+							case 0x32: sb.append(" Reverb Pre-LPF: "); dataBytePos += 3; break;
+							case 0x33: sb.append(" Reverb Level: "); dataBytePos += 3; break;
+							case 0x34: sb.append(" Reverb Time: "); dataBytePos += 3; break;
+							case 0x35: sb.append(" Reverb Delay FB: "); dataBytePos += 3; break;
+							case 0x36: sb.append(" Reverb Chorus Level: "); dataBytePos += 3; break;
+							case 0x37: sb.append(" [88] Reverb Predelay Time: "); dataBytePos += 3; break;
+							case 0x38: sb.append(" Chorus Macro: "); dataBytePos += 3; break;
+							case 0x39: sb.append(" Chorus Pre-LPF: "); dataBytePos += 3; break;
+							case 0x3A: sb.append(" Chorus Level: "); dataBytePos += 3; break;
+							case 0x3B: sb.append(" Chorus FB: "); dataBytePos += 3; break;
+							case 0x3C: sb.append(" Chorus Delay: "); dataBytePos += 3; break;
+							case 0x3D: sb.append(" Chorus Rate: "); dataBytePos += 3; break;
+							case 0x3E: sb.append(" Chorus Depth: "); dataBytePos += 3; break;
+							case 0x3F: sb.append(" Chorus Send Level To Reverb: "); dataBytePos += 3; break;
+							case 0x40: sb.append(" [88] Chorus Send Level To Delay: "); dataBytePos += 3; break;
+							case 0x50: sb.append(" [88] Delay Macro: "); dataBytePos += 3; break;
+							case 0x51: sb.append(" [88] Delay Pre-LPF: "); dataBytePos += 3; break;
+							case 0x52: sb.append(" [88] Delay Time Center: "); dataBytePos += 3; break;
+							case 0x53: sb.append(" [88] Delay Time Ratio Left: "); dataBytePos += 3; break;
+							case 0x54: sb.append(" [88] Delay Time Ratio Right: "); dataBytePos += 3; break;
+							case 0x55: sb.append(" [88] Delay Level Center: "); dataBytePos += 3; break;
+							case 0x56: sb.append(" [88] Delay Level Left: "); dataBytePos += 3; break;
+							case 0x57: sb.append(" [88] Delay Level Right: "); dataBytePos += 3; break;
+							case 0x58: sb.append(" [88] Delay Level: "); dataBytePos += 3; break;
+							case 0x59: sb.append(" [88] Delay FB: "); dataBytePos += 3; break;
+							case 0x5A: sb.append(" [88] Delay Send Level To Reverb: "); dataBytePos += 3; break;
+							}
+						}
+						else if( msgdata[5]==0x02 ) {
+							switch( msgdata[6] ) {
+							case 0x00: sb.append(" [88] EQ Low Freq: "); dataBytePos += 3; break;
+							case 0x01: sb.append(" [88] EQ Low Gain: "); dataBytePos += 3; break;
+							case 0x02: sb.append(" [88] EQ High Freq: "); dataBytePos += 3; break;
+							case 0x03: sb.append(" [88] EQ High Gain: "); dataBytePos += 3; break;
+							}
+						}
+						else if( msgdata[5]==0x03 ) {
+							if( msgdata[6] == 0x00 ) {
+								sb.append(" [Pro] EFX Type: "); dataBytePos += 3;
+							}
+							else if( msgdata[6] >= 0x03 && msgdata[6] <= 0x16 ) {
+								sb.append(" [Pro] EFX Param ").append(msgdata[6]-2);
+								dataBytePos += 3;
+							}
+							else if( msgdata[6] == 0x17 ) {
+								sb.append(" [Pro] EFX Send Level To Reverb: "); dataBytePos += 3;
+							}
+							else if( msgdata[6] == 0x18 ) {
+								sb.append(" [Pro] EFX Send Level To Chorus: "); dataBytePos += 3;
+							}
+							else if( msgdata[6] == 0x19 ) {
+								sb.append(" [Pro] EFX Send Level To Delay: "); dataBytePos += 3;
+							}
+							else if( msgdata[6] == 0x1B ) {
+								sb.append(" [Pro] EFX Ctrl Src1: "); dataBytePos += 3;
+							}
+							else if( msgdata[6] == 0x1C ) {
+								sb.append(" [Pro] EFX Ctrl Depth1: "); dataBytePos += 3;
+							}
+							else if( msgdata[6] == 0x1D ) {
+								sb.append(" [Pro] EFX Ctrl Src2: "); dataBytePos += 3;
+							}
+							else if( msgdata[6] == 0x1E ) {
+								sb.append(" [Pro] EFX Ctrl Depth2: "); dataBytePos += 3;
+							}
+							else if( msgdata[6] == 0x1F ) {
+								sb.append(" [Pro] EFX Send EQ Switch: "); dataBytePos += 3;
+							}
+						}
+						else if( (msgdata[5] & 0xF0) == 0x10 ) {
+							int ch = (msgdata[5] & 0x0F);
+							if( ch <= 9 ) ch--; else if( ch == 0 ) ch = 9;
+							if( msgdata[6]==0x02 ) {
+								sb.append(" Rx Ch: Part=").append(ch+1);
+								appendHex(sb.append("(0x"), msgdata[5]).append(')');
+								return appendHex(sb.append(" Ch=0x"), msgdata[7]);
+							}
+							else if( msgdata[6]==0x15 ) {
+								sb.append(" Rhythm Part: Ch=").append(ch+1);
+								appendHex(sb.append("(0x"), msgdata[5]).append(") Map=");
+								switch( msgdata[7] ) {
+								case 0: return sb.append(" NormalPart");
+								case 1: return sb.append(" DrumMap1");
+								case 2: return sb.append(" DrumMap2");
+								default: return appendHex(sb.append("0x"), msgdata[7]);
+								}
+							}
+						}
+						else if( (msgdata[5] & 0xF0) == 0x40 ) {
+							int ch = (msgdata[5] & 0x0F);
+							if( ch <= 9 ) ch--; else if( ch == 0 ) ch = 9;
+							int dt = (msgdata[7] & 0xFF);
+							if( msgdata[6]==0x20 ) {
+								sb.append(" [88] EQ: Ch=").append(ch+1);
+								appendHex(sb.append("(0x"), msgdata[5]).append(") ");
+								if( dt==0 ) sb.append("OFF"); else if( dt==1 ) sb.append("ON"); else appendHex(sb.append("0x"), msgdata[7]);
+							}
+							else if( msgdata[6]==0x22 ) {
+								sb.append(" [Pro] Part EFX Assign: Ch=").append(ch+1);
+								appendHex(sb.append("(0x"), msgdata[5]).append(") ");
+								if( dt==0 ) sb.append("ByPass"); else if( dt==1 ) sb.append("EFX"); else appendHex(sb.append("0x"), msgdata[7]);
+							}
+						}
+						break;
+					} // [4]
+				} // [3] [DT1]
+				break; // [GS]
+			case 0x45:
+				sb.append(" [GS-LCD]"); dataBytePos++;
+				if( msgdata[3]==0x12 ) {
+					sb.append(" [DT1]"); dataBytePos++;
+					if( msgdata[4]==0x10 && msgdata[5]==0x00 && msgdata[6]==0x00 ) {
+						dataBytePos += 3;
+						sb.append(" Disp [");
+						appendText(sb, msgdata, dataBytePos, msgdata.length - dataBytePos - 2, Charset.defaultCharset());
+						sb.append(']');
+					}
+				} // [3] [DT1]
+				break;
+			case 0x14: sb.append(" [D-50]"); dataBytePos++; break;
+			case 0x16: sb.append(" [MT-32]"); dataBytePos++; break;
+			} // [2] model_id
+			break;
+		case 0x43: // Yamaha
+			if( (deviceId & 0xF0) == 0x10 && modelId == 0x4C ) {
+				sb.append(" [XG]Dev#=").append(deviceId & 0x0F);
+				dataBytePos += 2;
+				if( msgdata[3]==0 && msgdata[4]==0 && msgdata[5]==0x7E && msgdata[6]==0 ) {
+					return sb.append(" System ON");
+				}
+			}
+			else if( deviceId == 0x79 && modelId == 9 ) {
+				sb.append(" [eVocaloid]");
+				dataBytePos += 2;
+				if( msgdata[3]==0x11 && msgdata[4]==0x0A && msgdata[5]==0 ) {
+					sb.append(" pronounce[");
+					for( int i=6; i<msgdata.length; i++ ) {
+						int b = (msgdata[i] & 0xFF);
+						if( b == 0xF7 ) break;
+						sb.append(b >= MIDISpec.nsx39LyricElements.length ? "?" : MIDISpec.nsx39LyricElements[b]);
+					}
+					return sb.append(']');
+				}
+			}
+			break;
+		default:
+			break;
+		}
+		int i = Math.max(dataBytePos, msgdata.length - 1);
+		sb.append(" data=(");
+		if( dataBytePos < msgdata.length - 1 ) appendHexBytes(sb, msgdata, dataBytePos, msgdata.length - 1 - dataBytePos);
+		if( i < msgdata.length && (int)(msgdata[i] & 0xFF) != 0xF7 ) {
+			appendHex(sb.append(" [ Invalid EOX "), msgdata[i]).append(" ]");
+		}
+		return sb.append(" )");
+	}
+	/**
+	 * 1バイトを2桁の16進数で追記します。
+	 * @param sb 追記先
+	 * @param b バイト
+	 * @return 追記先（引数と同じもの）
+	 */
+	private static StringBuilder appendHex(StringBuilder sb, byte b) {
+		return sb.append(HEX_DIGITS[(b >> 4) & 0x0F]).append(HEX_DIGITS[b & 0x0F]);
+	}
+	/**
+	 * バイト列を、1バイトごとに空白で区切った16進数で追記します。
+	 * @param sb 追記先
+	 * @param b バイト列
+	 * @param offset 開始位置
+	 * @param length バイト数
+	 * @return 追記先（引数と同じもの）
+	 */
+	private static StringBuilder appendHexBytes(StringBuilder sb, byte[] b, int offset, int length) {
+		for( int i = offset, end = offset + length; i < end; i++ ) appendHex(sb.append(' '), b[i]);
+		return sb;
+	}
+	/**
+	 * バイト列を指定の文字コードでデコードしたテキストを追記します。
+	 * @param sb 追記先
+	 * @param b バイト列
+	 * @param offset 開始位置
+	 * @param length バイト数
+	 * @param charset 文字コード
+	 * @return 追記先（引数と同じもの）
+	 */
+	private StringBuilder appendText(StringBuilder sb, byte[] b, int offset, int length, Charset charset) {
+		if( length <= 0 ) return sb;
+		CharsetDecoder decoder = decoders.get(charset);
+		if( decoder == null ) {
+			decoder = charset.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+			decoders.put(charset, decoder);
+		}
+		int capacity = (int)Math.ceil(length * (double)decoder.maxCharsPerByte());
+		if( charBuffer.capacity() < capacity ) charBuffer = CharBuffer.allocate(capacity);
+		charBuffer.clear();
+		decoder.reset();
+		decoder.decode(ByteBuffer.wrap(b, offset, length), charBuffer, true);
+		decoder.flush(charBuffer);
+		return sb.append(charBuffer.array(), 0, charBuffer.position());
+	}
+}
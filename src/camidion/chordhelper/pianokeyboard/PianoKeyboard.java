@@ -7,6 +7,7 @@ import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Point;
 import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
 import java.awt.event.ComponentAdapter;
 import java.awt.event.ComponentEvent;
 import java.awt.event.FocusEvent;
@@ -18,14 +19,16 @@ import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
 import java.util.Arrays;
-import java.util.LinkedList;
 import java.util.Objects;
 import java.util.Vector;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.IntPredicate;
 
 import javax.sound.midi.MidiChannel;
 import javax.swing.BoundedRangeModel;
 import javax.swing.DefaultBoundedRangeModel;
 import javax.swing.JComponent;
+import javax.swing.Timer;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ListDataEvent;
 import javax.swing.event.ListDataListener;
@@ -34,9 +37,10 @@ import camidion.chordhelper.ChordDisplayLabel;
 import camidion.chordhelper.ChordHelperApplet;
 import camidion.chordhelper.anogakki.AnoGakkiPane;
 import camidion.chordhelper.chordmatrix.ChordMatrix;
-import camidion.chordhelper.mididevice.AbstractMidiChannelStatus;
 import camidion.chordhelper.mididevice.AbstractMidiStatus;
 import camidion.chordhelper.mididevice.AbstractVirtualMidiDevice;
+import camidion.chordhelper.mididevice.MidiChannelStatusListener;
+import camidion.chordhelper.mididevice.MidiOutputQueue;
 import camidion.chordhelper.mididevice.VirtualMidiDevice;
 import camidion.chordhelper.midieditor.DefaultMidiChannelComboBoxModel;
 import camidion.chordhelper.midieditor.MidiChannelButtonSelecter;
@@ -82,6 +86,55 @@ public class PianoKeyboard extends JComponent {
 	private PianoKey[] blackKeys;
 	/** 白鍵 */
 	private PianoKey[] whiteKeys;
+	/** 鍵を配置したときのコンポーネントのサイズ */
+	private Dimension layoutSize;
+	/** 鍵を配置したときのオクターブ幅 */
+	private int layoutOctaves;
+	/**
+	 * あらかじめ描いておいた鍵の画像
+	 * <p>同じ大きさ、同じ色、同じ押下状態の鍵は見た目がまったく同じなので、
+	 * 一度だけ画像に描いておき、以降は貼り付けるだけで済ませます。
+	 * </p>
+	 */
+	private static class KeySprite {
+		private final int width;
+		private final int height;
+		private final Color color;
+		private final boolean isPressed;
+		private final BufferedImage image;
+		private KeySprite(int width, int height, Color color, boolean isPressed) {
+			this.width = width;
+			this.height = height;
+			this.color = color;
+			this.isPressed = isPressed;
+			image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+			Graphics2D g2 = image.createGraphics();
+			g2.setColor(color);
+			g2.fill3DRect(0, 0, width, height, !isPressed);
+			g2.dispose();
+		}
+		private boolean matches(int width, int height, Color color, boolean isPressed) {
+			return this.width == width && this.height == height
+				&& this.isPressed == isPressed && this.color.equals(color);
+		}
+	}
+	/**
+	 * 鍵の画像（添字は、黒鍵なら 2、押下状態なら 1 を足した値）
+	 * <p>描画はイベントディスパッチスレッドだけで行うため、同期はしません。</p>
+	 */
+	private final KeySprite[] keySprites = new KeySprite[4];
+	/**
+	 * 指定の大きさ、色、押下状態の鍵の画像を返します。
+	 * 前回と条件が異なる場合（サイズ変更、ダークモード切り替えなど）は描き直します。
+	 */
+	private BufferedImage getKeyImage(boolean isBlack, int width, int height, Color color, boolean isPressed) {
+		int i = (isBlack ? 2 : 0) + (isPressed ? 1 : 0);
+		KeySprite sprite = keySprites[i];
+		if( sprite == null || ! sprite.matches(width, height, color, isPressed) ) {
+			keySprites[i] = sprite = new KeySprite(width, height, color, isPressed);
+		}
+		return sprite.image;
+	}
 	/**
 	 * オクターブ範囲モデル
 	 */
@@ -101,15 +154,14 @@ public class PianoKeyboard extends JComponent {
 		midiChComboboxModel = new DefaultMidiChannelComboBoxModel();
 
 	/**
-	 * ノートのリスト。配列の要素として使えるようクラス名を割り当てます。
+	 * 選択マーク●がついている鍵のノート番号（選択された順）
+	 * <p>変更時は配列ごと置き換えるため、読み出し側は同期せずに参照できます。</p>
 	 */
-	private static class NoteList extends LinkedList<Integer> {
-		// 何もすることはない
-	}
+	private volatile int[] selectedKeyNotes = new int[0];
 	/**
-	 * 選択マーク●がついている鍵を表すノートリスト
+	 * {@link #selectedKeyNotes} を置き換えるときのロック
 	 */
-	private NoteList selectedKeyNoteList = new NoteList();
+	private final Object selectedKeyNotesLock = new Object();
 	/**
 	 * 調号（スケール判定用）
 	 */
@@ -135,52 +187,116 @@ public class PianoKeyboard extends JComponent {
 	 */
 	public MidiChannelButtonSelecter midiChannelButtonSelecter;
 
-	private NoteList[] channelNotes = new NoteList[MIDISpec.MAX_CHANNELS];
-	private int[] pitchBendValues = new int[MIDISpec.MAX_CHANNELS];
-	private int[] pitchBendSensitivities = new int[MIDISpec.MAX_CHANNELS];
-	private int[] modulations = new int[MIDISpec.MAX_CHANNELS];
-
-	private class MidiChannelStatus extends AbstractMidiChannelStatus {
-		public MidiChannelStatus(int channel) {
-			super(channel);
-			channelNotes[channel] = new NoteList();
-			pitchBendSensitivities[channel] = 2; // Default is wholetone = 2 semitones
-		}
-		@Override
-		public void fireRpnChanged() {
-			if( dataFor != DATA_FOR_RPN ) return;
-
-			// RPN (MSB) - Accept 0x00 only
-			if( controllerValues[0x65] != 0x00 ) return;
-
-			// RPN (LSB)
-			switch( controllerValues[0x64] ) {
-			case 0x00: // Pitch Bend Sensitivity
-				if( controllerValues[0x06] == 0 ) return;
-				pitchBendSensitivities[channel] = controllerValues[0x06];
-				break;
-			}
-		}
-		@Override
-		public void noteOff(int noteNumber, int velocity) {
-			noteOff(noteNumber);
+	/**
+	 * チャンネルごとのノートオン状態を表すビット列
+	 * <p>１チャンネルあたり２個の long（ノート番号 0～63 と 64～127）で、
+	 * ノートオン中の鍵のビットを立てます。
+	 * MIDI受信スレッドとイベントディスパッチスレッドの両方から更新されるため、
+	 * ビットの変更は compare-and-set で行います。
+	 * </p>
+	 */
+	private final AtomicLongArray channelNoteBits = new AtomicLongArray(MIDISpec.MAX_CHANNELS * 2);
+	/**
+	 * 受信したノートオン／オフから求めた、チャンネルごとの発音中のノートを表すビット列（形式は {@link #channelNoteBits} と同じ）
+	 * <p>鍵盤の表示は、選択マークがある間はオールノートオフを受けても押された状態のまま残すため、
+	 * コードボタンマトリクスへは表示用のビット列ではなくこちらを反映します。
+	 * </p>
+	 */
+	private final AtomicLongArray soundingNoteBits = new AtomicLongArray(MIDISpec.MAX_CHANNELS * 2);
+	/**
+	 * チャンネルごとの最後にノートオンされたノート番号
+	 */
+	private final int[] lastNoteOns = new int[MIDISpec.MAX_CHANNELS];
+	{
+		Arrays.fill(lastNoteOns, -1);
+	}
+	/**
+	 * 指定のノートのビットを立てた値（またはクリアした値）にビット列を書き換えます。
+	 * @return 書き換えによってビットが変化したらtrue
+	 */
+	private boolean setNoteBit(int ch, int noteNumber, boolean isNoteOn) {
+		return setNoteBit(channelNoteBits, ch, noteNumber, isNoteOn);
+	}
+	private static boolean setNoteBit(AtomicLongArray noteBits, int ch, int noteNumber, boolean isNoteOn) {
+		int i = ch * 2 + (noteNumber >> 6);
+		long mask = 1L << (noteNumber & 0x3F);
+		long bits, newBits;
+		do {
+			bits = noteBits.get(i);
+			newBits = isNoteOn ? bits | mask : bits & ~mask;
+			if( bits == newBits ) return false;
+		} while( ! noteBits.compareAndSet(i, bits, newBits) );
+		return true;
+	}
+	/**
+	 * 指定のチャンネルで、指定のノートがノートオン状態かどうか調べます。
+	 * @param ch MIDIチャンネルインデックス
+	 * @param noteNumber ノート番号
+	 * @return ノートオン状態ならtrue
+	 */
+	private boolean isNoteOn(int ch, int noteNumber) {
+		return (channelNoteBits.get(ch * 2 + (noteNumber >> 6)) & (1L << (noteNumber & 0x3F))) != 0;
+	}
+	/**
+	 * リズムパート以外の全チャンネルで発音中のノートの和集合を、コードボタンマトリクスに反映します。
+	 */
+	private void updateChordMatrix() {
+		if( chordMatrix == null ) return;
+		long low = 0, high = 0;
+		for( int ch = 0; ch < MIDISpec.MAX_CHANNELS; ch++ ) {
+			if( midiStatus.isRhythmPart(ch) ) continue;
+			low |= soundingNoteBits.get(ch * 2);
+			high |= soundingNoteBits.get(ch * 2 + 1);
 		}
+		chordMatrix.setNotes(low, high);
+	}
+	/**
+	 * ビット列が表すノート番号を、低い順に調べます。
+	 * @param low ノート番号 0～63 のビット列
+	 * @param high ノート番号 64～127 のビット列
+	 * @param predicate ノート番号ごとに呼び出す処理（true を返すとそこで打ち切る）
+	 * @return 打ち切られたらtrue
+	 */
+	private static boolean anyNoteMatch(long low, long high, IntPredicate predicate) {
+		for( long bits = low; bits != 0; bits &= bits - 1 )
+			if( predicate.test(Long.numberOfTrailingZeros(bits)) ) return true;
+		for( long bits = high; bits != 0; bits &= bits - 1 )
+			if( predicate.test(64 + Long.numberOfTrailingZeros(bits)) ) return true;
+		return false;
+	}
+	/**
+	 * 指定のチャンネルでノートオン状態のノート番号を、低い順に調べます。
+	 * @param ch MIDIチャンネルインデックス
+	 * @param predicate ノート番号ごとに呼び出す処理（true を返すとそこで打ち切る）
+	 * @return 打ち切られたらtrue
+	 */
+	private boolean anyNoteOnMatch(int ch, IntPredicate predicate) {
+		return anyNoteMatch(channelNoteBits.get(ch * 2), channelNoteBits.get(ch * 2 + 1), predicate);
+	}
+	/**
+	 * 受信したMIDIチャンネルの状態
+	 */
+	private AbstractMidiStatus midiStatus = new AbstractMidiStatus() {};
+	/**
+	 * 受信したMIDIチャンネルの状態変化を鍵盤などに反映するリスナー
+	 */
+	private class MidiChannelStatusHandler implements MidiChannelStatusListener {
 		@Override
-		public void noteOff(int noteNumber) {
+		public void noteOff(int channel, int noteNumber, int velocity) {
 			keyOff( channel, noteNumber );
-			if(chordMatrix != null && ! isRhythmPart()) chordMatrix.note(false, noteNumber);
-			if(midiChannelButtonSelecter != null) midiChannelButtonSelecter.repaint();
+			if( setNoteBit(soundingNoteBits, channel, noteNumber, false) && ! midiStatus.isRhythmPart(channel) ) updateChordMatrix();
+			repaintMidiChannelButtonSelecter();
 		}
 		@Override
-		public void noteOn(int noteNumber, int velocity) {
-			if( velocity <= 0 ) { noteOff(noteNumber); return; }
+		public void noteOn(int channel, int noteNumber, int velocity) {
 			keyOn( channel, noteNumber );
+			boolean isRhythmPart = midiStatus.isRhythmPart(channel);
 			if( midiChComboboxModel.getSelectedChannel() == channel ) {
 				if( chordDisplay != null ) {
 					if( chordMatrix != null && chordMatrix.isPlaying() )
 						chordDisplay.clear();
 					else
-						chordDisplay.setNote(noteNumber, isRhythmPart());
+						chordDisplay.setNote(noteNumber, isRhythmPart);
 				}
 				if( anoGakkiPane != null ) {
 					PianoKey pienoKey = getPianoKeyOfTheNote(noteNumber);
@@ -188,46 +304,122 @@ public class PianoKeyboard extends JComponent {
 						anoGakkiPane.start(PianoKeyboard.this, pienoKey.indicator);
 				}
 			}
-			if(chordMatrix != null && ! isRhythmPart()) chordMatrix.note(true, noteNumber);
-			if(midiChannelButtonSelecter != null) midiChannelButtonSelecter.repaint();
+			if( setNoteBit(soundingNoteBits, channel, noteNumber, true) && ! isRhythmPart ) updateChordMatrix();
+			repaintMidiChannelButtonSelecter();
 		}
 		@Override
-		public void allNotesOff() {
+		public void allNotesOff(int channel) {
 			allKeysOff( channel, -1 );
-			if( chordMatrix != null ) chordMatrix.clearIndicators();
+			soundingNoteBits.set(channel * 2, 0);
+			soundingNoteBits.set(channel * 2 + 1, 0);
+			updateChordMatrix();
 		}
 		@Override
-		public void setPitchBend(int bend) {
-			super.setPitchBend(bend);
-			pitchBendValues[channel] = bend;
-			repaintNotes();
-		}
+		public void pitchBendChanged(int channel, int pitchBend) { repaintNotes(channel); }
 		@Override
-		public void resetAllControllers() {
-			super.resetAllControllers();
-			//
-			// See also: Response to Reset All Controllers
-			//     http://www.midi.org/about-midi/rp15.shtml
-			//
-			pitchBendValues[channel] = MIDISpec.PITCH_BEND_NONE;
-			modulations[channel] = 0;
-			repaintNotes();
-		}
+		public void controllersReset(int channel) { repaintNotes(channel); }
 		@Override
-		public void controlChange(int controller, int value) {
-			super.controlChange(controller,value);
+		public void controlChange(int channel, int controller, int value) {
 			switch( controller ) {
 			case 0x01: // Moduration (MSB)
-				modulations[channel] = value;
-				repaintNotes();
+				repaintNotes(channel);
 				break;
 			}
 		}
-		private void repaintNotes() {
+		private void repaintNotes(int channel) {
 			if(midiChComboboxModel.getSelectedChannel() != channel) return;
-			if(channelNotes[channel] == null ) return;
-			if(channelNotes[channel].size() > 0 || selectedKeyNoteList.size() > 0) repaint();
+			if(countKeyOn(channel) > 0 || selectedKeyNotes.length > 0) repaintIndicators();
+		}
+	}
+	/**
+	 * 再描画の最大フレームレート
+	 */
+	private static final int MAX_FRAMES_PER_SECOND = 60;
+	/**
+	 * 再描画が必要な範囲（ない場合null）
+	 */
+	private Rectangle dirtyRegion = null;
+	/**
+	 * MIDIチャンネル選択ボタンの再描画が必要ならtrue
+	 */
+	private boolean isMidiChannelButtonSelecterDirty = false;
+	/**
+	 * {@link #dirtyRegion} と {@link #isMidiChannelButtonSelecterDirty} を保護するロック
+	 */
+	private final Object dirtyRegionLock = new Object();
+	/**
+	 * 再描画が必要な範囲をまとめて再描画するタイマー
+	 * <p>MIDI受信のたびに再描画を要求するのではなく、
+	 * 最大フレームレートの間隔でたまった範囲だけを再描画します。</p>
+	 */
+	private Timer repaintTimer = new Timer(1000 / MAX_FRAMES_PER_SECOND, e->{
+		Rectangle region;
+		boolean isSelecterDirty;
+		synchronized(dirtyRegionLock) {
+			region = dirtyRegion;
+			isSelecterDirty = isMidiChannelButtonSelecterDirty;
+			dirtyRegion = null;
+			isMidiChannelButtonSelecterDirty = false;
+		}
+		if( region != null ) repaint(region);
+		if( isSelecterDirty && midiChannelButtonSelecter != null ) midiChannelButtonSelecter.repaint();
+	}) {{ setRepeats(false); }};
+	/**
+	 * 指定の範囲を、次のフレームで再描画するよう要求します。
+	 * <p>どのスレッドから呼び出してもかまいません。</p>
+	 * @param region 再描画する範囲
+	 */
+	private void addDirtyRegion(Rectangle region) {
+		synchronized(dirtyRegionLock) {
+			if( dirtyRegion == null ) dirtyRegion = new Rectangle(region);
+			else dirtyRegion.add(region);
+		}
+		if( ! repaintTimer.isRunning() ) repaintTimer.start();
+	}
+	/**
+	 * MIDIチャンネル選択ボタンを、次のフレームで再描画するよう要求します。
+	 */
+	private void repaintMidiChannelButtonSelecter() {
+		if( midiChannelButtonSelecter == null ) return;
+		synchronized(dirtyRegionLock) {
+			isMidiChannelButtonSelecterDirty = true;
 		}
+		if( ! repaintTimer.isRunning() ) repaintTimer.start();
+	}
+	/**
+	 * 指定のノートの鍵と●の範囲を、次のフレームで再描画するよう要求します。
+	 * @param noteNumber ノート番号
+	 */
+	private void repaintNote(int noteNumber) {
+		if( keys == null ) return;
+		PianoKey k = getPianoKeyOfTheNote(noteNumber);
+		if( k == null ) return;
+		Rectangle region = k.getIndicatorBounds(midiStatus.getPitchBend(midiChComboboxModel.getSelectedChannel()));
+		region.add(k);
+		addDirtyRegion(region);
+	}
+	/**
+	 * 前回描いた●の範囲
+	 */
+	private volatile Rectangle paintedIndicatorRegion = null;
+	/**
+	 * ピッチベンドやモジュレーションの変化に合わせて、
+	 * 前回描いた●と、これから描く●の範囲を、次のフレームで再描画するよう要求します。
+	 */
+	private void repaintIndicators() {
+		if( keys == null ) return;
+		Rectangle paintedRegion = paintedIndicatorRegion;
+		Rectangle region = paintedRegion == null ? new Rectangle() : new Rectangle(paintedRegion);
+		int ch = midiChComboboxModel.getSelectedChannel();
+		int pitchBend = midiStatus.getPitchBend(ch);
+		IntPredicate addIndicatorBounds = n->{
+			PianoKey k = getPianoKeyOfTheNote(n);
+			if( k != null ) region.add(k.getIndicatorBounds(pitchBend));
+			return false;
+		};
+		for( int n : selectedKeyNotes ) addIndicatorBounds.test(n);
+		anyNoteOnMatch(ch, addIndicatorBounds);
+		if( ! region.isEmpty() ) addDirtyRegion(region);
 	}
 	/**
 	 * この鍵盤の仮想MIDIデバイスです。
@@ -251,14 +443,24 @@ public class PianoKeyboard extends JComponent {
 		{
 			info = new MyInfo();
 			// 受信してMIDIチャンネルの状態を管理する
-			setReceiver(new AbstractMidiStatus() {
-				{
-					for( int i=0; i<MIDISpec.MAX_CHANNELS; i++ )
-						add(new MidiChannelStatus(i));
-				}
-			});
+			midiStatus.addMidiChannelStatusListener(new MidiChannelStatusHandler());
+			setReceiver(midiStatus);
+		}
+		@Override
+		public void open() {
+			super.open();
+			// ピッチベンドやモジュレーションのドラッグで次々に来る値を、送出スレッドでまとめて送る
+			setOutputQueue(OUTPUT_QUEUE_CAPACITY, MidiOutputQueue.OverflowPolicy.DROP_OLDEST_CONTROLLER, COALESCING_WINDOW_MICROS);
 		}
 	};
+	/**
+	 * 仮想MIDIデバイスの送信待ちキューの容量
+	 */
+	private static final int OUTPUT_QUEUE_CAPACITY = 256;
+	/**
+	 * 仮想MIDIデバイスの送信待ちキューで、コントローラ値をまとめる時間幅（マイクロ秒）
+	 */
+	private static final long COALESCING_WINDOW_MICROS = 10000L;
 
 	/**
 	 * 現在選択中のMIDIチャンネルを返します。
@@ -306,8 +508,8 @@ public class PianoKeyboard extends JComponent {
 			return (outOfBounds = (n > MIDISpec.MAX_NOTE_NO)) ? -1 : n;
 		}
 		boolean paintKey(Graphics2D g2, boolean isPressed) {
-			if(outOfBounds) return false;
-			g2.fill3DRect(x, y, width, height, !isPressed);
+			if(outOfBounds || width <= 0 || height <= 0) return false;
+			g2.drawImage(getKeyImage(isBlack, width, height, g2.getColor(), isPressed), x, y, null);
 			return true;
 		}
 		boolean paintKeyBinding(Graphics2D g2) {
@@ -325,25 +527,34 @@ public class PianoKeyboard extends JComponent {
 				);
 			}
 			else {
-				int current_channel = midiChComboboxModel.getSelectedChannel();
-				int sens = pitchBendSensitivities[current_channel];
-				if( sens == 0 ) {
-					sens = 2;
-				}
-				int x_offset = (
-					7 * whiteKeySize.width * sens * (pitchBendValue - MIDISpec.PITCH_BEND_NONE)
-				) / (12 * 8192);
-				int additional_height = indicator.height * modulations[current_channel] / 256 ;
-				int y_offset = additional_height / 2 ;
-				g2.fillOval(
-					indicator.x + ( x_offset < 0 ? x_offset : 0 ),
-					indicator.y - y_offset,
-					indicator.width + ( x_offset < 0 ? -x_offset : x_offset ),
-					indicator.height + additional_height
-				);
+				Rectangle r = getIndicatorBounds(pitchBendValue);
+				g2.fillOval(r.x, r.y, r.width, r.height);
 			}
 			return true;
 		}
+		/**
+		 * ピッチベンドやモジュレーションに応じて引き伸ばした●の範囲を返します。
+		 * @param pitchBendValue ピッチベンド値
+		 * @return ●を描く範囲
+		 */
+		Rectangle getIndicatorBounds(int pitchBendValue) {
+			int current_channel = midiChComboboxModel.getSelectedChannel();
+			int sens = midiStatus.getPitchBendSensitivity(current_channel);
+			if( sens == 0 ) {
+				sens = 2;
+			}
+			int x_offset = (
+				7 * whiteKeySize.width * sens * (pitchBendValue - MIDISpec.PITCH_BEND_NONE)
+			) / (12 * 8192);
+			int additional_height = indicator.height * midiStatus.getController(current_channel, 0x01) / 256 ;
+			int y_offset = additional_height / 2 ;
+			return new Rectangle(
+				indicator.x + ( x_offset < 0 ? x_offset : 0 ),
+				indicator.y - y_offset,
+				indicator.width + ( x_offset < 0 ? -x_offset : x_offset ),
+				indicator.height + additional_height
+			);
+		}
 		boolean paintIndicator(Graphics2D g2, boolean isSmall) {
 			return paintIndicator(g2, isSmall, 0);
 		}
@@ -361,17 +572,23 @@ public class PianoKeyboard extends JComponent {
 			int n = getNoteAt(e.getPoint());
 			if( n < 0 ) return;
 			int c = midiChComboboxModel.getSelectedChannel();
-			if( channelNotes[c].contains(n) ) return;
+			if( isNoteOn(c,n) ) return;
 			chord = null;
 			pressed(c,n,e);
+			mousePressedNote = n;
 			requestFocusInWindow();
 			repaint();
 		}
+		/**
+		 * マウスで押している鍵のノート番号（押していないとき -1）
+		 */
+		private int mousePressedNote = -1;
 		@Override
 		public void mouseReleased(MouseEvent e) {
 			int c = midiChComboboxModel.getSelectedChannel();
-			NoteList nl = channelNotes[c];
-			if( ! nl.isEmpty() ) released(c, nl.poll(), e);
+			int n = mousePressedNote;
+			mousePressedNote = -1;
+			if( n >= 0 && isNoteOn(c,n) ) released(c,n,e);
 		}
 		@Override
 		public void mouseEntered(MouseEvent e) { }
@@ -382,10 +599,11 @@ public class PianoKeyboard extends JComponent {
 			int n = getNoteAt(e.getPoint());
 			if( n < 0 ) return;
 			int c = midiChComboboxModel.getSelectedChannel();
-			NoteList nl = channelNotes[c];
-			if( nl.contains(n) ) return;
-			if( ! nl.isEmpty() ) released(c, nl.poll(), e);
+			if( isNoteOn(c,n) ) return;
+			int pn = mousePressedNote;
+			if( pn >= 0 && isNoteOn(c,pn) ) released(c,pn,e);
 			pressed(c,n,e);
+			mousePressedNote = n;
 		}
 		@Override
 		public void mouseMoved(MouseEvent e) { }
@@ -404,7 +622,7 @@ public class PianoKeyboard extends JComponent {
 			}
 			int n = getNote(e); if( n < 0 ) return;
 			int c = midiChComboboxModel.getSelectedChannel();
-			if( channelNotes[c].contains(n) ) return;
+			if( isNoteOn(c,n) ) return;
 			chord = null;
 			pressed(c,n,e);
 		}
@@ -412,7 +630,7 @@ public class PianoKeyboard extends JComponent {
 		public void keyReleased(KeyEvent e) {
 			int c = midiChComboboxModel.getSelectedChannel();
 			int n = getNote(e);
-			if( n < 0 || ! channelNotes[c].contains(n) ) return;
+			if( n < 0 || ! isNoteOn(c,n) ) return;
 			released(c,n,e);
 		}
 		@Override
@@ -457,7 +675,7 @@ public class PianoKeyboard extends JComponent {
 		midiChComboboxModel.addListDataListener(new ListDataListener() {
 			@Override
 			public void contentsChanged(ListDataEvent e) {
-				channelNotes[midiChComboboxModel.getSelectedChannel()].stream().anyMatch(n->autoScroll(n));
+				anyNoteOnMatch(midiChComboboxModel.getSelectedChannel(), n->autoScroll(n));
 				repaint();
 			}
 			@Override
@@ -468,54 +686,75 @@ public class PianoKeyboard extends JComponent {
 	}
 	public void paint(Graphics g) {
 		if(keys == null) return;
-		// 選択マーク●をつける鍵と、ノートオン状態の鍵をリストアップ
-		NoteList notesArray[] = {
-			(NoteList)selectedKeyNoteList.clone(),
-			(NoteList)channelNotes[midiChComboboxModel.getSelectedChannel()].clone()
-		};
-		// 鍵盤をクリアし、順次塗り重ねていく
+		// 選択マーク●をつける鍵と、ノートオン状態の鍵のビット列を取得
+		int ch = midiChComboboxModel.getSelectedChannel();
+		int[] selectedNotes = selectedKeyNotes;
+		long noteOnLow = channelNoteBits.get(ch * 2);
+		long noteOnHigh = channelNoteBits.get(ch * 2 + 1);
+		// 鍵盤をクリアし、順次塗り重ねていく（再描画範囲にかかる鍵だけ）
 		Graphics2D g2 = (Graphics2D) g;
 		Dimension d = getSize();
+		Rectangle clip = g2.getClipBounds();
+		if( clip == null ) clip = new Rectangle(d);
+		Rectangle c = clip;
 		g2.setBackground(getBackground());
-		g2.clearRect(0, 0, d.width, d.height);
+		g2.clearRect(c.x, c.y, c.width, c.height);
 		// 白鍵
+		// （白鍵は等間隔に並んでいるので、再描画範囲にかかる鍵の添字を計算で求める）
 		g2.setColor(isDark ? Color.gray : Color.white);
-		Arrays.stream(whiteKeys).forEach(k -> k.paintKey(g2,false));
+		int whiteKeyWidth = Math.max(1, whiteKeySize.width);
+		int fromWhiteKey = Math.max(0, c.x / whiteKeyWidth - 1);
+		int toWhiteKey = Math.min(whiteKeys.length - 1, (c.x + c.width) / whiteKeyWidth + 1);
+		for( int i = fromWhiteKey; i <= toWhiteKey; i++ ) {
+			PianoKey k = whiteKeys[i];
+			if( k.intersects(c) ) k.paintKey(g2,false);
+		}
 		// ノートオン状態の白鍵
-		notesArray[1].stream().map(n -> getPianoKeyOfTheNote(n))
-			.filter(k -> Objects.nonNull(k) && ! k.isBlack)
-			.forEach(k -> k.paintKey(g2,true));
+		anyNoteMatch(noteOnLow, noteOnHigh, n->{
+			PianoKey k = getPianoKeyOfTheNote(n);
+			if( Objects.nonNull(k) && ! k.isBlack && k.intersects(c) ) k.paintKey(g2,true);
+			return false;
+		});
 		// 黒鍵
 		g2.setColor(getForeground());
-		Arrays.stream(blackKeys).forEach(k -> k.paintKey(g2,false));
+		for( PianoKey k : blackKeys ) if( k.intersects(c) ) k.paintKey(g2,false);
 		// ノートオン状態の黒鍵
 		g2.setColor(Color.gray);
-		notesArray[1].stream().map(n -> getPianoKeyOfTheNote(n))
-			.filter(k -> Objects.nonNull(k) && k.isBlack)
-			.forEach(k -> k.paintKey(g2,true));
+		anyNoteMatch(noteOnLow, noteOnHigh, n->{
+			PianoKey k = getPianoKeyOfTheNote(n);
+			if( Objects.nonNull(k) && k.isBlack && k.intersects(c) ) k.paintKey(g2,true);
+			return false;
+		});
 		// インジケータ
-		Arrays.stream(notesArray).filter(Objects::nonNull).forEach(nl->
-			nl.stream().filter(Objects::nonNull).forEach(n->{
-				PianoKey k = getPianoKeyOfTheNote(n);
-				if( Objects.nonNull(k) ) {
-					boolean isOnScale = (keySignature == null || keySignature.isOnScale(n));
-					int chordIndex;
-					if( Objects.nonNull(chord) && (chordIndex = chord.indexOf(n)) >=0 ) {
-						// コードを鳴らした直後は、その構成音に色を付ける
-						g2.setColor(Chord.NOTE_INDEX_COLORS[chordIndex]);
-					} else {
-						g2.setColor(isDark && isOnScale ? Color.pink : DARK_PINK);
-					}
-					// ●を表示（ピッチベンドしていたら引き伸ばす）
-					k.paintIndicator(g2, false, pitchBendValues[midiChComboboxModel.getSelectedChannel()]);
-					if( ! isOnScale ) {
-						// スケールを外れた音は白抜き
-						g2.setColor(Color.white);
-						k.paintIndicator(g2, true);
-					}
+		int pitchBend = midiStatus.getPitchBend(ch);
+		Rectangle indicatorRegion = new Rectangle();
+		IntPredicate paintIndicator = n->{
+			PianoKey k = getPianoKeyOfTheNote(n);
+			if( Objects.isNull(k) ) return false;
+			Rectangle indicatorBounds = k.getIndicatorBounds(pitchBend);
+			indicatorRegion.add(indicatorBounds);
+			if( indicatorBounds.intersects(c) ) {
+				boolean isOnScale = (keySignature == null || keySignature.isOnScale(n));
+				int chordIndex;
+				if( Objects.nonNull(chord) && (chordIndex = chord.indexOf(n)) >=0 ) {
+					// コードを鳴らした直後は、その構成音に色を付ける
+					g2.setColor(Chord.NOTE_INDEX_COLORS[chordIndex]);
+				} else {
+					g2.setColor(isDark && isOnScale ? Color.pink : DARK_PINK);
 				}
-			})
-		);
+				// ●を表示（ピッチベンドしていたら引き伸ばす）
+				k.paintIndicator(g2, false, pitchBend);
+				if( ! isOnScale ) {
+					// スケールを外れた音は白抜き
+					g2.setColor(Color.white);
+					k.paintIndicator(g2, true);
+				}
+			}
+			return false;
+		};
+		for( int n : selectedNotes ) paintIndicator.test(n);
+		anyNoteMatch(noteOnLow, noteOnHigh, paintIndicator);
+		paintedIndicatorRegion = indicatorRegion.isEmpty() ? null : indicatorRegion;
 		// Show PC-key binding
 		if( isFocusOwner() ) Arrays.stream(bindedKeys).forEach(k->{
 			g2.setColor(
@@ -627,13 +866,14 @@ public class PianoKeyboard extends JComponent {
 		if(keys != null) for(PianoKey k : keys) k.getNote(getChromaticOffset());
 	}
 	private void keyOff(int ch, int noteNumber) {
-		if( noteNumber < 0 || ch < 0 || ch >= channelNotes.length ) return;
-		channelNotes[ch].remove((Object)noteNumber);
-		if( ch == midiChComboboxModel.getSelectedChannel() ) repaint();
+		if( noteNumber < 0 || noteNumber > 0x7F || ch < 0 || ch >= MIDISpec.MAX_CHANNELS ) return;
+		setNoteBit(ch, noteNumber, false);
+		if( ch == midiChComboboxModel.getSelectedChannel() ) repaintNote(noteNumber);
 	}
 	private void keyOn(int ch, int noteNumber) {
-		if( noteNumber < 0 || ch < 0 || ch >= channelNotes.length ) return;
-		channelNotes[ch].add(noteNumber);
+		if( noteNumber < 0 || noteNumber > 0x7F || ch < 0 || ch >= MIDISpec.MAX_CHANNELS ) return;
+		setNoteBit(ch, noteNumber, true);
+		lastNoteOns[ch] = noteNumber;
 		setSelectedNote(ch,noteNumber);
 	}
 	public boolean autoScroll(int noteNumber) {
@@ -657,37 +897,52 @@ public class PianoKeyboard extends JComponent {
 		listenerList.remove(PianoKeyboardListener.class, l);
 	}
 	int countKeyOn() {
-		return channelNotes[midiChComboboxModel.getSelectedChannel()].size();
+		return countKeyOn(midiChComboboxModel.getSelectedChannel());
 	}
 	public int countKeyOn(int ch) {
-		return channelNotes[ch].size();
+		return Long.bitCount(channelNoteBits.get(ch * 2)) + Long.bitCount(channelNoteBits.get(ch * 2 + 1));
 	}
 	void allKeysOff(int ch, int numMarks) {
-		if( ! selectedKeyNoteList.isEmpty() ) return;
-		switch(numMarks) {
-		case -1:
-			selectedKeyNoteList = (NoteList)(channelNotes[ch].clone());
-			break;
-		case  1:
-			selectedKeyNoteList.add(channelNotes[ch].get(channelNotes[ch].size()-1));
-			break;
-		default: break;
-		}
-		channelNotes[ch].clear();
+		synchronized(selectedKeyNotesLock) {
+			// 選択マークがある間は、そのチャンネルのノートオン状態も残しておく
+			if( selectedKeyNotes.length > 0 ) return;
+			long low = channelNoteBits.getAndSet(ch * 2, 0);
+			long high = channelNoteBits.getAndSet(ch * 2 + 1, 0);
+			switch(numMarks) {
+			case -1:
+				int[] notes = new int[Long.bitCount(low) + Long.bitCount(high)];
+				int[] count = {0};
+				anyNoteMatch(low, high, n->{ notes[count[0]++] = n; return false; });
+				selectedKeyNotes = notes;
+				break;
+			case  1:
+				int n = lastNoteOns[ch];
+				if( n >= 0 && anyNoteMatch(low, high, m -> m == n) ) selectedKeyNotes = new int[] {n};
+				break;
+			default: break;
+			}
+		}
 		if( midiChComboboxModel.getSelectedChannel() == ch ) repaint();
 	}
 	public void clear() {
-		selectedKeyNoteList.clear();
-		channelNotes[midiChComboboxModel.getSelectedChannel()].clear();
+		synchronized(selectedKeyNotesLock) {
+			selectedKeyNotes = new int[0];
+		}
+		int ch = midiChComboboxModel.getSelectedChannel();
+		channelNoteBits.set(ch * 2, 0);
+		channelNoteBits.set(ch * 2 + 1, 0);
 		chord = null;
 		repaint();
 	}
 	int getNote() {
-		int current_channel = midiChComboboxModel.getSelectedChannel();
-		switch( channelNotes[current_channel].size() ) {
-		case 1: return channelNotes[current_channel].get(0);
+		int ch = midiChComboboxModel.getSelectedChannel();
+		long low = channelNoteBits.get(ch * 2);
+		long high = channelNoteBits.get(ch * 2 + 1);
+		switch( Long.bitCount(low) + Long.bitCount(high) ) {
+		case 1: return low != 0 ? Long.numberOfTrailingZeros(low) : 64 + Long.numberOfTrailingZeros(high);
 		case 0:
-			if( selectedKeyNoteList.size() == 1 ) return selectedKeyNoteList.get(0);
+			int[] selectedNotes = selectedKeyNotes;
+			if( selectedNotes.length == 1 ) return selectedNotes[0];
 			// no break
 		default:
 			return -1;
@@ -698,16 +953,31 @@ public class PianoKeyboard extends JComponent {
 	}
 	private void setSelectedNote(int ch, int note_no) {
 		if( ch != midiChComboboxModel.getSelectedChannel() ) return;
-		selectedKeyNoteList.add(note_no);
 		int maxSel = (chord == null ? maxSelectable : chord.numberOfNotes());
-		while(selectedKeyNoteList.size() > maxSel) selectedKeyNoteList.poll();
+		int[] removedNotes;
+		synchronized(selectedKeyNotesLock) {
+			// 同じノートがすでに選択されていたら外してから、最も新しい選択として末尾に追加
+			int[] oldNotes = selectedKeyNotes;
+			int[] notes = new int[oldNotes.length + 1];
+			int size = 0;
+			for( int n : oldNotes ) if( n != note_no ) notes[size++] = n;
+			notes[size++] = note_no;
+			// 最大数を超えたら古いものから外す
+			int from = Math.max(0, Math.min(size - maxSel, size));
+			removedNotes = Arrays.copyOf(notes, from);
+			selectedKeyNotes = Arrays.copyOfRange(notes, from, size);
+		}
+		for( int n : removedNotes ) repaintNote(n);
 		if( !autoScroll(note_no) ) {
 			// When autoScroll() returned false, stateChanged() not invoked - need repaint()
-			repaint();
+			repaintNote(note_no);
 		}
 	}
 	public Integer[] getSelectedNotes() {
-		return selectedKeyNoteList.toArray(new Integer[0]);
+		int[] notes = selectedKeyNotes;
+		Integer[] selectedNotes = new Integer[notes.length];
+		for( int i = 0; i < notes.length; i++ ) selectedNotes[i] = notes[i];
+		return selectedNotes;
 	}
 	public Chord getChord() { return chord; }
 	public void setChord(Chord c) { chordDisplay.setChord(chord = c); }
@@ -732,6 +1002,11 @@ public class PianoKeyboard extends JComponent {
 		String defaultBindedKeyChars = "zsxdcvgbhnjm,l.;/\\]";
 		Dimension keyboardSize = getSize();
 		if( keyboardSize.width == 0 ) return;
+		octaveRangeModel.setExtent( octaves );
+		octaveRangeModel.setValue( (MAX_OCTAVE_WIDTH - octaves) / 2 );
+		// サイズもオクターブ幅も前回と同じなら、鍵の配置は作り直さない
+		// （リサイズ時は、オクターブ幅モデルの変更とリサイズ通知の両方から呼ばれるため）
+		if( keys != null && octaves == layoutOctaves && keyboardSize.equals(layoutSize) ) return;
 		whiteKeySize = new Dimension(
 			(keyboardSize.width - 1) / (octaves * 7 + 1),
 			keyboardSize.height - 1
@@ -744,8 +1019,6 @@ public class PianoKeyboard extends JComponent {
 			whiteKeySize.width / 2,
 			whiteKeySize.height / 6
 		);
-		octaveRangeModel.setExtent( octaves );
-		octaveRangeModel.setValue( (MAX_OCTAVE_WIDTH - octaves) / 2 );
 		WIDTH_PER_OCTAVE = keyboardSize.width / octaves;
 		//
 		// Construct piano-keys
@@ -780,6 +1053,8 @@ public class PianoKeyboard extends JComponent {
 		blackKeys = vBlackKeys.toArray(new PianoKey[1]);
 		changeKeyBinding( ((octaves - 1) / 2) * 12, defaultBindedKeyChars );
 		checkOutOfBounds();
+		layoutSize = keyboardSize;
+		layoutOctaves = octaves;
 	}
 	//
 	void setDarkMode(boolean isDark) {